@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.artifacts;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.sayem.configuration.Configuration;
+import com.sayem.logger.LogLevels;
+import com.sayem.logger.Logger;
+import org.apache.commons.codec.binary.Base64;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes test artifacts like screenshots to test results directory in background, so test thread doesn't wait for
+ * decoding and disk writes. Artifacts are stored under name derived from content hash, identical artifacts are written only once.
+ * Queue of pending artifacts is bounded, when it's full test thread waits until writer catches up,
+ * so memory used by pending artifacts stays capped even when many tests run in parallel.
+ */
+public abstract class ArtifactWriter {
+
+    public static final String ARTIFACTS_FOLDER_NAME = "artifacts";
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+    public static final int DEFAULT_WRITER_THREADS = 1;
+
+    private static volatile int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private static volatile int writerThreads = DEFAULT_WRITER_THREADS;
+    private static ThreadPoolExecutor executor;
+
+    //Content hash of every artifact which was written or is being written, mapped to pending or completed write
+    private static final ConcurrentMap<String, Future<File>> artifacts = new ConcurrentHashMap<String, Future<File>>();
+
+    /**
+     * Configures artifacts writer. Applied when writer is started next time.
+     *
+     * @param queueCapacity maximum number of artifacts waiting to be written
+     * @param writerThreads number of threads which write artifacts
+     */
+    public static void configure(int queueCapacity, int writerThreads) {
+        ArtifactWriter.queueCapacity = queueCapacity;
+        ArtifactWriter.writerThreads = writerThreads;
+    }
+
+    /**
+     * Queues screenshot in Base64 encoded PNG format (as returned by WebDriver) to be decoded and written in background
+     *
+     * @param base64Png Base64 encoded PNG image
+     * @return Future which returns written screenshot file
+     */
+    public static Future<File> writeScreenshot(final String base64Png) {
+        return submit(new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+                return Base64.decodeBase64(base64Png.getBytes(Charsets.US_ASCII));
+            }
+        }, "png");
+    }
+
+    /**
+     * Queues artifact content to be written in background
+     *
+     * @param content   artifact content
+     * @param extension file extension without dot, for example png
+     * @return Future which returns written artifact file
+     */
+    public static Future<File> write(final byte[] content, String extension) {
+        return submit(new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+                return content;
+            }
+        }, extension);
+    }
+
+    /**
+     * Queues content to be written in background into given file. Content is written as is, without deduplication.
+     *
+     * @param file    file to write, existing file is overwritten
+     * @param content file content
+     * @return Future which returns written file
+     */
+    public static Future<File> write(final File file, final byte[] content) {
+        FutureTask<File> task = new FutureTask<File>(new Callable<File>() {
+            public File call() throws IOException {
+                Files.createParentDirs(file);
+                Files.write(content, file);
+                return file;
+            }
+        });
+        getExecutor().execute(task);
+        return task;
+    }
+
+    /**
+     * Waits until all queued artifacts are written and stops writer threads. Writer is started again when next artifact is queued.
+     *
+     * @param timeout maximum time to wait in seconds
+     */
+    public static void awaitPendingWrites(long timeout) {
+        ThreadPoolExecutor stoppedExecutor;
+        synchronized (ArtifactWriter.class) {
+            stoppedExecutor = executor;
+            executor = null;
+        }
+        if (stoppedExecutor == null) {
+            return;
+        }
+        stoppedExecutor.shutdown();
+        try {
+            if (!stoppedExecutor.awaitTermination(timeout, TimeUnit.SECONDS)) {
+                Logger.error(LogLevels.LEVEL_3, "ArtifactWriter", "Not all artifacts were written in " + timeout + " seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Future<File> submit(Callable<byte[]> content, String extension) {
+        FutureTask<File> task = new FutureTask<File>(new WriteArtifact(content, extension));
+        getExecutor().execute(task);
+        return task;
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            final AtomicInteger threadNumber = new AtomicInteger();
+            int threads = Math.max(1, writerThreads);
+            executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(Math.max(1, queueCapacity)),
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "artifact-writer-" + threadNumber.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    },
+                    new BlockWhenQueueIsFull());
+        }
+        return executor;
+    }
+
+    /**
+     * Makes thread which queues artifact wait until there is free space in the queue instead of rejecting the artifact
+     */
+    private static class BlockWhenQueueIsFull implements RejectedExecutionHandler {
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                //Writer was stopped while artifact was queued, write it on the calling thread
+                task.run();
+                return;
+            }
+            try {
+                executor.getQueue().put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * Decodes artifact content and writes it under name derived from content hash unless the same artifact was already written
+     */
+    private static class WriteArtifact implements Callable<File> {
+        private final Callable<byte[]> content;
+        private final String extension;
+
+        WriteArtifact(Callable<byte[]> content, String extension) {
+            this.content = content;
+            this.extension = extension;
+        }
+
+        public File call() throws Exception {
+            final byte[] bytes = content.call();
+            String hash = Hashing.sha1().hashBytes(bytes).toString();
+            final File file = new File(new File(Configuration.getTestResultsDirectory(), ARTIFACTS_FOLDER_NAME), hash + "." + extension);
+
+            FutureTask<File> write = new FutureTask<File>(new Callable<File>() {
+                public File call() throws IOException {
+                    Files.createParentDirs(file);
+                    Files.write(bytes, file);
+                    return file;
+                }
+            });
+            Future<File> existingWrite = artifacts.putIfAbsent(hash + "." + extension, write);
+            if (existingWrite != null) {
+                return existingWrite.get();
+            }
+            write.run();
+            try {
+                return write.get();
+            } catch (Exception e) {
+                //Let the next identical artifact try again
+                artifacts.remove(hash + "." + extension, write);
+                Logger.error(LogLevels.LEVEL_3, "ArtifactWriter", "Can't write artifact " + file + ": " + e.toString());
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.artifacts;
+
+import com.google.common.base.Charsets;
+import com.sayem.configuration.Configuration;
+import com.sayem.logger.LogLevels;
+import com.sayem.logger.Logger;
+import org.openqa.selenium.WebDriver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import static com.sayem.helpers.StringHelper.toJsonString;
+
+/**
+ * Keeps last steps performed by test on current thread (navigation, verification, element lookups) in a ring buffer,
+ * so when test fails it's clear what happened before the failure without capturing screenshots and page source on every step.
+ * <p/>
+ * Steps are written to failures folder in test results directory only when test fails, together with exception which failed it
+ * (and DOM snapshot taken at that moment if enabled). Exceptions which test catches and recovers from are not recorded,
+ * so passing tests write nothing. Failures recorded outside of test fixtures are written right away.
+ */
+public class StepHistory {
+
+    public static final String FAILURES_FOLDER_NAME = "failures";
+    public static final int DEFAULT_SIZE = 50;
+    public static final String NAVIGATE_ACTION = "navigate";
+    public static final String FAILURE_ACTION = "failure";
+
+    private static volatile int historySize = DEFAULT_SIZE;
+    private static volatile boolean domSnapshotsEnabled;
+
+    private static final ThreadLocal<StepHistory> threadHistory = new ThreadLocal<StepHistory>() {
+        @Override
+        protected StepHistory initialValue() {
+            return new StepHistory(historySize);
+        }
+    };
+
+    private final Step[] steps;
+    private int nextStep;
+    private int recordedSteps;
+    private String testName;
+    private final List<String> failureReasons = new ArrayList<String>();
+    private WebDriver driver;
+
+    private StepHistory(int size) {
+        steps = new Step[size];
+        for (int i = 0; i < size; i++) {
+            steps[i] = new Step();
+        }
+    }
+
+    /**
+     * Configures step history
+     *
+     * @param size                number of last steps to keep, 0 disables step history. Applied to threads which haven't recorded steps yet
+     * @param domSnapshotsEnabled true if compressed page source should be captured after navigation and on failure
+     */
+    public static void configure(int size, boolean domSnapshotsEnabled) {
+        StepHistory.historySize = size;
+        StepHistory.domSnapshotsEnabled = domSnapshotsEnabled;
+    }
+
+    /**
+     * Sets WebDriver used on current thread, it's used to capture DOM snapshots
+     *
+     * @param driver active WebDriver object
+     */
+    public static void setDriver(WebDriver driver) {
+        if (historySize > 0) {
+            threadHistory.get().driver = driver;
+        }
+    }
+
+    /**
+     * Starts history of new test on current thread, steps of previous test are discarded
+     *
+     * @param testName name of the test, used as file name if history is written
+     */
+    public static void startTest(String testName) {
+        if (historySize == 0) {
+            return;
+        }
+        StepHistory history = threadHistory.get();
+        history.clear();
+        history.testName = testName;
+    }
+
+    /**
+     * Ends history of the test on current thread. History is written only if test failed.
+     *
+     * @param failed true if test failed
+     */
+    public static void endTest(boolean failed) {
+        if (historySize == 0) {
+            return;
+        }
+        StepHistory history = threadHistory.get();
+        if (failed) {
+            history.write("Test failed");
+        }
+        history.clear();
+        history.testName = null;
+    }
+
+    /**
+     * Records step performed on current thread. Values which are not known without extra browser calls should be passed as null.
+     *
+     * @param action      what was done, for example navigate or findElement
+     * @param pageClass   page or page module class name
+     * @param url         page URL, can be null
+     * @param title       page title, can be null
+     * @param elementName name of element used, can be null
+     * @param locator     locator of element used, converted to string only when history is written, can be null
+     */
+    public static void record(String action, String pageClass, String url, String title, String elementName, Object locator) {
+        if (historySize == 0) {
+            return;
+        }
+        StepHistory history = threadHistory.get();
+        Step step = history.steps[history.nextStep];
+        step.time = System.currentTimeMillis();
+        step.action = action;
+        step.pageClass = pageClass;
+        step.url = url;
+        step.title = title;
+        step.elementName = elementName;
+        step.locator = locator;
+        //DOM is captured only when page is opened and when failure happens to avoid extra browser calls on every step
+        boolean takeDomSnapshot = domSnapshotsEnabled && (action.equals(NAVIGATE_ACTION) || action.equals(FAILURE_ACTION));
+        step.domSnapshot = takeDomSnapshot ? history.takeDomSnapshot() : null;
+        history.nextStep = (history.nextStep + 1) % history.steps.length;
+        history.recordedSteps = Math.min(history.recordedSteps + 1, history.steps.length);
+    }
+
+    /**
+     * Remembers exception which failed test on current thread, test fixture records it when test fails.
+     * If no test is running history is written immediately.
+     *
+     * @param reason exception description
+     */
+    public static void recordFailure(String reason) {
+        if (historySize == 0) {
+            return;
+        }
+        StepHistory history = threadHistory.get();
+        history.failureReasons.add(reason);
+        record(FAILURE_ACTION, null, null, null, null, null);
+        if (history.testName == null && history.recordedSteps > 1) {
+            history.write(reason);
+            history.clear();
+        }
+    }
+
+    private void clear() {
+        for (Step step : steps) {
+            step.clear();
+        }
+        nextStep = 0;
+        recordedSteps = 0;
+        failureReasons.clear();
+    }
+
+    private byte[] takeDomSnapshot() {
+        if (driver == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            gzip.write(driver.getPageSource().getBytes(Charsets.UTF_8));
+            gzip.close();
+            return compressed.toByteArray();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private void write(String reason) {
+        if (recordedSteps == 0) {
+            return;
+        }
+        String name = testName == null ? "step-history-" + System.currentTimeMillis() : testName;
+        File historyFile;
+        try {
+            historyFile = new File(new File(Configuration.getTestResultsDirectory(), FAILURES_FOLDER_NAME), name + ".json");
+        } catch (InstantiationError e) {
+            Logger.error(LogLevels.LEVEL_3, "StepHistory", "Can't write step history: " + e.getMessage());
+            return;
+        }
+
+        StringBuilder json = new StringBuilder("{\"test\":").append(toJsonString(name))
+                .append(",\"reason\":").append(toJsonString(reason))
+                .append(",\"exceptions\":[");
+        for (int i = 0; i < failureReasons.size(); i++) {
+            json.append(i == 0 ? "" : ",").append(toJsonString(failureReasons.get(i)));
+        }
+        json.append("],\"steps\":[");
+        int firstStep = (nextStep - recordedSteps + steps.length) % steps.length;
+        for (int i = 0; i < recordedSteps; i++) {
+            Step step = steps[(firstStep + i) % steps.length];
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("{\"time\":").append(step.time)
+                    .append(",\"action\":").append(toJsonString(step.action));
+            appendProperty(json, "pageClass", step.pageClass);
+            appendProperty(json, "url", step.url);
+            appendProperty(json, "title", step.title);
+            appendProperty(json, "elementName", step.elementName);
+            appendProperty(json, "locator", step.locator == null ? null : step.locator.toString());
+            if (step.domSnapshot != null) {
+                appendProperty(json, "domSnapshot", writeDomSnapshot(step.domSnapshot));
+            }
+            json.append('}');
+        }
+        json.append("\n]}\n");
+
+        ArtifactWriter.write(historyFile, json.toString().getBytes(Charsets.UTF_8));
+    }
+
+    private static String writeDomSnapshot(byte[] domSnapshot) {
+        Future<File> snapshotFile = ArtifactWriter.write(domSnapshot, "html.gz");
+        try {
+            return snapshotFile.get().getPath();
+        } catch (Exception e) {
+            Logger.error(LogLevels.LEVEL_3, "StepHistory", "Can't write DOM snapshot: " + e.toString());
+            return null;
+        }
+    }
+
+    private static void appendProperty(StringBuilder json, String name, String value) {
+        if (value != null) {
+            json.append(",\"").append(name).append("\":").append(toJsonString(value));
+        }
+    }
+
+    /**
+     * Single step of the test. Step objects are allocated once and reused when ring buffer wraps around.
+     */
+    private static class Step {
+        long time;
+        String action;
+        String pageClass;
+        String url;
+        String title;
+        String elementName;
+        Object locator;
+        byte[] domSnapshot;
+
+        void clear() {
+            action = null;
+            pageClass = null;
+            url = null;
+            title = null;
+            elementName = null;
+            locator = null;
+            domSnapshot = null;
+        }
+    }
+}
@@ -17,15 +17,35 @@
 package com.sayem.configuration;
 
 import com.google.common.base.Strings;
+import com.google.common.io.InputSupplier;
+import com.sayem.artifacts.ArtifactWriter;
+import com.sayem.artifacts.StepHistory;
+import com.sayem.drivers.CachingJavaScriptEngine;
+import com.sayem.drivers.DriverRecorder;
+import com.sayem.drivers.FastHtmlUnitDriver;
 import com.sayem.enums.BrowserType;
-import com.sayem.helpers.FileHelper;
+import com.sayem.enums.TraceMode;
+import com.sayem.enums.WaitMode;
 import com.sayem.logger.LogLevels;
 import com.sayem.logger.Logger;
-
-import java.io.FileInputStream;
+import com.sayem.monitoring.FrameworkMetrics;
+import com.sayem.monitoring.ResourceAccounting;
+import com.sayem.network.RequestRules;
+import com.sayem.pages.ElementWait;
+import com.sayem.pages.LocatorOptimizer;
+import com.sayem.pages.LocatorStatistics;
+import com.sayem.pages.PageReadiness;
+import com.sayem.resources.ResourceIndex;
+import com.sayem.session.SessionStateCache;
+import com.sayem.tracing.TraceRecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Properties;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.io.Closeables.closeQuietly;
 
 /**
  * Configuration class implements test automation framework configuration functionality
@@ -40,6 +60,7 @@ public abstract class Configuration {
     private static BrowserType browserType;
     private static String environment;
     private static String testDataSetName;
+    private static RequestRules requestRules = RequestRules.NONE;
 
     public static final String FRAMEWORK_CONFIG_FILE_NAME = "configuration.properties";
     public static final String ENVIRONMENTS_DEFINITION_FILE_NAME = "environments.properties";
@@ -56,6 +77,24 @@ public abstract class Configuration {
     public static final String ENVIRONMENT_SYSTEM_PROPERTY_NAME = "test.runconfig.env";
     public static final String TEST_DATA_SET_SYSTEM_PROPERTY_NAME = "test.runconfig.dataset";
     public static final String BROWSER_TYPE_SYSTEM_PROPERTY_NAME = "test.runconfig.browser";
+    public static final String TRACE_MODE_PROPERTY_NAME = "traceMode";
+    public static final String TRACE_BUFFER_SIZE_PROPERTY_NAME = "traceBufferSize";
+    public static final String RESOURCE_ACCOUNTING_PROPERTY_NAME = "resourceAccounting";
+    public static final String ARTIFACT_QUEUE_CAPACITY_PROPERTY_NAME = "artifactQueueCapacity";
+    public static final String ARTIFACT_WRITER_THREADS_PROPERTY_NAME = "artifactWriterThreads";
+    public static final String STEP_HISTORY_SIZE_PROPERTY_NAME = "stepHistorySize";
+    public static final String STEP_HISTORY_DOM_SNAPSHOTS_PROPERTY_NAME = "stepHistoryDomSnapshots";
+    public static final String HTML_UNIT_CACHE_SIZE_PROPERTY_NAME = "htmlUnitCacheSize";
+    public static final String HTML_UNIT_JAVASCRIPT_TIMEOUT_PROPERTY_NAME = "htmlUnitJavaScriptTimeout";
+    public static final String HTML_UNIT_SCRIPT_CACHE_MEGABYTES_PROPERTY_NAME = "htmlUnitScriptCacheMegabytes";
+    public static final String LOCATOR_STATISTICS_FILE_PROPERTY_NAME = "locatorStatisticsFile";
+    public static final String OPTIMIZE_XPATH_LOCATORS_PROPERTY_NAME = "optimizeXPathLocators";
+    public static final String PAGE_READY_TIMEOUT_PROPERTY_NAME = "pageReadyTimeout";
+    public static final String WAIT_MODE_PROPERTY_NAME = "waitMode";
+    public static final String RECORD_DRIVER_COMMANDS_PROPERTY_NAME = "recordDriverCommands";
+    public static final String SESSION_STATE_TIME_TO_LIVE_PROPERTY_NAME = "sessionStateTimeToLive";
+    public static final String BLOCK_ENVIRONMENT_PROPERTY_NAME = "block";
+    public static final String REWRITE_ENVIRONMENT_PROPERTY_NAME = "rewrite";
 
 
     /**
@@ -64,16 +103,31 @@ public abstract class Configuration {
      * @throws InstantiationError if configuration failed
      */
     public static void configure() throws InstantiationError {
+        long startTime = System.nanoTime();
         try {
             configureTestResultsDirectory();
             configureConcordionExtensions();
             configureBrowserType();
             configureEnvironment();
+            configureRequestRules();
             configureTestDataSetName();
+            configureTracing();
+            configureResourceAccounting();
+            configureArtifactWriter();
+            configureStepHistory();
+            configureHtmlUnit();
+            configureSessionStateCache();
+            configureWaitMode();
+            configurePageReadiness();
+            configureLocatorOptimizer();
+            configureLocatorStatistics();
+            configureDriverRecorder();
+            FrameworkMetrics.recordConfiguration();
         } catch (InstantiationError e) {
             Logger.error(LogLevels.LEVEL_1, "FrameworkConfiguration", e.getMessage());
             throw new InstantiationError(e.toString());
         }
+        TraceRecorder.record("Configuration.configure", "fixture", startTime, null);
     }
 
 
@@ -123,7 +177,7 @@ public abstract class Configuration {
             try {
                 browserType = BrowserType.valueOf(browserTypeString);
             } catch (IllegalArgumentException e) {
-                throw new InstantiationError("Default Browser Type value is incorrect. Allowed values: HTML_UNIT, IE, FIREFOX, CHROME");
+                throw new InstantiationError("Default Browser Type value is incorrect. Allowed values: HTML_UNIT, HTML_UNIT_FAST, IE, FIREFOX, CHROME, REPLAY");
             }
         }
     }
@@ -140,6 +194,24 @@ public abstract class Configuration {
         }
     }
 
+    /**
+     * Configures which requests of browser should be blocked or rewritten in active environment
+     *
+     * @throws InstantiationError if rules are incorrect
+     */
+    private static void configureRequestRules() throws InstantiationError {
+        if (Strings.isNullOrEmpty(environment)) {
+            requestRules = RequestRules.NONE;
+            return;
+        }
+        try {
+            requestRules = RequestRules.parse(getEnvironmentProperty(BLOCK_ENVIRONMENT_PROPERTY_NAME),
+                    getEnvironmentProperty(REWRITE_ENVIRONMENT_PROPERTY_NAME));
+        } catch (IllegalArgumentException e) {
+            throw new InstantiationError("Request rules of " + environment + " environment are incorrect: " + e.getMessage());
+        }
+    }
+
     /**
      * Configures default test data set name depending on values in configuration file and active run configuration
      */
@@ -152,6 +224,172 @@ public abstract class Configuration {
         }
     }
 
+    /**
+     * Configures whether timeline of framework operations should be recorded
+     *
+     * @throws InstantiationError if trace mode or buffer size values are incorrect
+     */
+    private static void configureTracing() throws InstantiationError {
+        String traceModeString = getFrameworkConfiguration().getProperty(TRACE_MODE_PROPERTY_NAME);
+        TraceMode traceMode;
+        if (Strings.isNullOrEmpty(traceModeString)) {
+            traceMode = TraceMode.OFF;
+        } else {
+            try {
+                traceMode = TraceMode.valueOf(traceModeString.trim());
+            } catch (IllegalArgumentException e) {
+                throw new InstantiationError("Trace mode value is incorrect. Allowed values: OFF, TEST, SUITE");
+            }
+        }
+
+        TraceRecorder.configure(traceMode, getIntegerProperty(TRACE_BUFFER_SIZE_PROPERTY_NAME, TraceRecorder.DEFAULT_BUFFER_SIZE));
+    }
+
+    /**
+     * Configures whether CPU time and memory allocated by test fixtures should be accounted
+     */
+    private static void configureResourceAccounting() {
+        String resourceAccounting = getFrameworkConfiguration().getProperty(RESOURCE_ACCOUNTING_PROPERTY_NAME);
+        ResourceAccounting.setEnabled(!Strings.isNullOrEmpty(resourceAccounting) && Boolean.parseBoolean(resourceAccounting.trim()));
+    }
+
+    /**
+     * Configures how many artifacts like screenshots can wait to be written and how many threads write them
+     *
+     * @throws InstantiationError if configured values are incorrect
+     */
+    private static void configureArtifactWriter() throws InstantiationError {
+        ArtifactWriter.configure(
+                getIntegerProperty(ARTIFACT_QUEUE_CAPACITY_PROPERTY_NAME, ArtifactWriter.DEFAULT_QUEUE_CAPACITY),
+                getIntegerProperty(ARTIFACT_WRITER_THREADS_PROPERTY_NAME, ArtifactWriter.DEFAULT_WRITER_THREADS));
+    }
+
+    /**
+     * Configures how many last test steps are kept to be written when test fails
+     *
+     * @throws InstantiationError if configured values are incorrect
+     */
+    private static void configureStepHistory() throws InstantiationError {
+        int size = getIntegerProperty(STEP_HISTORY_SIZE_PROPERTY_NAME, StepHistory.DEFAULT_SIZE);
+        if (size < 0) {
+            throw new InstantiationError("Property " + STEP_HISTORY_SIZE_PROPERTY_NAME + " can't be negative.");
+        }
+        String domSnapshots = getFrameworkConfiguration().getProperty(STEP_HISTORY_DOM_SNAPSHOTS_PROPERTY_NAME);
+        StepHistory.configure(size, !Strings.isNullOrEmpty(domSnapshots) && Boolean.parseBoolean(domSnapshots.trim()));
+    }
+
+    /**
+     * Configures shared caches and JavaScript timeout of HtmlUnit sessions
+     *
+     * @throws InstantiationError if configured values are incorrect
+     */
+    private static void configureHtmlUnit() throws InstantiationError {
+        FastHtmlUnitDriver.configure(
+                getIntegerProperty(HTML_UNIT_CACHE_SIZE_PROPERTY_NAME, FastHtmlUnitDriver.DEFAULT_CACHE_SIZE),
+                getIntegerProperty(HTML_UNIT_JAVASCRIPT_TIMEOUT_PROPERTY_NAME, FastHtmlUnitDriver.DEFAULT_JAVASCRIPT_TIMEOUT));
+        CachingJavaScriptEngine.configure(
+                getIntegerProperty(HTML_UNIT_SCRIPT_CACHE_MEGABYTES_PROPERTY_NAME, CachingJavaScriptEngine.DEFAULT_CACHE_MEGABYTES));
+    }
+
+    /**
+     * Configures how long cookies and local storage captured after setup flows like login can be reused
+     *
+     * @throws InstantiationError if configured value is incorrect
+     */
+    private static void configureSessionStateCache() throws InstantiationError {
+        int timeToLive = getIntegerProperty(SESSION_STATE_TIME_TO_LIVE_PROPERTY_NAME, SessionStateCache.DEFAULT_TIME_TO_LIVE);
+        if (timeToLive < 0) {
+            throw new InstantiationError("Property " + SESSION_STATE_TIME_TO_LIVE_PROPERTY_NAME + " can't be negative.");
+        }
+        SessionStateCache.configure(timeToLive);
+    }
+
+    /**
+     * Configures how page objects wait for elements
+     *
+     * @throws InstantiationError if wait mode value is incorrect
+     */
+    private static void configureWaitMode() throws InstantiationError {
+        String waitModeString = getFrameworkConfiguration().getProperty(WAIT_MODE_PROPERTY_NAME);
+        if (Strings.isNullOrEmpty(waitModeString)) {
+            ElementWait.configure(WaitMode.EVENT);
+            return;
+        }
+        try {
+            ElementWait.configure(WaitMode.valueOf(waitModeString.trim()));
+        } catch (IllegalArgumentException e) {
+            throw new InstantiationError("Wait mode value is incorrect. Allowed values: EVENT, POLLING");
+        }
+    }
+
+    /**
+     * Configures how long to wait for opened pages to get ready
+     *
+     * @throws InstantiationError if configured value is incorrect
+     */
+    private static void configurePageReadiness() throws InstantiationError {
+        int timeout = getIntegerProperty(PAGE_READY_TIMEOUT_PROPERTY_NAME, PageReadiness.DEFAULT_TIMEOUT);
+        if (timeout <= 0) {
+            throw new InstantiationError("Property " + PAGE_READY_TIMEOUT_PROPERTY_NAME + " should be positive.");
+        }
+        PageReadiness.configure(timeout);
+    }
+
+    /**
+     * Configures whether XPath locators of page definitions should be rewritten into CSS locators
+     */
+    private static void configureLocatorOptimizer() {
+        String optimizeXPathLocators = getFrameworkConfiguration().getProperty(OPTIMIZE_XPATH_LOCATORS_PROPERTY_NAME);
+        LocatorOptimizer.setEnabled(Strings.isNullOrEmpty(optimizeXPathLocators) || Boolean.parseBoolean(optimizeXPathLocators.trim()));
+        //CSS3 structural selectors like :nth-of-type are rejected by IE8 and not verified with HtmlUnit
+        LocatorOptimizer.setPositionalSelectorsSupported(browserType == BrowserType.FIREFOX || browserType == BrowserType.CHROME);
+    }
+
+    /**
+     * Configures file where success rates of alternative element locators are kept between runs
+     */
+    private static void configureLocatorStatistics() {
+        String locatorStatisticsFile = getFrameworkConfiguration().getProperty(LOCATOR_STATISTICS_FILE_PROPERTY_NAME);
+        File file = new File(Strings.isNullOrEmpty(locatorStatisticsFile) ? LocatorStatistics.DEFAULT_FILE_NAME : locatorStatisticsFile.trim());
+        //Relative path is relative to test results directory like paths of other reports
+        LocatorStatistics.configure((file.isAbsolute() ? file : new File(getTestResultsDirectory(), file.getPath())).getPath());
+    }
+
+    /**
+     * Configures whether WebDriver commands are recorded, or replayed if REPLAY browser type is used.
+     * Replay serves only commands which were recorded, so recorded and replayed runs look elements up
+     * by the same locators: positions in XPath are not rewritten and locator statistics are not updated.
+     */
+    private static void configureDriverRecorder() {
+        String recordDriverCommands = getFrameworkConfiguration().getProperty(RECORD_DRIVER_COMMANDS_PROPERTY_NAME);
+        DriverRecorder.configure(!Strings.isNullOrEmpty(recordDriverCommands) && Boolean.parseBoolean(recordDriverCommands.trim()),
+                browserType == BrowserType.REPLAY);
+        if (DriverRecorder.isEnabled()) {
+            LocatorOptimizer.setPositionalSelectorsSupported(false);
+        }
+        LocatorStatistics.setFrozen(DriverRecorder.isEnabled());
+    }
+
+    /**
+     * Retrieves integer property from framework configuration
+     *
+     * @param propertyName name of the property
+     * @param defaultValue value returned if property is not set
+     * @return int property value
+     * @throws InstantiationError if property value is not a number
+     */
+    private static int getIntegerProperty(String propertyName, int defaultValue) throws InstantiationError {
+        String value = getFrameworkConfiguration().getProperty(propertyName);
+        if (Strings.isNullOrEmpty(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new InstantiationError("Property " + propertyName + " is incorrect, can't convert " + value + " to number.");
+        }
+    }
+
     /**
      * Retrieves configured default browser type
      *
@@ -174,7 +412,7 @@ public abstract class Configuration {
     public static Properties getFrameworkConfiguration() throws InstantiationError {
         if (frameworkConfiguration.isEmpty()) {
             try {
-                frameworkConfiguration.load(new FileInputStream(FileHelper.getAbsoluteResourcePath(FRAMEWORK_CONFIG_FILE_NAME)));
+                loadProperties(frameworkConfiguration, FRAMEWORK_CONFIG_FILE_NAME);
             } catch (Exception e) {
                 throw new InstantiationError("Can't read test automation framework configuration: " + e.toString());
             }
@@ -184,6 +422,27 @@ public abstract class Configuration {
         return frameworkConfiguration;
     }
 
+    /**
+     * Loads properties from class path resource. Resources are looked up in ResourceIndex,
+     * so configuration files can be packaged in jars together with tests.
+     *
+     * @param properties   Properties object to load properties into
+     * @param resourceName name of a resource in class path
+     * @throws IOException if resource is not found or can not be read
+     */
+    private static void loadProperties(Properties properties, String resourceName) throws IOException {
+        InputSupplier<InputStream> resource = ResourceIndex.getResource(resourceName);
+        if (resource == null) {
+            throw new IOException(resourceName + " is not found in class path");
+        }
+        InputStream stream = resource.getInput();
+        try {
+            properties.load(stream);
+        } finally {
+            closeQuietly(stream);
+        }
+    }
+
     /**
      * Checks that mandatory framework configuration properties present
      *
@@ -233,6 +492,7 @@ public abstract class Configuration {
      */
     public static void reload() throws InstantiationError {
         frameworkConfiguration = new Properties();
+        FrameworkMetrics.CONFIGURATION_RELOADS.increment();
         configure();
     }
 
@@ -265,6 +525,15 @@ public abstract class Configuration {
         }
     }
 
+    /**
+     * Retrieves directory where test results should be saved. Path can be relative to working directory or absolute
+     *
+     * @return String path to test results directory
+     */
+    public static String getTestResultsDirectory() {
+        return getFrameworkConfiguration().getProperty(TEST_RESULTS_DIRECTORY_PROPERTY_NAME).trim();
+    }
+
     /**
      * Retrieves default environment that should be used for test runs
      *
@@ -274,6 +543,15 @@ public abstract class Configuration {
         return environment;
     }
 
+    /**
+     * Retrieves rules applied to browser requests in active environment
+     *
+     * @return RequestRules object, empty if no rules are defined
+     */
+    public static RequestRules getRequestRules() {
+        return requestRules;
+    }
+
     /**
      * Retrieves test data set name that should be used for test runs.
      *
@@ -306,7 +584,7 @@ public abstract class Configuration {
     private static Properties getEnvironmentsDefinition() {
         if (environmentsDefinition.isEmpty()) {
             try {
-                environmentsDefinition.load(new FileInputStream(FileHelper.getAbsoluteResourcePath(ENVIRONMENTS_DEFINITION_FILE_NAME)));
+                loadProperties(environmentsDefinition, ENVIRONMENTS_DEFINITION_FILE_NAME);
             } catch (Exception e) {
                 throw new InstantiationError("Can't read environments definition: " + e.toString());
             }
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.drivers;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.sayem.configuration.Configuration;
+import com.sayem.network.RequestRules;
+import com.sayem.network.RequestRulesWebConnection;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+/**
+ * HtmlUnit driver which compiles JavaScript with {@link CachingJavaScriptEngine},
+ * so scripts compiled by one session are reused by all sessions created later.
+ * Requests follow rules of active environment, see {@link RequestRules}.
+ */
+public class CachingHtmlUnitDriver extends HtmlUnitDriver {
+
+    public CachingHtmlUnitDriver() {
+        super();
+    }
+
+    public CachingHtmlUnitDriver(boolean enableJavascript) {
+        super(enableJavascript);
+    }
+
+    @Override
+    protected WebClient modifyWebClient(WebClient client) {
+        client = super.modifyWebClient(client);
+        //Engine created by WebClient is replaced before any page is loaded, its background thread is stopped
+        client.getJavaScriptEngine().shutdownJavaScriptExecutor();
+        client.setJavaScriptEngine(new CachingJavaScriptEngine(client));
+
+        RequestRules requestRules = Configuration.getRequestRules();
+        if (!requestRules.isEmpty()) {
+            new RequestRulesWebConnection(client, requestRules);
+        }
+        return client;
+    }
+}
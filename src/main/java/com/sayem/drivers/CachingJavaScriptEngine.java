@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.drivers;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.javascript.JavaScriptEngine;
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ForwardingMap;
+import com.google.common.hash.Hashing;
+import com.sayem.monitoring.CacheStatistics;
+import com.sayem.monitoring.FrameworkMetrics;
+import net.sourceforge.htmlunit.corejs.javascript.Script;
+
+import java.util.Map;
+
+/**
+ * HtmlUnit JavaScript engine which shares compiled scripts between all sessions in JVM.
+ * Compiled script doesn't depend on page it was compiled for, so the same application script loaded by
+ * different sessions is compiled only once. Scripts are identified by SHA-1 hash of their source and least recently
+ * used scripts are evicted when total size of cached scripts exceeds memory budget.
+ * Error messages of shared script refer to the page where it was compiled first.
+ */
+public class CachingJavaScriptEngine extends JavaScriptEngine {
+
+    public static final int DEFAULT_CACHE_MEGABYTES = 64;
+
+    //Compiled script takes several times more memory than its source, this factor is used to estimate script size
+    private static final int COMPILED_SCRIPT_SIZE_FACTOR = 4;
+
+    private static volatile Cache<String, CompiledScript> compiledScripts = newCache(DEFAULT_CACHE_MEGABYTES);
+    private static volatile int cacheMegabytes = DEFAULT_CACHE_MEGABYTES;
+    //Statistics report size of current cache, which is replaced when cache budget is reconfigured
+    private static final CacheStatistics cacheStatistics = new CacheStatistics(new ForwardingMap<String, CompiledScript>() {
+        @Override
+        protected Map<String, CompiledScript> delegate() {
+            return compiledScripts.asMap();
+        }
+    });
+
+    static {
+        FrameworkMetrics.registerMBean(cacheStatistics, "type=Cache,name=CompiledScript");
+    }
+
+    public CachingJavaScriptEngine(WebClient webClient) {
+        super(webClient);
+    }
+
+    /**
+     * Configures memory budget of compiled scripts cache. Already cached scripts are dropped if budget is changed
+     *
+     * @param megabytes approximate memory in megabytes which compiled scripts may take, 0 disables caching
+     * @throws InstantiationError if value is incorrect
+     */
+    public static void configure(int megabytes) throws InstantiationError {
+        if (megabytes < 0) {
+            throw new InstantiationError("Compiled scripts cache size can't be negative");
+        }
+        if (megabytes != cacheMegabytes) {
+            compiledScripts = newCache(megabytes);
+            cacheMegabytes = megabytes;
+        }
+    }
+
+    /**
+     * Retrieves statistics of compiled scripts cache
+     *
+     * @return CacheStatistics of compiled scripts cache
+     */
+    public static CacheStatistics getCacheStatistics() {
+        return cacheStatistics;
+    }
+
+    @Override
+    public Script compile(HtmlPage htmlPage, String sourceCode, String sourceName, int startLine) {
+        String key = Hashing.sha1().hashString(sourceCode, Charsets.UTF_8).toString();
+        Cache<String, CompiledScript> cache = compiledScripts;
+        CompiledScript compiledScript = cache.getIfPresent(key);
+        if (compiledScript != null) {
+            cacheStatistics.recordHit();
+            return compiledScript.script;
+        }
+
+        cacheStatistics.recordMiss();
+        Script script = super.compile(htmlPage, sourceCode, sourceName, startLine);
+        if (script != null) {
+            cache.put(key, new CompiledScript(script, sourceCode.length()));
+        }
+        return script;
+    }
+
+    private static Cache<String, CompiledScript> newCache(int megabytes) {
+        return CacheBuilder.newBuilder()
+                .maximumWeight(megabytes * 1024L * 1024L)
+                .weigher(new Weigher<String, CompiledScript>() {
+                    public int weigh(String key, CompiledScript compiledScript) {
+                        return compiledScript.size;
+                    }
+                })
+                .build();
+    }
+
+    private static class CompiledScript {
+        private final Script script;
+        //Estimated size in bytes
+        private final int size;
+
+        private CompiledScript(Script script, int sourceLength) {
+            this.script = script;
+            this.size = (int) Math.min(Integer.MAX_VALUE, 2L * sourceLength * COMPILED_SCRIPT_SIZE_FACTOR);
+        }
+    }
+}
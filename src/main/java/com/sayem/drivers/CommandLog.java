@@ -0,0 +1,487 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.drivers;
+
+import com.google.common.io.Files;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.Point;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.google.common.io.Closeables.closeQuietly;
+
+/**
+ * Compact binary log of WebDriver commands and their responses, written and read by {@link DriverRecorder}.
+ * Log is gzip-compressed stream of entries. Method signatures, arguments and class names are written once
+ * and referred to by number afterwards, objects returned by driver like elements are written as numbered handles.
+ */
+class CommandLog implements Closeable {
+
+    static final String EXTENSION = ".wdlog";
+
+    private static final int MAGIC = 0x57444c47;
+    private static final int VERSION = 1;
+
+    //Entry types
+    private static final byte ROOT = 1;
+    private static final byte COMMAND = 2;
+
+    //Value types
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte BOOLEAN = 2;
+    private static final byte INTEGER = 3;
+    private static final byte LONG = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte BYTES = 6;
+    private static final byte FILE = 7;
+    private static final byte LIST = 8;
+    private static final byte SET = 9;
+    private static final byte MAP = 10;
+    private static final byte HANDLE = 11;
+    private static final byte EXCEPTION = 12;
+    private static final byte DIMENSION = 13;
+    private static final byte POINT = 14;
+    private static final byte COOKIE = 15;
+    private static final byte UNSUPPORTED = 16;
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> symbols = new HashMap<String, Integer>();
+
+    private CommandLog(DataOutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Creates new log, existing file is overwritten
+     *
+     * @param file log file
+     * @return log ready for writing
+     * @throws IOException if file can not be created
+     */
+    static CommandLog create(File file) throws IOException {
+        Files.createParentDirs(file);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        return new CommandLog(out);
+    }
+
+    /**
+     * Writes which handle is WebDriver itself
+     *
+     * @param id         handle of the driver
+     * @param interfaces interfaces implemented by the driver
+     * @throws IOException if entry can not be written
+     */
+    void writeRoot(int id, Class<?>[] interfaces) throws IOException {
+        out.writeByte(ROOT);
+        writeVarInt(id);
+        writeInterfaces(interfaces);
+    }
+
+    /**
+     * Writes command and its response
+     *
+     * @param targetId  handle of the object command was issued to
+     * @param signature method name with parameter types
+     * @param arguments description of arguments
+     * @param response  returned value or thrown exception
+     * @throws IOException if entry can not be written
+     */
+    void writeCommand(int targetId, String signature, String arguments, Object response) throws IOException {
+        out.writeByte(COMMAND);
+        writeVarInt(targetId);
+        writeSymbol(signature);
+        writeSymbol(arguments);
+        writeValue(response);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeValue(Object value) throws IOException {
+        Integer handleId = DriverRecorder.getHandleId(value);
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (handleId != null) {
+            out.writeByte(HANDLE);
+            writeVarInt(handleId);
+            writeInterfaces(value.getClass().getInterfaces());
+        } else if (value instanceof Throwable) {
+            out.writeByte(EXCEPTION);
+            writeSymbol(value.getClass().getName());
+            writeNullableString(((Throwable) value).getMessage());
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString((String) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            out.writeByte(LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            writeBytes((byte[]) value);
+        } else if (value instanceof File) {
+            out.writeByte(FILE);
+            writeBytes(Files.toByteArray((File) value));
+        } else if (value instanceof Dimension) {
+            out.writeByte(DIMENSION);
+            out.writeInt(((Dimension) value).getWidth());
+            out.writeInt(((Dimension) value).getHeight());
+        } else if (value instanceof Point) {
+            out.writeByte(POINT);
+            out.writeInt(((Point) value).getX());
+            out.writeInt(((Point) value).getY());
+        } else if (value instanceof Cookie) {
+            Cookie cookie = (Cookie) value;
+            out.writeByte(COOKIE);
+            writeString(cookie.getName());
+            writeString(cookie.getValue());
+            writeNullableString(cookie.getDomain());
+            writeNullableString(cookie.getPath());
+            out.writeLong(cookie.getExpiry() == null ? -1 : cookie.getExpiry().getTime());
+            out.writeBoolean(cookie.isSecure());
+        } else if (value instanceof Collection) {
+            out.writeByte(value instanceof Set ? SET : LIST);
+            writeVarInt(((Collection) value).size());
+            for (Object item : (Collection) value) {
+                writeValue(item);
+            }
+        } else if (value instanceof Map) {
+            out.writeByte(MAP);
+            writeVarInt(((Map) value).size());
+            for (Object entry : ((Map) value).entrySet()) {
+                writeValue(((Map.Entry) entry).getKey());
+                writeValue(((Map.Entry) entry).getValue());
+            }
+        } else {
+            out.writeByte(UNSUPPORTED);
+            writeSymbol(value.getClass().getName());
+        }
+    }
+
+    private void writeInterfaces(Class<?>[] interfaces) throws IOException {
+        writeVarInt(interfaces.length);
+        for (Class<?> type : interfaces) {
+            writeSymbol(type.getName());
+        }
+    }
+
+    private void writeSymbol(String symbol) throws IOException {
+        Integer index = symbols.get(symbol);
+        if (index != null) {
+            writeVarInt(index);
+            return;
+        }
+        writeVarInt(0);
+        writeString(symbol);
+        symbols.put(symbol, symbols.size() + 1);
+    }
+
+    private void writeNullableString(String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            writeString(value);
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        writeBytes(value.getBytes("UTF-8"));
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        writeVarInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads recorded commands from log. Log which ends abruptly, for example because test run was killed,
+     * is read up to the last complete entry.
+     *
+     * @param file log file
+     * @return recorded commands
+     * @throws IOException if file can not be read or is not a command log
+     */
+    static Recording read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a WebDriver command log or was written by other framework version");
+            }
+            return new Reader(in).read();
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Object returned by recorded driver, like element or options
+     */
+    static final class Handle {
+        final int id;
+        final String[] interfaces;
+
+        Handle(int id, String[] interfaces) {
+            this.id = id;
+            this.interfaces = interfaces;
+        }
+    }
+
+    /**
+     * Exception thrown by recorded driver
+     */
+    static final class RecordedException {
+        final String className;
+        final String message;
+
+        RecordedException(String className, String message) {
+            this.className = className;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Contents of file returned by recorded driver, like screenshot
+     */
+    static final class FileContents {
+        final byte[] bytes;
+
+        FileContents(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Commands read from log. Responses are served per object, method and arguments in recorded order,
+     * the last response is repeated.
+     */
+    static final class Recording {
+
+        static final Object NOT_RECORDED = new Object();
+
+        private final Map<String, Deque<Object>> responses = new HashMap<String, Deque<Object>>();
+        private Handle root;
+
+        /**
+         * @return driver handle written last, or null if log doesn't contain driver
+         */
+        Handle getRoot() {
+            return root;
+        }
+
+        /**
+         * Retrieves next recorded response to command
+         *
+         * @param targetId  handle of the object command is issued to
+         * @param signature method name with parameter types
+         * @param arguments description of arguments
+         * @return returned value, {@link RecordedException} or {@link #NOT_RECORDED}
+         */
+        Object nextResponse(int targetId, String signature, String arguments) {
+            Deque<Object> queue = responses.get(targetId + " " + signature + " " + arguments);
+            if (queue == null) {
+                return NOT_RECORDED;
+            }
+            return queue.size() > 1 ? queue.poll() : queue.peek();
+        }
+
+        private void add(int targetId, String signature, String arguments, Object response) {
+            String key = targetId + " " + signature + " " + arguments;
+            Deque<Object> queue = responses.get(key);
+            if (queue == null) {
+                queue = new ArrayDeque<Object>();
+                responses.put(key, queue);
+            }
+            queue.add(response);
+        }
+    }
+
+    private static final class Reader {
+
+        private final DataInputStream in;
+        private final List<String> symbols = new ArrayList<String>();
+
+        private Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        private Recording read() throws IOException {
+            Recording recording = new Recording();
+            try {
+                int entryType;
+                while ((entryType = in.read()) >= 0) {
+                    if (entryType == ROOT) {
+                        recording.root = new Handle(readVarInt(), readInterfaces());
+                    } else if (entryType == COMMAND) {
+                        int targetId = readVarInt();
+                        String signature = readSymbol();
+                        String arguments = readSymbol();
+                        recording.add(targetId, signature, arguments, readValue());
+                    } else {
+                        throw new IOException("Command log is corrupted, unknown entry type " + entryType);
+                    }
+                }
+            } catch (EOFException e) {
+                //Log wasn't closed properly, entries read so far are kept
+            }
+            return recording;
+        }
+
+        private Object readValue() throws IOException {
+            byte type = in.readByte();
+            switch (type) {
+                case NULL:
+                    return null;
+                case HANDLE:
+                    return new Handle(readVarInt(), readInterfaces());
+                case EXCEPTION:
+                    return new RecordedException(readSymbol(), readNullableString());
+                case STRING:
+                    return readString();
+                case BOOLEAN:
+                    return in.readBoolean();
+                case INTEGER:
+                    return in.readInt();
+                case LONG:
+                    return in.readLong();
+                case DOUBLE:
+                    return in.readDouble();
+                case BYTES:
+                    return readBytes();
+                case FILE:
+                    return new FileContents(readBytes());
+                case DIMENSION:
+                    return new Dimension(in.readInt(), in.readInt());
+                case POINT:
+                    return new Point(in.readInt(), in.readInt());
+                case COOKIE:
+                    String name = readString();
+                    String value = readString();
+                    String domain = readNullableString();
+                    String path = readNullableString();
+                    long expiry = in.readLong();
+                    return new Cookie(name, value, domain, path, expiry < 0 ? null : new Date(expiry), in.readBoolean());
+                case LIST:
+                case SET:
+                    int size = readVarInt();
+                    Collection<Object> collection = type == SET ? new LinkedHashSet<Object>(size) : new ArrayList<Object>(size);
+                    for (int i = 0; i < size; i++) {
+                        collection.add(readValue());
+                    }
+                    return collection;
+                case MAP:
+                    int entries = readVarInt();
+                    Map<Object, Object> map = new LinkedHashMap<Object, Object>(entries);
+                    for (int i = 0; i < entries; i++) {
+                        map.put(readValue(), readValue());
+                    }
+                    return map;
+                case UNSUPPORTED:
+                    return new RecordedException(UnsupportedOperationException.class.getName(),
+                            "Value of type " + readSymbol() + " can't be recorded");
+                default:
+                    throw new IOException("Command log is corrupted, unknown value type " + type);
+            }
+        }
+
+        private String[] readInterfaces() throws IOException {
+            String[] interfaces = new String[readVarInt()];
+            for (int i = 0; i < interfaces.length; i++) {
+                interfaces[i] = readSymbol();
+            }
+            return interfaces;
+        }
+
+        private String readSymbol() throws IOException {
+            int index = readVarInt();
+            if (index > 0) {
+                return symbols.get(index - 1);
+            }
+            String symbol = readString();
+            symbols.add(symbol);
+            return symbol;
+        }
+
+        private String readNullableString() throws IOException {
+            return in.readBoolean() ? readString() : null;
+        }
+
+        private String readString() throws IOException {
+            return new String(readBytes(), "UTF-8");
+        }
+
+        private byte[] readBytes() throws IOException {
+            byte[] bytes = new byte[readVarInt()];
+            in.readFully(bytes);
+            return bytes;
+        }
+
+        private int readVarInt() throws IOException {
+            int value = 0;
+            int shift = 0;
+            int nextByte;
+            do {
+                nextByte = in.readUnsignedByte();
+                value |= (nextByte & 0x7f) << shift;
+                shift += 7;
+            } while ((nextByte & 0x80) != 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,597 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.drivers;
+
+import com.google.common.io.Files;
+import com.sayem.configuration.Configuration;
+import com.sayem.logger.LogLevels;
+import com.sayem.logger.Logger;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.io.Closeables.closeQuietly;
+
+/**
+ * Records WebDriver commands issued through {@link com.sayem.pages.PageFactory} drivers and replays them without browser.
+ * When recording is enabled, driver and every object it returns, like elements, options and navigation, are wrapped into
+ * proxies which write each command with its response or exception into compact binary log, one log per test
+ * in driver-logs folder of test results directory. Tests are tracked per thread, so tests which run in parallel write
+ * their own logs. Commands issued outside of tests go to outside-tests log.
+ * <p/>
+ * REPLAY browser type serves responses from those logs with no browser at all, so framework and page object logic
+ * can be re-run in seconds, for example to debug it or to profile framework overhead in isolation.
+ * Responses are served per object, method and arguments in recorded order and the last one is repeated, so polling
+ * loops which run different number of times still replay. Timeouts, which framework computes from elapsed time,
+ * are left out of arguments of timeout settings and asynchronous scripts. Any other command which wasn't recorded
+ * with the same arguments, like lookup by other locator, fails, so replay doesn't silently diverge from recording.
+ * Replayed objects are equal only to themselves, unlike real elements which are equal if they point to the same DOM node.
+ */
+public abstract class DriverRecorder {
+
+    public static final String DRIVER_LOGS_FOLDER_NAME = "driver-logs";
+
+    private static final String OUTSIDE_TESTS_LOG_NAME = "outside-tests";
+    private static final String SELENIUM_PACKAGE = "org.openqa.selenium.";
+    //Numeric arguments of these methods are timeouts which depend on elapsed time, they are not matched on replay
+    private static final Set<String> TIME_DEPENDENT_METHODS = new HashSet<String>(Arrays.asList(
+            "implicitlyWait(long,TimeUnit)", "setScriptTimeout(long,TimeUnit)", "pageLoadTimeout(long,TimeUnit)",
+            "executeAsyncScript(String,Object[])"));
+
+    private static boolean recording;
+    private static boolean replaying;
+    //Test running in each thread, so commands of tests which run in parallel go to their own logs
+    private static final ThreadLocal<TestLog> threadTest = new ThreadLocal<TestLog>();
+    private static final Set<TestLog> runningTests = new HashSet<TestLog>();
+
+    //Recording
+    private static int nextHandleId;
+    private static Object recordedDriver;
+    private static CommandLog outsideTestsLog;
+
+    //Replay
+    private static CommandLog.Recording outsideTestsRecording;
+    private static final Map<Integer, Object> replayedObjects = new HashMap<Integer, Object>();
+
+    /**
+     * Sets whether driver commands are recorded or replayed. Replayed commands are never recorded again.
+     * Logs are kept open if settings don't change, as framework is configured again by each test fixture
+     *
+     * @param recording true to record commands of drivers created afterwards
+     * @param replaying true if commands are replayed by REPLAY browser type
+     */
+    public static synchronized void configure(boolean recording, boolean replaying) {
+        if (DriverRecorder.recording == (recording && !replaying) && DriverRecorder.replaying == replaying) {
+            return;
+        }
+        close();
+        DriverRecorder.recording = recording && !replaying;
+        DriverRecorder.replaying = replaying;
+        outsideTestsRecording = null;
+        replayedObjects.clear();
+    }
+
+    /**
+     * Checks whether driver commands are recorded or replayed
+     *
+     * @return true if recording or replay is enabled
+     */
+    public static synchronized boolean isEnabled() {
+        return recording || replaying;
+    }
+
+    /**
+     * Wraps driver into proxy which records its commands, if recording is enabled
+     *
+     * @param driver WebDriver object
+     * @return recording proxy, or the same driver if recording is disabled
+     */
+    public static synchronized WebDriver record(WebDriver driver) {
+        if (!recording || getHandleId(driver) != null) {
+            return driver;
+        }
+        recordedDriver = wrap(driver);
+        writeRoot(getLog());
+        return (WebDriver) recordedDriver;
+    }
+
+    /**
+     * Creates driver which serves responses recorded for active test
+     *
+     * @return WebDriver object
+     * @throws InstantiationError if no driver was recorded for active test
+     */
+    public static synchronized WebDriver replay() throws InstantiationError {
+        CommandLog.Handle root = getRecording().getRoot();
+        if (root == null) {
+            root = getOutsideTestsRecording().getRoot();
+        }
+        if (root == null) {
+            throw new InstantiationError("No recorded driver commands found for " +
+                    getTestName() + " in " + getLogsDirectory());
+        }
+        return (WebDriver) getReplayedObject(root);
+    }
+
+    /**
+     * Starts log of new test in current thread. Commands issued by the thread until {@link #endTest()} are recorded to
+     * or replayed from that log.
+     *
+     * @param name name of the test, used as file name of the log
+     */
+    public static synchronized void startTest(String name) {
+        endTest();
+        TestLog test = new TestLog(name);
+        if (recording) {
+            test.log = openLog(name);
+            //Driver can be created by previous test, log should say which handle it is
+            if (recordedDriver != null) {
+                writeRoot(test.log);
+            }
+        } else if (replaying) {
+            test.recording = readRecording(name);
+        }
+        threadTest.set(test);
+        runningTests.add(test);
+    }
+
+    /**
+     * Ends log of the test in current thread, commands issued afterwards go to outside-tests log
+     */
+    public static synchronized void endTest() {
+        TestLog test = threadTest.get();
+        if (test != null) {
+            closeLog(test.log);
+            runningTests.remove(test);
+            threadTest.remove();
+        }
+    }
+
+    /**
+     * Closes all logs, including logs of tests which are not ended, should be called when suite is finished
+     */
+    public static synchronized void close() {
+        for (TestLog test : runningTests) {
+            closeLog(test.log);
+            test.log = null;
+            test.recording = null;
+        }
+        runningTests.clear();
+        threadTest.remove();
+        closeLog(outsideTestsLog);
+        outsideTestsLog = null;
+    }
+
+    /**
+     * Retrieves handle number of recorded or replayed object
+     *
+     * @param value any object
+     * @return handle number or null if object isn't recorded or replayed
+     */
+    static Integer getHandleId(Object value) {
+        if (value == null || !Proxy.isProxyClass(value.getClass())) {
+            return null;
+        }
+        InvocationHandler handler = Proxy.getInvocationHandler(value);
+        if (handler instanceof RecordingHandler) {
+            return ((RecordingHandler) handler).id;
+        }
+        if (handler instanceof ReplayHandler) {
+            return ((ReplayHandler) handler).id;
+        }
+        return null;
+    }
+
+    private static File getLogsDirectory() {
+        return new File(Configuration.getTestResultsDirectory(), DRIVER_LOGS_FOLDER_NAME);
+    }
+
+    private static String getTestName() {
+        TestLog test = threadTest.get();
+        return test == null ? OUTSIDE_TESTS_LOG_NAME : test.name;
+    }
+
+    private static CommandLog getLog() {
+        TestLog test = threadTest.get();
+        if (test != null) {
+            return test.log;
+        }
+        if (outsideTestsLog == null) {
+            outsideTestsLog = openLog(OUTSIDE_TESTS_LOG_NAME);
+        }
+        return outsideTestsLog;
+    }
+
+    private static CommandLog openLog(String name) {
+        try {
+            return CommandLog.create(new File(getLogsDirectory(), name + CommandLog.EXTENSION));
+        } catch (IOException e) {
+            Logger.error(LogLevels.LEVEL_3, "DriverRecorder", "Can't create driver log for " + name + ": " + e.toString());
+            return null;
+        }
+    }
+
+    private static void closeLog(CommandLog log) {
+        if (log == null) {
+            return;
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            Logger.error(LogLevels.LEVEL_3, "DriverRecorder", "Can't write driver log: " + e.toString());
+        }
+    }
+
+    private static void writeRoot(CommandLog log) {
+        if (log == null) {
+            return;
+        }
+        try {
+            log.writeRoot(getHandleId(recordedDriver), recordedDriver.getClass().getInterfaces());
+        } catch (IOException e) {
+            discardLog(log, e);
+        }
+    }
+
+    private static synchronized void writeCommand(int targetId, String signature, String arguments, Object response) {
+        CommandLog log = getLog();
+        if (log == null) {
+            return;
+        }
+        try {
+            log.writeCommand(targetId, signature, arguments, response);
+        } catch (IOException e) {
+            discardLog(log, e);
+        }
+    }
+
+    //Log which can't be written is not written anymore, commands are still passed to the driver
+    private static void discardLog(CommandLog log, IOException e) {
+        Logger.error(LogLevels.LEVEL_3, "DriverRecorder", "Can't write driver log, recording stopped: " + e.toString());
+        closeQuietly(log);
+        if (log == outsideTestsLog) {
+            outsideTestsLog = null;
+        }
+        for (TestLog test : runningTests) {
+            if (log == test.log) {
+                test.log = null;
+            }
+        }
+    }
+
+    private static CommandLog.Recording getRecording() {
+        TestLog test = threadTest.get();
+        return test != null && test.recording != null ? test.recording : getOutsideTestsRecording();
+    }
+
+    private static CommandLog.Recording getOutsideTestsRecording() {
+        if (outsideTestsRecording == null) {
+            outsideTestsRecording = readRecording(OUTSIDE_TESTS_LOG_NAME);
+        }
+        return outsideTestsRecording;
+    }
+
+    private static CommandLog.Recording readRecording(String name) {
+        File file = new File(getLogsDirectory(), name + CommandLog.EXTENSION);
+        if (!file.exists()) {
+            Logger.error(LogLevels.LEVEL_3, "DriverRecorder", "Driver commands weren't recorded for " + name);
+            return new CommandLog.Recording();
+        }
+        try {
+            return CommandLog.read(file);
+        } catch (IOException e) {
+            Logger.error(LogLevels.LEVEL_3, "DriverRecorder", "Can't read driver log " + file + ": " + e.toString());
+            return new CommandLog.Recording();
+        }
+    }
+
+    private static synchronized Object replayCommand(int targetId, Method method, Object[] args) throws Throwable {
+        String signature = getSignature(method);
+        String arguments = describeArguments(signature, args);
+        Object response = getRecording().nextResponse(targetId, signature, arguments);
+        if (response == CommandLog.Recording.NOT_RECORDED) {
+            response = getOutsideTestsRecording().nextResponse(targetId, signature, arguments);
+        }
+        if (response == CommandLog.Recording.NOT_RECORDED) {
+            if (method.getReturnType() == void.class) {
+                return null;
+            }
+            throw new WebDriverException("Response to " + signature + " wasn't recorded for " + getTestName());
+        }
+        if (response instanceof CommandLog.RecordedException) {
+            throw toException((CommandLog.RecordedException) response);
+        }
+        return toReplayedValue(response);
+    }
+
+    private static Object toReplayedValue(Object value) throws IOException {
+        if (value instanceof CommandLog.Handle) {
+            return getReplayedObject((CommandLog.Handle) value);
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        } else if (value instanceof CommandLog.FileContents) {
+            File file = File.createTempFile("replayed", null);
+            file.deleteOnExit();
+            Files.write(((CommandLog.FileContents) value).bytes, file);
+            return file;
+        } else if (value instanceof Collection) {
+            Collection<Object> collection = value instanceof Set ? new LinkedHashSet<Object>() : new ArrayList<Object>();
+            for (Object item : (Collection) value) {
+                collection.add(toReplayedValue(item));
+            }
+            return collection;
+        } else if (value instanceof Map) {
+            Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+            for (Object entry : ((Map) value).entrySet()) {
+                map.put(((Map.Entry) entry).getKey(), toReplayedValue(((Map.Entry) entry).getValue()));
+            }
+            return map;
+        }
+        return value;
+    }
+
+    private static Object getReplayedObject(CommandLog.Handle handle) {
+        Object replayedObject = replayedObjects.get(handle.id);
+        if (replayedObject == null) {
+            List<Class<?>> interfaces = new ArrayList<Class<?>>();
+            StringBuilder description = new StringBuilder("Replayed");
+            for (String interfaceName : handle.interfaces) {
+                try {
+                    interfaces.add(Class.forName(interfaceName, false, DriverRecorder.class.getClassLoader()));
+                    description.append(' ').append(interfaceName.substring(interfaceName.lastIndexOf('.') + 1));
+                } catch (ClassNotFoundException e) {
+                    Logger.error(LogLevels.LEVEL_3, "DriverRecorder", "Recorded interface " + interfaceName + " is not available");
+                }
+            }
+            replayedObject = Proxy.newProxyInstance(DriverRecorder.class.getClassLoader(),
+                    interfaces.toArray(new Class<?>[interfaces.size()]),
+                    new ReplayHandler(handle.id, description.append(" #").append(handle.id).toString()));
+            replayedObjects.put(handle.id, replayedObject);
+        }
+        return replayedObject;
+    }
+
+    private static Throwable toException(CommandLog.RecordedException exception) {
+        try {
+            Class<?> exceptionClass = Class.forName(exception.className);
+            if (RuntimeException.class.isAssignableFrom(exceptionClass)) {
+                return (Throwable) exceptionClass.getConstructor(String.class).newInstance(exception.message);
+            }
+        } catch (Exception e) {
+            //Exception without message constructor is replayed as WebDriverException
+        }
+        return new WebDriverException(exception.className + ": " + exception.message);
+    }
+
+    /**
+     * Wraps objects returned by driver which implement Selenium interfaces into recording proxies
+     */
+    private static synchronized Object wrap(Object value) {
+        if (value instanceof List || value instanceof Set) {
+            Collection<Object> collection = value instanceof Set ? new LinkedHashSet<Object>() : new ArrayList<Object>();
+            for (Object item : (Collection) value) {
+                collection.add(wrap(item));
+            }
+            return collection;
+        }
+        if (value instanceof Map) {
+            Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+            for (Object entry : ((Map) value).entrySet()) {
+                map.put(((Map.Entry) entry).getKey(), wrap(((Map.Entry) entry).getValue()));
+            }
+            return map;
+        }
+        if (value == null || getHandleId(value) != null) {
+            return value;
+        }
+        Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+        for (Class<?> type = value.getClass(); type != null; type = type.getSuperclass()) {
+            addSeleniumInterfaces(type.getInterfaces(), interfaces);
+        }
+        if (interfaces.isEmpty()) {
+            return value;
+        }
+        return Proxy.newProxyInstance(DriverRecorder.class.getClassLoader(), interfaces.toArray(new Class<?>[interfaces.size()]),
+                new RecordingHandler(nextHandleId++, value));
+    }
+
+    private static void addSeleniumInterfaces(Class<?>[] types, Set<Class<?>> interfaces) {
+        for (Class<?> type : types) {
+            if (type.getName().startsWith(SELENIUM_PACKAGE) && Modifier.isPublic(type.getModifiers())) {
+                interfaces.add(type);
+            } else {
+                addSeleniumInterfaces(type.getInterfaces(), interfaces);
+            }
+        }
+    }
+
+    /**
+     * Replaces recording proxies in arguments with objects they wrap
+     */
+    private static Object unwrap(Object value) {
+        if (value != null && Proxy.isProxyClass(value.getClass()) && Proxy.getInvocationHandler(value) instanceof RecordingHandler) {
+            return ((RecordingHandler) Proxy.getInvocationHandler(value)).target;
+        } else if (value instanceof Object[]) {
+            Object[] array = (Object[]) Array.newInstance(value.getClass().getComponentType(), ((Object[]) value).length);
+            for (int i = 0; i < array.length; i++) {
+                array[i] = unwrap(((Object[]) value)[i]);
+            }
+            return array;
+        } else if (value instanceof List) {
+            List<Object> list = new ArrayList<Object>();
+            for (Object item : (List) value) {
+                list.add(unwrap(item));
+            }
+            return list;
+        } else if (value instanceof Map) {
+            Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+            for (Object entry : ((Map) value).entrySet()) {
+                map.put(((Map.Entry) entry).getKey(), unwrap(((Map.Entry) entry).getValue()));
+            }
+            return map;
+        }
+        return value;
+    }
+
+    private static String getSignature(Method method) {
+        StringBuilder signature = new StringBuilder(method.getName()).append('(');
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            signature.append(i == 0 ? "" : ",").append(parameterTypes[i].getSimpleName());
+        }
+        return signature.append(')').toString();
+    }
+
+    private static String describeArguments(String signature, Object[] args) {
+        if (args == null || args.length == 0) {
+            return "";
+        }
+        StringBuilder description = new StringBuilder();
+        describe(args, TIME_DEPENDENT_METHODS.contains(signature), description);
+        return description.toString();
+    }
+
+    //Recorded and replayed objects are described by handle number, so arguments match in both modes
+    private static void describe(Object value, boolean timeDependent, StringBuilder description) {
+        Integer handleId = getHandleId(value);
+        if (handleId != null) {
+            description.append('#').append(handleId);
+        } else if (timeDependent && value instanceof Number) {
+            description.append('?');
+        } else if (value instanceof Object[] || value instanceof Collection) {
+            description.append('[');
+            boolean first = true;
+            Collection<?> items = value instanceof Object[] ? Arrays.asList((Object[]) value) : (Collection<?>) value;
+            for (Object item : items) {
+                description.append(first ? "" : ", ");
+                describe(item, timeDependent, description);
+                first = false;
+            }
+            description.append(']');
+        } else if (value instanceof Map) {
+            description.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                description.append(first ? "" : ", ").append(entry.getKey()).append('=');
+                describe(entry.getValue(), timeDependent, description);
+                first = false;
+            }
+            description.append('}');
+        } else if (value == OutputType.BASE64) {
+            description.append("OutputType.BASE64");
+        } else if (value == OutputType.BYTES) {
+            description.append("OutputType.BYTES");
+        } else if (value == OutputType.FILE) {
+            description.append("OutputType.FILE");
+        } else {
+            description.append(value);
+        }
+    }
+
+    /**
+     * Log of the test which runs in a thread
+     */
+    private static final class TestLog {
+
+        private final String name;
+        //Log commands are recorded to
+        private CommandLog log;
+        //Commands replayed to the test
+        private CommandLog.Recording recording;
+
+        private TestLog(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Passes commands to recorded object and writes them with responses to the log
+     */
+    private static final class RecordingHandler implements InvocationHandler {
+
+        private final int id;
+        private final Object target;
+
+        private RecordingHandler(int id, Object target) {
+            this.id = id;
+            this.target = target;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                if (method.getName().equals("equals")) {
+                    return target.equals(unwrap(args[0]));
+                }
+                return method.invoke(target, args);
+            }
+            String signature = getSignature(method);
+            String arguments = describeArguments(signature, args);
+            Object result;
+            try {
+                result = wrap(method.invoke(target, (Object[]) unwrap(args)));
+            } catch (InvocationTargetException e) {
+                writeCommand(id, signature, arguments, e.getTargetException());
+                throw e.getTargetException();
+            }
+            writeCommand(id, signature, arguments, result);
+            return result;
+        }
+    }
+
+    /**
+     * Serves recorded responses to commands
+     */
+    private static final class ReplayHandler implements InvocationHandler {
+
+        private final int id;
+        private final String description;
+
+        private ReplayHandler(int id, String description) {
+            this.id = id;
+            this.description = description;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                return method.getName().equals("hashCode") ? (Object) id : description;
+            }
+            return replayCommand(id, method, args);
+        }
+    }
+}
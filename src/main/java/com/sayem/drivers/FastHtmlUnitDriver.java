@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.drivers;
+
+import com.gargoylesoftware.htmlunit.Cache;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+import org.w3c.dom.css.CSSStyleSheet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HtmlUnit driver tuned for throughput. CSS is not applied, images, style sheets and fonts are not downloaded,
+ * and downloaded scripts are kept in a cache shared by all sessions in JVM, so each new session
+ * doesn't download and compile the same scripts again. Inline scripts are compiled once as well, see {@link CachingJavaScriptEngine}.
+ * Should be used for functional tests which don't depend on page styles.
+ */
+public class FastHtmlUnitDriver extends CachingHtmlUnitDriver {
+
+    public static final int DEFAULT_CACHE_SIZE = 500;
+    public static final int DEFAULT_JAVASCRIPT_TIMEOUT = 20000;
+
+    //Requests for resources with these extensions are answered with empty response without going to network
+    private static final String[] BLOCKED_EXTENSIONS = {".css", ".png", ".jpg", ".jpeg", ".gif", ".ico", ".svg", ".webp",
+            ".woff", ".woff2", ".ttf", ".eot"};
+
+    private static final SharedCache sharedCache = new SharedCache();
+    private static volatile long javaScriptTimeout = DEFAULT_JAVASCRIPT_TIMEOUT;
+
+    public FastHtmlUnitDriver() {
+        super(true);
+    }
+
+    /**
+     * Configures fast HtmlUnit sessions. Applies to sessions created afterwards
+     *
+     * @param cacheSize         maximum number of scripts and responses kept in shared cache
+     * @param javaScriptTimeout maximum time in milliseconds single script can run, 0 for no limit
+     * @throws InstantiationError if values are incorrect
+     */
+    public static void configure(int cacheSize, long javaScriptTimeout) throws InstantiationError {
+        if (cacheSize < 0 || javaScriptTimeout < 0) {
+            throw new InstantiationError("HtmlUnit cache size and JavaScript timeout can't be negative");
+        }
+        sharedCache.setMaxSize(cacheSize);
+        FastHtmlUnitDriver.javaScriptTimeout = javaScriptTimeout;
+    }
+
+    /**
+     * Retrieves number of entries in cache shared by all fast HtmlUnit sessions
+     *
+     * @return number of cached entries
+     */
+    public static int getCacheSize() {
+        return sharedCache.getSize();
+    }
+
+    @Override
+    protected WebClient modifyWebClient(WebClient client) {
+        client = super.modifyWebClient(client);
+        client.setCssEnabled(false);
+        client.setCache(sharedCache);
+        client.setJavaScriptTimeout(javaScriptTimeout);
+        new StaticResourceBlocker(client);
+        return client;
+    }
+
+    /**
+     * Answers requests for styles, images and fonts with empty response
+     */
+    private static class StaticResourceBlocker extends WebConnectionWrapper {
+
+        StaticResourceBlocker(WebClient client) {
+            super(client);
+        }
+
+        @Override
+        public WebResponse getResponse(WebRequest request) throws IOException {
+            String path = request.getUrl().getPath().toLowerCase();
+            for (String extension : BLOCKED_EXTENSIONS) {
+                if (path.endsWith(extension)) {
+                    List<NameValuePair> headers = new ArrayList<NameValuePair>();
+                    headers.add(new NameValuePair("Content-Type", extension.equals(".css") ? "text/css" : "application/octet-stream"));
+                    return new WebResponse(new WebResponseData(new byte[0], 200, "OK", headers), request, 0);
+                }
+            }
+            return super.getResponse(request);
+        }
+    }
+
+    /**
+     * HtmlUnit cache which can be shared by sessions running in different threads.
+     * Scripts without caching headers are cached too, as application under test doesn't change during test run,
+     * unless server explicitly forbids caching. Other responses are cached only if their headers allow it.
+     */
+    private static class SharedCache extends Cache {
+
+        SharedCache() {
+            setMaxSize(DEFAULT_CACHE_SIZE);
+        }
+
+        @Override
+        protected boolean isDynamicContent(WebResponse response) {
+            String contentType = response.getContentType();
+            if (contentType == null || !contentType.contains("javascript")) {
+                return super.isDynamicContent(response);
+            }
+            String cacheControl = response.getResponseHeaderValue("Cache-Control");
+            return cacheControl != null && (cacheControl.contains("no-store") || cacheControl.contains("no-cache"));
+        }
+
+        @Override
+        public synchronized void cacheIfPossible(WebRequest request, WebResponse response, Object toCache) {
+            super.cacheIfPossible(request, response, toCache);
+        }
+
+        @Override
+        public synchronized void cache(String css, CSSStyleSheet styleSheet) {
+            super.cache(css, styleSheet);
+        }
+
+        @Override
+        public synchronized Object getCachedObject(WebRequest request) {
+            return super.getCachedObject(request);
+        }
+
+        @Override
+        public synchronized CSSStyleSheet getCachedStyleSheet(String css) {
+            return super.getCachedStyleSheet(css);
+        }
+
+        @Override
+        public synchronized void setMaxSize(int maxSize) {
+            super.setMaxSize(maxSize);
+        }
+
+        @Override
+        public synchronized int getSize() {
+            return super.getSize();
+        }
+
+        @Override
+        public synchronized void clear() {
+            super.clear();
+        }
+    }
+}
@@ -25,8 +25,10 @@ package com.sayem.enums;
 public enum BrowserType {
     UNKNOWN,
     HTML_UNIT,
+    HTML_UNIT_FAST,
     FIREFOX,
     IE,
-    CHROME;
+    CHROME,
+    REPLAY;
 }
 
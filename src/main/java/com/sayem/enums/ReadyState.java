@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.enums;
+
+/**
+ * Enum represents when opened page is considered ready for use by the test.
+ * LOAD waits for full page load including all resources, DOM_INTERACTIVE waits until document is parsed,
+ * ELEMENT waits until given element appears, NETWORK_IDLE waits until page stops making requests.
+ */
+public enum ReadyState {
+    LOAD,
+    DOM_INTERACTIVE,
+    ELEMENT,
+    NETWORK_IDLE;
+}
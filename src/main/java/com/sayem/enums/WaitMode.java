@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.enums;
+
+/**
+ * Enum represents how page objects wait for elements.
+ * EVENT waits inside the browser for DOM changes with one call per wait and falls back to polling
+ * if browser can't observe DOM changes, POLLING checks for element repeatedly through WebDriver.
+ */
+public enum WaitMode {
+    EVENT,
+    POLLING;
+}
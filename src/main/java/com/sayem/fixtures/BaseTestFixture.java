@@ -16,12 +16,29 @@
 
 package com.sayem.fixtures;
 
+import com.sayem.artifacts.ArtifactWriter;
+import com.sayem.artifacts.StepHistory;
 import com.sayem.configuration.Configuration;
+import com.sayem.drivers.DriverRecorder;
 import com.sayem.exceptions.StopTestException;
+import com.sayem.helpers.FileHelper;
+import com.sayem.monitoring.ResourceAccounting;
+import com.sayem.monitoring.ResourceSample;
+import com.sayem.network.RequestRulesProxy;
+import com.sayem.pages.LocatorOptimizer;
+import com.sayem.pages.LocatorStatistics;
 import com.sayem.pages.PageFactory;
 import com.sayem.testdata.TestDataLoader;
+import com.sayem.tracing.TraceRecorder;
+import org.testng.ITestContext;
+import org.testng.ITestResult;
 import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.AfterSuite;
 import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+
+import java.lang.reflect.Method;
 
 /**
  * Base Test Fixture. All tests fixtures should extend this class.
@@ -38,20 +55,76 @@ import org.testng.annotations.BeforeClass;
 
 public abstract class BaseTestFixture {
 
+    //How long to wait in seconds for screenshots and other artifacts to be written when suite is finished
+    private static final long ARTIFACTS_WRITE_TIMEOUT = 120;
+    //How long to wait in seconds for directories discarded by restores to be deleted when suite is finished
+    private static final long DISCARDED_FILES_DELETE_TIMEOUT = 60;
 
-    @BeforeClass
     public static void setUp() {
         //Configure test framework
         Configuration.configure();
-
     }
 
-    @AfterClass
     public static void tearDown() {
         //That will kill WebDriver instance between tests
         PageFactory.tearDown();
     }
 
+    /**
+     * Sets fixture up, resources it consumes are accounted to the fixture on whatever thread it runs
+     */
+    @BeforeClass
+    public void setUpFixture() {
+        ResourceSample start = ResourceAccounting.sample();
+        setUp();
+        ResourceAccounting.recordSetUp(getClass(), start);
+    }
+
+    /**
+     * Tears fixture down, resources it consumes are accounted to the fixture on whatever thread it runs
+     */
+    @AfterClass
+    public void tearDownFixture() {
+        ResourceSample start = ResourceAccounting.sample();
+        tearDown();
+        ResourceAccounting.recordTearDown(getClass(), start);
+    }
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUpTestMethod(Method method) {
+        StepHistory.startTest(getClass().getName() + "." + method.getName());
+        DriverRecorder.startTest(getClass().getName() + "." + method.getName());
+        ResourceAccounting.startTest(getClass());
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDownTestMethod(ITestResult result) {
+        ResourceAccounting.endTest(getClass(), result.getMethod().getMethodName());
+        //Steps which led to failure are written only for failed tests, together with exception which failed the test
+        boolean failed = result.getStatus() == ITestResult.FAILURE;
+        if (failed && result.getThrowable() != null) {
+            StepHistory.recordFailure(result.getThrowable().toString());
+        }
+        StepHistory.endTest(failed);
+        //Timeline is written per test only if it's configured so
+        TraceRecorder.writeTestTrace(getClass().getName() + "." + result.getMethod().getMethodName());
+        //Commands issued until next test, like driver tear down, go to outside-tests log
+        DriverRecorder.endTest();
+    }
+
+    @AfterSuite(alwaysRun = true)
+    public static void tearDownSuite(ITestContext context) {
+        //Timeline is written per suite only if it's configured so
+        TraceRecorder.writeSuiteTrace(context.getSuite().getName());
+        ResourceAccounting.writeReport();
+        LocatorOptimizer.writeReport();
+        LocatorStatistics.save();
+        DriverRecorder.close();
+        RequestRulesProxy.stop();
+        ArtifactWriter.awaitPendingWrites(ARTIFACTS_WRITE_TIMEOUT);
+        FileHelper.awaitPendingDeletes(DISCARDED_FILES_DELETE_TIMEOUT);
+    }
+
     /**
      * Retrieves test data for test.
      *
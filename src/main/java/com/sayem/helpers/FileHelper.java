@@ -16,10 +16,34 @@
 
 package com.sayem.helpers;
 
-import com.google.common.io.Files;
+import com.sayem.logger.LogLevels;
+import com.sayem.logger.Logger;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * File helpers
@@ -30,20 +54,35 @@ import java.io.IOException;
 public abstract class FileHelper {
 
     private static final String BACKUP_FILE_EXTENSION = ".bak";
+    private static final String DISCARDED_FILE_EXTENSION = ".discarded";
+
+    //Copies and deletes of directory trees are done in parallel by these threads
+    private static final ExecutorService fileOperationsExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "file-helper");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    //Number of discarded directories which are queued or being deleted
+    private static final Object pendingDeletesLock = new Object();
+    private static int pendingDeletes;
+    //Discarded directories which are queued or being deleted, so leftovers of previous runs are not queued twice
+    private static final Set<Path> claimedDeletes = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
 
     /**
      * Restore file from backup and delete backup afterwards.
-     * Backup file should be located in the same folder and have .bak extension
+     * Backup file should be located in the same folder and have .bak extension.
+     * Backup is renamed to original file, so restore takes the same time regardless of file size.
      *
      * @param fileName name of a file to be restored without .bak extension
      * @throws java.io.IOException if backup can not be restored
      */
     public static void restoreFile(String fileName) throws IOException {
         try {
-            File originalFile = new File(fileName);
-            File backUpFile = new File(fileName + BACKUP_FILE_EXTENSION);
-            Files.copy(backUpFile, originalFile);
-            backUpFile.delete();
+            move(Paths.get(fileName + BACKUP_FILE_EXTENSION), Paths.get(fileName));
         } catch (Exception e) {
             throw new IOException("Can't restore " + fileName + "file from backup: " + e.toString());
         }
@@ -57,14 +96,271 @@ public abstract class FileHelper {
      */
     public static void backUpFile(String fileName) throws IOException {
         try {
-            File originalFile = new File(fileName);
-            File backUpFile = new File(fileName + BACKUP_FILE_EXTENSION);
-            Files.copy(originalFile, backUpFile);
+            copyFile(Paths.get(fileName), Paths.get(fileName + BACKUP_FILE_EXTENSION));
         } catch (Exception e) {
             throw new IOException("Can't back up " + fileName + ": " + e.toString());
         }
     }
 
+    /**
+     * Backup directory with all its content to new directory with .bak extension. Files are copied in parallel.
+     *
+     * @param directoryName name of a directory to back up
+     * @throws java.io.IOException if backup can not be created
+     */
+    public static void backUpDirectory(String directoryName) throws IOException {
+        backUpDirectory(directoryName, false);
+    }
+
+    /**
+     * Backup directory with all its content to new directory with .bak extension.
+     * Files can be hard-linked instead of copied, which is instant and takes no disk space, but it's safe only when
+     * test replaces or deletes files in the directory and never modifies them in place, as linked backup shares content with original.
+     * If hard links are not supported files are copied. Existing backup is replaced.
+     *
+     * @param directoryName name of a directory to back up
+     * @param linkFiles     true if files should be hard-linked instead of copied
+     * @throws java.io.IOException if backup can not be created
+     */
+    public static void backUpDirectory(String directoryName, boolean linkFiles) throws IOException {
+        Path directory = Paths.get(directoryName);
+        Path backUpDirectory = Paths.get(directoryName + BACKUP_FILE_EXTENSION);
+        try {
+            if (!Files.isDirectory(directory)) {
+                throw new IOException(directoryName + " is not a directory");
+            }
+            if (Files.exists(backUpDirectory)) {
+                deleteRecursively(backUpDirectory);
+            }
+            copyDirectory(directory, backUpDirectory, linkFiles);
+        } catch (Exception e) {
+            throw new IOException("Can't back up " + directoryName + ": " + e.toString());
+        }
+    }
+
+    /**
+     * Restore directory from backup created by {@link #backUpDirectory}. Original directory is renamed and backup
+     * is renamed in its place, so restore takes the same time regardless of directory size.
+     * Content of original directory is deleted in background once backup is in its place, if backup can't be renamed
+     * original directory is put back. Discarded directories left by previous runs are deleted too.
+     *
+     * @param directoryName name of a directory to be restored without .bak extension
+     * @throws java.io.IOException if backup can not be restored
+     */
+    public static void restoreDirectory(String directoryName) throws IOException {
+        Path directory = Paths.get(directoryName).toAbsolutePath();
+        Path backUpDirectory = Paths.get(directoryName + BACKUP_FILE_EXTENSION).toAbsolutePath();
+        try {
+            if (!Files.isDirectory(backUpDirectory)) {
+                throw new IOException("Backup " + backUpDirectory + " is not found");
+            }
+            deleteDiscardedDirectories(directory);
+            if (Files.exists(directory)) {
+                Path discardedDirectory = Paths.get(directory + DISCARDED_FILE_EXTENSION + System.nanoTime());
+                move(directory, discardedDirectory);
+                try {
+                    move(backUpDirectory, directory);
+                } catch (IOException e) {
+                    move(discardedDirectory, directory);
+                    throw e;
+                }
+                deleteInBackground(discardedDirectory);
+            } else {
+                move(backUpDirectory, directory);
+            }
+        } catch (Exception e) {
+            throw new IOException("Can't restore " + directoryName + " directory from backup: " + e.toString());
+        }
+    }
+
+    /**
+     * Waits until directories discarded by {@link #restoreDirectory} are deleted. Deleting threads are daemons,
+     * so directories which are not deleted when JVM exits stay on disk until next restore of the same directory.
+     *
+     * @param timeout maximum time to wait in seconds
+     */
+    public static void awaitPendingDeletes(long timeout) {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeout);
+        synchronized (pendingDeletesLock) {
+            try {
+                long remainingTime = deadline - System.currentTimeMillis();
+                while (pendingDeletes > 0 && remainingTime > 0) {
+                    pendingDeletesLock.wait(remainingTime);
+                    remainingTime = deadline - System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (pendingDeletes > 0) {
+                Logger.error(LogLevels.LEVEL_3, "FileHelper", "Not all discarded directories were deleted in " + timeout + " seconds");
+            }
+        }
+    }
+
+    /**
+     * Queues deletion of directories named like given directory with .discarded and a number appended,
+     * which were left by restores interrupted by JVM exit
+     */
+    private static void deleteDiscardedDirectories(Path directory) throws IOException {
+        Path parent = directory.getParent();
+        if (parent == null || !Files.isDirectory(parent)) {
+            return;
+        }
+        String prefix = directory.getFileName() + DISCARDED_FILE_EXTENSION;
+        DirectoryStream<Path> siblings = Files.newDirectoryStream(parent);
+        try {
+            for (Path sibling : siblings) {
+                String name = sibling.getFileName().toString();
+                if (name.startsWith(prefix) && name.substring(prefix.length()).matches("\\d+")
+                        && !claimedDeletes.contains(sibling)) {
+                    deleteInBackground(sibling);
+                }
+            }
+        } finally {
+            siblings.close();
+        }
+    }
+
+    private static void deleteInBackground(final Path path) {
+        claimedDeletes.add(path);
+        synchronized (pendingDeletesLock) {
+            pendingDeletes++;
+        }
+        fileOperationsExecutor.submit(new Callable<Void>() {
+            public Void call() throws IOException {
+                try {
+                    deleteRecursively(path);
+                } catch (IOException e) {
+                    Logger.error(LogLevels.LEVEL_3, "FileHelper", "Can't delete " + path + ": " + e.toString());
+                } finally {
+                    claimedDeletes.remove(path);
+                    synchronized (pendingDeletesLock) {
+                        pendingDeletes--;
+                        pendingDeletesLock.notifyAll();
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Copies file using FileChannel transfer, which lets operating system copy data without passing it through Java heap.
+     * Existing target file is replaced.
+     *
+     * @param source file to copy
+     * @param target file to copy to
+     * @throws IOException if file can not be copied
+     */
+    public static void copyFile(Path source, Path target) throws IOException {
+        FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+        try {
+            FileChannel targetChannel = FileChannel.open(target, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                long size = sourceChannel.size();
+                long position = 0;
+                while (position < size) {
+                    position += sourceChannel.transferTo(position, size - position, targetChannel);
+                }
+            } finally {
+                targetChannel.close();
+            }
+        } finally {
+            sourceChannel.close();
+        }
+        Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+    }
+
+    /**
+     * Renames file or directory, atomically if file system supports it. Existing target file is replaced.
+     *
+     * @param source file or directory to rename
+     * @param target new name
+     * @throws IOException if file can not be renamed
+     */
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (FileAlreadyExistsException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Copies directory tree. Directories are created while tree is walked, files are copied or linked in parallel.
+     */
+    private static void copyDirectory(final Path source, final Path target, final boolean linkFiles) throws IOException {
+        final List<Future<Void>> copies = new ArrayList<Future<Void>>();
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                Files.createDirectory(target.resolve(source.relativize(directory)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, BasicFileAttributes attributes) throws IOException {
+                final Path targetFile = target.resolve(source.relativize(file));
+                copies.add(fileOperationsExecutor.submit(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        if (linkFiles) {
+                            try {
+                                Files.createLink(targetFile, file);
+                                return null;
+                            } catch (UnsupportedOperationException e) {
+                                //Fall back to copy
+                            } catch (IOException e) {
+                                //Hard links are not supported by file system or across file systems, fall back to copy
+                            }
+                        }
+                        copyFile(file, targetFile);
+                        return null;
+                    }
+                }));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        waitFor(copies);
+    }
+
+    /**
+     * Deletes directory tree or file
+     */
+    private static void deleteRecursively(Path path) throws IOException {
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.delete(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void waitFor(List<Future<Void>> operations) throws IOException {
+        try {
+            for (Future<Void> operation : operations) {
+                operation.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for file operations");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause().toString());
+        }
+    }
+
     /**
      * Retrieves absolute path to specified resource
      *
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.helpers;
+
+import com.sayem.artifacts.ArtifactWriter;
+import com.sayem.logger.LogLevels;
+import com.sayem.logger.Logger;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+
+import java.io.File;
+import java.util.concurrent.Future;
+
+/**
+ * Helpers to capture screenshots of browser window
+ */
+public class ScreenshotHelper {
+
+    /**
+     * Captures screenshot of active browser window. Screenshot is taken from the browser on current thread,
+     * decoding and writing to test results directory happens in background, see {@link ArtifactWriter}.
+     *
+     * @param driver WebDriver object linked to browser window
+     * @return Future which returns screenshot file, or null if driver can't take screenshots
+     */
+    public static Future<File> takeScreenshot(WebDriver driver) {
+        if (!(driver instanceof TakesScreenshot)) {
+            Logger.info(LogLevels.LEVEL_9, "ScreenshotHelper", driver.getClass().getSimpleName() + " can't take screenshots");
+            return null;
+        }
+        //Base64 is what browser returns, decoding it is left to artifact writer
+        String screenshot = ((TakesScreenshot) driver).getScreenshotAs(OutputType.BASE64);
+        return ArtifactWriter.writeScreenshot(screenshot);
+    }
+}
@@ -65,4 +65,42 @@ public abstract class StringHelper {
         }
         return Joiner.on("").join(convertedWords);
     }
+
+    /**
+     * Convert string into quoted JSON string literal, escaping special characters
+     *
+     * @param text string to convert
+     * @return JSON string literal
+     */
+    public static String toJsonString(String text) {
+        StringBuilder json = new StringBuilder(text.length() + 2);
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append('"').toString();
+    }
 }
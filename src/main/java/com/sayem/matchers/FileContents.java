@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.matchers;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Streams file content through fixed size buffers, so content of large files can be compared and searched
+ * without loading files into heap. Buffers are read sequentially and reading stops at first mismatch.
+ * Files are not memory-mapped: mapping can't be released until it's garbage collected, and on Windows
+ * mapped file can't be deleted or replaced until then.
+ */
+abstract class FileContents {
+
+    //Size of content read at once
+    static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Finds offset of first byte which differs in two files
+     *
+     * @param actual   file to compare
+     * @param expected file to compare with
+     * @return offset of first differing byte, length of shorter file if it's a prefix of longer one
+     *         or -1 if files have the same content
+     * @throws IOException if files can not be read
+     */
+    static long firstDifference(File actual, File expected) throws IOException {
+        FileChannel actualChannel = open(actual);
+        try {
+            FileChannel expectedChannel = open(expected);
+            try {
+                long actualSize = actualChannel.size();
+                long expectedSize = expectedChannel.size();
+                long size = Math.min(actualSize, expectedSize);
+                ByteBuffer actualBuffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, size));
+                ByteBuffer expectedBuffer = ByteBuffer.allocate(actualBuffer.capacity());
+                for (long position = 0; position < size; position += actualBuffer.capacity()) {
+                    int length = (int) Math.min(actualBuffer.capacity(), size - position);
+                    read(actualChannel, actualBuffer, length);
+                    read(expectedChannel, expectedBuffer, length);
+                    int difference = firstDifference(actualBuffer, expectedBuffer, length);
+                    if (difference >= 0) {
+                        return position + difference;
+                    }
+                }
+                return actualSize == expectedSize ? -1 : size;
+            } finally {
+                expectedChannel.close();
+            }
+        } finally {
+            actualChannel.close();
+        }
+    }
+
+    /**
+     * Calculates digest of file content
+     *
+     * @param file      file to calculate digest of
+     * @param algorithm name of MessageDigest algorithm, like MD5 or SHA-256
+     * @return digest as lowercase hex string
+     * @throws IOException if file can not be read
+     */
+    static String digest(File file, String algorithm) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unknown checksum algorithm " + algorithm);
+        }
+        FileChannel channel = open(file);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, channel.size()) + 1);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            channel.close();
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Finds first occurrence of byte sequence in file. Sequence may span buffers.
+     *
+     * @param file     file to search
+     * @param sequence bytes to find
+     * @return offset of first occurrence or -1 if file doesn't contain sequence
+     * @throws IOException if file can not be read
+     */
+    static long indexOf(File file, byte[] sequence) throws IOException {
+        if (sequence.length == 0) {
+            return 0;
+        }
+        int[] fallback = fallbackTable(sequence);
+        FileChannel channel = open(file);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, channel.size()) + 1);
+            //Number of sequence bytes matched so far, carried over buffer boundaries
+            int matched = 0;
+            long position = 0;
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    position++;
+                    while (matched > 0 && b != sequence[matched]) {
+                        matched = fallback[matched - 1];
+                    }
+                    if (b == sequence[matched]) {
+                        matched++;
+                    }
+                    if (matched == sequence.length) {
+                        return position - sequence.length;
+                    }
+                }
+                buffer.clear();
+            }
+            return -1;
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * Fills buffer with given number of bytes from channel
+     *
+     * @throws EOFException if file got shorter while it's read
+     */
+    private static void read(FileChannel channel, ByteBuffer buffer, int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("File got shorter while it was read");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static int firstDifference(ByteBuffer actual, ByteBuffer expected, int size) {
+        int offset = 0;
+        //Compare eight bytes at once and find exact byte only in differing word
+        while (offset + 8 <= size && actual.getLong(offset) == expected.getLong(offset)) {
+            offset += 8;
+        }
+        for (; offset < size; offset++) {
+            if (actual.get(offset) != expected.get(offset)) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Builds Knuth-Morris-Pratt table: length of the longest proper prefix of sequence
+     * which is also a suffix of sequence part ending at each position
+     */
+    private static int[] fallbackTable(byte[] sequence) {
+        int[] table = new int[sequence.length];
+        int length = 0;
+        for (int i = 1; i < sequence.length; i++) {
+            while (length > 0 && sequence[i] != sequence[length]) {
+                length = table[length - 1];
+            }
+            if (sequence[i] == sequence[length]) {
+                length++;
+            }
+            table[i] = length;
+        }
+        return table;
+    }
+}
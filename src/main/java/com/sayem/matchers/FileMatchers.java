@@ -9,10 +9,21 @@ package com.sayem.matchers;
 
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
 import org.hamcrest.TypeSafeMatcher;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 
@@ -23,13 +34,16 @@ import static org.hamcrest.CoreMatchers.equalTo;
  */
 public class FileMatchers {
 
+    //Tree matchers report at most this number of mismatched files
+    private static final int MAX_REPORTED_MISMATCHES = 100;
+
     public static Matcher<File> isDirectory() {
         return new TypeSafeMatcher<File>() {
             File fileTested;
 
             public boolean matchesSafely(File item) {
                 fileTested = item;
-                return item.isDirectory();
+                return FileSnapshot.of(item).isDirectory();
             }
 
             public void describeTo(Description description) {
@@ -46,7 +60,7 @@ public class FileMatchers {
 
             public boolean matchesSafely(File item) {
                 fileTested = item;
-                return item.exists();
+                return FileSnapshot.of(item).exists();
             }
 
             public void describeTo(Description description) {
@@ -63,7 +77,7 @@ public class FileMatchers {
 
             public boolean matchesSafely(File item) {
                 fileTested = item;
-                return item.isFile();
+                return FileSnapshot.of(item).isFile();
             }
 
             public void describeTo(Description description) {
@@ -80,7 +94,7 @@ public class FileMatchers {
 
             public boolean matchesSafely(File item) {
                 fileTested = item;
-                return item.canRead();
+                return FileSnapshot.of(item).isReadable();
             }
 
             public void describeTo(Description description) {
@@ -97,7 +111,7 @@ public class FileMatchers {
 
             public boolean matchesSafely(File item) {
                 fileTested = item;
-                return item.canWrite();
+                return FileSnapshot.of(item).isWritable();
             }
 
             public void describeTo(Description description) {
@@ -108,6 +122,35 @@ public class FileMatchers {
         };
     }
 
+    /**
+     * Matches file which matches all specified matchers. Unlike Hamcrest allOf, attributes of a file are read once
+     * and shared by all matchers, so combining exists(), isFile() and sized() costs one file system call.
+     */
+    @SafeVarargs
+    public static Matcher<File> allOf(final Matcher<File>... matchers) {
+        return new TypeSafeMatcher<File>() {
+            public boolean matchesSafely(File item) {
+                boolean scoped = FileSnapshot.beginScope();
+                try {
+                    for (Matcher<File> matcher : matchers) {
+                        if (!matcher.matches(item)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                } finally {
+                    if (scoped) {
+                        FileSnapshot.endScope();
+                    }
+                }
+            }
+
+            public void describeTo(Description description) {
+                description.appendList("(", " and ", ")", Arrays.asList(matchers));
+            }
+        };
+    }
+
     public static Matcher<File> sized(long size) {
         return sized(equalTo(size));
     }
@@ -118,9 +161,11 @@ public class FileMatchers {
             long length;
 
             public boolean matchesSafely(File item) {
+                //Verdict is computed from locals, fields only describe last match, so matcher can be shared by threads
+                long itemLength = FileSnapshot.of(item).length();
                 fileTested = item;
-                length = item.length();
-                return size.matches(length);
+                length = itemLength;
+                return size.matches(itemLength);
             }
 
             public void describeTo(Description description) {
@@ -187,4 +232,247 @@ public class FileMatchers {
             }
         };
     }
+
+    /**
+     * Matches file which has the same content as expected file. Files are compared region by region
+     * and comparison stops at first differing byte, which offset is reported.
+     */
+    public static Matcher<File> hasSameContentAs(final File expected) {
+        return new TypeSafeMatcher<File>() {
+            File fileTested;
+            long difference;
+            IOException error;
+
+            public boolean matchesSafely(File item) {
+                fileTested = item;
+                try {
+                    long itemDifference = FileContents.firstDifference(item, expected);
+                    difference = itemDifference;
+                    return itemDifference < 0;
+                } catch (IOException e) {
+                    error = e;
+                    return false;
+                }
+            }
+
+            public void describeTo(Description description) {
+                description.appendText(" that file ");
+                description.appendValue(fileTested);
+                description.appendText(" has the same content as ");
+                description.appendValue(expected);
+                if (error != null) {
+                    description.appendText(", but it can't be read: " + error.getMessage());
+                } else {
+                    description.appendText(", but it differs at offset " + difference);
+                }
+            }
+        };
+    }
+
+    /**
+     * Matches file which content has expected checksum
+     *
+     * @param algorithm MessageDigest algorithm name, like MD5, SHA-1 or SHA-256
+     * @param checksum  expected checksum as hex string
+     */
+    public static Matcher<File> hasChecksum(final String algorithm, final String checksum) {
+        return new TypeSafeMatcher<File>() {
+            File fileTested;
+            String actualChecksum;
+            IOException error;
+
+            public boolean matchesSafely(File item) {
+                fileTested = item;
+                try {
+                    String itemChecksum = FileContents.digest(item, algorithm);
+                    actualChecksum = itemChecksum;
+                    return itemChecksum.equalsIgnoreCase(checksum);
+                } catch (IOException e) {
+                    error = e;
+                    return false;
+                }
+            }
+
+            public void describeTo(Description description) {
+                description.appendText(" that file ");
+                description.appendValue(fileTested);
+                description.appendText(" has " + algorithm + " checksum ");
+                description.appendValue(checksum);
+                if (error != null) {
+                    description.appendText(", but it can't be read: " + error.getMessage());
+                } else {
+                    description.appendText(", not ");
+                    description.appendValue(actualChecksum);
+                }
+            }
+        };
+    }
+
+    /**
+     * Matches file which contains specified byte sequence. File is searched as a stream, without loading it into memory.
+     */
+    public static Matcher<File> containsBytes(final byte[] sequence) {
+        return new TypeSafeMatcher<File>() {
+            File fileTested;
+            IOException error;
+
+            public boolean matchesSafely(File item) {
+                fileTested = item;
+                try {
+                    return FileContents.indexOf(item, sequence) >= 0;
+                } catch (IOException e) {
+                    error = e;
+                    return false;
+                }
+            }
+
+            public void describeTo(Description description) {
+                description.appendText(" that file ");
+                description.appendValue(fileTested);
+                description.appendText(" contains " + sequence.length + " bytes sequence");
+                if (error != null) {
+                    description.appendText(", but it can't be read: " + error.getMessage());
+                }
+            }
+        };
+    }
+
+    /**
+     * Matches directory which contains exactly the files listed in manifest. Directory tree is walked in parallel
+     * and all missing, unexpected or wrongly sized files are reported together.
+     *
+     * @param manifest expected sizes of files by their path relative to directory, with '/' as separator.
+     *                 Size can be null if any size is allowed
+     */
+    public static Matcher<File> matchesManifest(final Map<String, Long> manifest) {
+        return new TypeSafeMatcher<File>() {
+            File fileTested;
+            List<String> mismatches;
+            IOException error;
+
+            public boolean matchesSafely(File item) {
+                fileTested = item;
+                final Path root = item.toPath();
+                final ConcurrentMap<String, Long> found = new ConcurrentHashMap<String, Long>();
+                try {
+                    FileTree.walk(root, new FileTree.Visitor() {
+                        public void visitFile(Path file, BasicFileAttributes attributes) {
+                            found.put(FileTree.relativePath(root, file), attributes.size());
+                        }
+                    });
+                } catch (IOException e) {
+                    error = e;
+                    return false;
+                }
+                mismatches = new ArrayList<String>();
+                for (Map.Entry<String, Long> expected : manifest.entrySet()) {
+                    Long size = found.remove(expected.getKey());
+                    if (size == null) {
+                        mismatches.add(expected.getKey() + " is missing");
+                    } else if (expected.getValue() != null && !expected.getValue().equals(size)) {
+                        mismatches.add(expected.getKey() + " is sized " + size + ", not " + expected.getValue());
+                    }
+                }
+                for (String unexpected : new TreeSet<String>(found.keySet())) {
+                    mismatches.add(unexpected + " is not expected");
+                }
+                return mismatches.isEmpty();
+            }
+
+            public void describeTo(Description description) {
+                description.appendText(" that directory ");
+                description.appendValue(fileTested);
+                description.appendText(" matches manifest of " + manifest.size() + " files");
+                if (error != null) {
+                    description.appendText(", but it can't be read: " + error.getMessage());
+                } else {
+                    appendMismatches(description, mismatches, mismatches == null ? 0 : mismatches.size());
+                }
+            }
+        };
+    }
+
+    /**
+     * Matches directory in which every file, in all subdirectories, matches specified matcher.
+     * Directory tree and file attributes are read in parallel, then files are matched one by one in the calling thread,
+     * so any matcher can be used. All files which don't match are reported together.
+     *
+     * @param matcher matcher to apply to files, directories themselves are not matched
+     */
+    public static Matcher<File> allFilesMatch(final Matcher<File> matcher) {
+        return new TypeSafeMatcher<File>() {
+            File fileTested;
+            List<String> mismatches;
+            int failedCount;
+            IOException error;
+
+            public boolean matchesSafely(File item) {
+                fileTested = item;
+                final ConcurrentMap<Path, BasicFileAttributes> files = new ConcurrentHashMap<Path, BasicFileAttributes>();
+                try {
+                    FileTree.walk(item.toPath(), new FileTree.Visitor() {
+                        public void visitFile(Path file, BasicFileAttributes attributes) {
+                            files.put(file, attributes);
+                        }
+                    });
+                } catch (IOException e) {
+                    error = e;
+                    return false;
+                }
+                mismatches = new ArrayList<String>();
+                failedCount = 0;
+                for (Map.Entry<Path, BasicFileAttributes> file : new TreeMap<Path, BasicFileAttributes>(files).entrySet()) {
+                    //Attributes read by tree walk are reused by attribute matchers
+                    File matchedFile = file.getKey().toFile();
+                    boolean scoped = !file.getValue().isSymbolicLink() && FileSnapshot.beginScope(matchedFile, file.getValue());
+                    try {
+                        if (!matcher.matches(matchedFile)) {
+                            failedCount++;
+                            //Matchers describe the last matched file, so mismatch is described before next file is matched
+                            if (mismatches.size() < MAX_REPORTED_MISMATCHES) {
+                                Description mismatch = new StringDescription();
+                                matcher.describeTo(mismatch);
+                                mismatches.add(mismatch.toString().trim());
+                            }
+                        }
+                    } finally {
+                        if (scoped) {
+                            FileSnapshot.endScope();
+                        }
+                    }
+                }
+                return failedCount == 0;
+            }
+
+            public void describeTo(Description description) {
+                description.appendText(" that all files under ");
+                description.appendValue(fileTested);
+                description.appendText(" match ");
+                description.appendDescriptionOf(matcher);
+                if (error != null) {
+                    description.appendText(", but directory can't be read: " + error.getMessage());
+                } else {
+                    appendMismatches(description, mismatches, failedCount);
+                }
+            }
+        };
+    }
+
+    private static void appendMismatches(Description description, List<String> mismatches, int mismatchesCount) {
+        if (mismatches == null || mismatches.isEmpty()) {
+            return;
+        }
+        description.appendText(", but:");
+        int reported = 0;
+        for (String mismatch : mismatches) {
+            if (reported == MAX_REPORTED_MISMATCHES) {
+                break;
+            }
+            description.appendText("\n  " + mismatch);
+            reported++;
+        }
+        if (mismatchesCount > reported) {
+            description.appendText("\n  and " + (mismatchesCount - reported) + " more");
+        }
+    }
 }
\ No newline at end of file
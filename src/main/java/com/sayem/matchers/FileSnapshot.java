@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.matchers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Attributes of a file read with one call. Matchers which are evaluated together in a snapshot scope
+ * share one snapshot per file, so combined matchers don't read the same attributes several times.
+ * Readable and writable flags need a separate access check and are read only when requested.
+ */
+class FileSnapshot {
+
+    //Snapshots shared by matchers evaluated in current scope of a thread, null if thread is not in scope
+    private static final ThreadLocal<Map<File, FileSnapshot>> scope = new ThreadLocal<Map<File, FileSnapshot>>();
+
+    private final File file;
+    private final BasicFileAttributes attributes;
+    private Boolean readable;
+    private Boolean writable;
+
+    private FileSnapshot(File file, BasicFileAttributes attributes) {
+        this.file = file;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Returns snapshot of file attributes, shared one if thread is in snapshot scope
+     */
+    static FileSnapshot of(File file) {
+        Map<File, FileSnapshot> snapshots = scope.get();
+        if (snapshots == null) {
+            return read(file);
+        }
+        FileSnapshot snapshot = snapshots.get(file);
+        if (snapshot == null) {
+            snapshot = read(file);
+            snapshots.put(file, snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Starts snapshot scope in current thread if it's not started yet
+     *
+     * @return true if scope was started and should be ended by caller
+     */
+    static boolean beginScope() {
+        if (scope.get() != null) {
+            return false;
+        }
+        scope.set(new HashMap<File, FileSnapshot>());
+        return true;
+    }
+
+    /**
+     * Starts snapshot scope with attributes which were already read, like while walking a directory tree
+     *
+     * @return true if scope was started and should be ended by caller
+     */
+    static boolean beginScope(File file, BasicFileAttributes attributes) {
+        boolean started = beginScope();
+        scope.get().put(file, new FileSnapshot(file, attributes));
+        return started;
+    }
+
+    static void endScope() {
+        scope.remove();
+    }
+
+    private static FileSnapshot read(File file) {
+        try {
+            return new FileSnapshot(file, Files.readAttributes(file.toPath(), BasicFileAttributes.class));
+        } catch (IOException e) {
+            return new FileSnapshot(file, null);
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    boolean exists() {
+        return attributes != null;
+    }
+
+    boolean isDirectory() {
+        return attributes != null && attributes.isDirectory();
+    }
+
+    boolean isFile() {
+        return attributes != null && attributes.isRegularFile();
+    }
+
+    /**
+     * @return size of a file in bytes, 0 if file doesn't exist
+     */
+    long length() {
+        return attributes == null ? 0 : attributes.size();
+    }
+
+    boolean isReadable() {
+        if (readable == null) {
+            readable = attributes != null && Files.isReadable(file.toPath());
+        }
+        return readable;
+    }
+
+    boolean isWritable() {
+        if (writable == null) {
+            writable = attributes != null && Files.isWritable(file.toPath());
+        }
+        return writable;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.matchers;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Walks directory tree in parallel. Each directory is listed by its own fork/join task and attributes of its entries
+ * are read with one call per entry, so large trees are not walked one stat call at a time from a single thread.
+ */
+abstract class FileTree {
+
+    private static final ForkJoinPool pool = new ForkJoinPool();
+
+    /**
+     * Receives files found in a tree. Called concurrently from pool threads.
+     */
+    interface Visitor {
+        void visitFile(Path file, BasicFileAttributes attributes);
+    }
+
+    /**
+     * Walks directory tree and passes each file which is not a directory to visitor. Symbolic links are not followed.
+     *
+     * @param root    directory to walk
+     * @param visitor visitor to receive files
+     * @throws IOException if any directory of the tree can not be read
+     */
+    static void walk(Path root, Visitor visitor) throws IOException {
+        try {
+            pool.invoke(new DirectoryTask(root, visitor));
+        } catch (RuntimeException e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Path of file relative to root, with '/' as separator regardless of platform
+     */
+    static String relativePath(Path root, Path file) {
+        String path = root.relativize(file).toString();
+        return root.getFileSystem().getSeparator().equals("/") ? path : path.replace(root.getFileSystem().getSeparator(), "/");
+    }
+
+    private static class DirectoryTask extends RecursiveAction {
+        private final Path directory;
+        private final Visitor visitor;
+
+        DirectoryTask(Path directory, Visitor visitor) {
+            this.directory = directory;
+            this.visitor = visitor;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subdirectories = new ArrayList<DirectoryTask>();
+            try {
+                DirectoryStream<Path> entries = Files.newDirectoryStream(directory);
+                try {
+                    for (Path entry : entries) {
+                        BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        if (attributes.isDirectory()) {
+                            DirectoryTask subdirectory = new DirectoryTask(entry, visitor);
+                            subdirectory.fork();
+                            subdirectories.add(subdirectory);
+                        } else {
+                            visitor.visitFile(entry, attributes);
+                        }
+                    }
+                } finally {
+                    entries.close();
+                }
+            } catch (IOException e) {
+                throw new TreeWalkException(e);
+            }
+            for (DirectoryTask subdirectory : subdirectories) {
+                subdirectory.join();
+            }
+        }
+    }
+
+    private static class TreeWalkException extends RuntimeException {
+        TreeWalkException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.monitoring;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resources consumed by one test fixture: by its set up and tear down and by each of its test methods.
+ * Totals of metrics JVM can't measure are {@link ResourceSample#NOT_AVAILABLE}.
+ */
+public class FixtureResourceUsage {
+
+    private final String fixtureName;
+    private final AtomicLong cpuTime = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong wallTime = new AtomicLong();
+    private final AtomicLong setUpCpuTime = new AtomicLong();
+    private final AtomicLong setUpAllocatedBytes = new AtomicLong();
+    private final AtomicLong tearDownCpuTime = new AtomicLong();
+    private final AtomicLong tearDownAllocatedBytes = new AtomicLong();
+    private final Collection<TestUsage> tests = new ConcurrentLinkedQueue<TestUsage>();
+
+    public FixtureResourceUsage(String fixtureName) {
+        this.fixtureName = fixtureName;
+    }
+
+    void addSetUp(ResourceSample usage) {
+        add(usage);
+        add(setUpCpuTime, usage.getCpuTime());
+        add(setUpAllocatedBytes, usage.getAllocatedBytes());
+    }
+
+    void addTearDown(ResourceSample usage) {
+        add(usage);
+        add(tearDownCpuTime, usage.getCpuTime());
+        add(tearDownAllocatedBytes, usage.getAllocatedBytes());
+    }
+
+    void addTest(String testName, ResourceSample usage) {
+        add(usage);
+        tests.add(new TestUsage(testName, usage));
+    }
+
+    private void add(ResourceSample usage) {
+        add(cpuTime, usage.getCpuTime());
+        add(allocatedBytes, usage.getAllocatedBytes());
+        wallTime.addAndGet(usage.getWallTime());
+    }
+
+    /**
+     * Adds value to total, total stays not available once value which is not available is added
+     */
+    private static void add(AtomicLong total, long value) {
+        long current;
+        do {
+            current = total.get();
+            if (current == ResourceSample.NOT_AVAILABLE) {
+                return;
+            }
+        } while (!total.compareAndSet(current, value == ResourceSample.NOT_AVAILABLE ? value : current + value));
+    }
+
+    public String getFixtureName() {
+        return fixtureName;
+    }
+
+    public long getCpuTime() {
+        return cpuTime.get();
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    public long getWallTime() {
+        return wallTime.get();
+    }
+
+    public long getSetUpCpuTime() {
+        return setUpCpuTime.get();
+    }
+
+    public long getSetUpAllocatedBytes() {
+        return setUpAllocatedBytes.get();
+    }
+
+    public long getTearDownCpuTime() {
+        return tearDownCpuTime.get();
+    }
+
+    public long getTearDownAllocatedBytes() {
+        return tearDownAllocatedBytes.get();
+    }
+
+    public Collection<TestUsage> getTests() {
+        return tests;
+    }
+
+    /**
+     * Resources consumed by one test method
+     */
+    public static class TestUsage {
+        private final String testName;
+        private final ResourceSample usage;
+
+        TestUsage(String testName, ResourceSample usage) {
+            this.testName = testName;
+            this.usage = usage;
+        }
+
+        public String getTestName() {
+            return testName;
+        }
+
+        public ResourceSample getUsage() {
+            return usage;
+        }
+    }
+}
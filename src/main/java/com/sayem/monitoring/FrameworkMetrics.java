@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.monitoring;
+
+import com.sayem.configuration.Configuration;
+import com.sayem.logger.LogLevels;
+import com.sayem.logger.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live metrics of test automation framework. Counters are updated by framework classes during test run
+ * and exposed as MBeans, so they can be watched with jconsole or any other JMX client during long test runs.
+ */
+public abstract class FrameworkMetrics {
+
+    public static final String MBEAN_DOMAIN = "com.sayem";
+
+    public static final StripedCounter DRIVERS_CREATED = new StripedCounter();
+    public static final StripedCounter DRIVERS_TORN_DOWN = new StripedCounter();
+    public static final StripedCounter PAGES_CREATED = new StripedCounter();
+    public static final StripedCounter NAVIGATIONS = new StripedCounter();
+    public static final StripedCounter NAVIGATION_FAILURES = new StripedCounter();
+    public static final StripedCounter NAVIGATION_WAIT_TIME_NANOS = new StripedCounter();
+    public static final StripedCounter VERIFICATION_FAILURES = new StripedCounter();
+    public static final StripedCounter NAVIGATION_TIME_SAVED_MILLIS = new StripedCounter();
+    public static final StripedCounter SESSION_STATES_CAPTURED = new StripedCounter();
+    public static final StripedCounter SESSION_STATES_INJECTED = new StripedCounter();
+    public static final StripedCounter CONFIGURATIONS = new StripedCounter();
+    public static final StripedCounter CONFIGURATION_RELOADS = new StripedCounter();
+
+    private static final AtomicLong lastConfiguredTime = new AtomicLong();
+
+    static {
+        registerMBean(new PageFactoryMonitor(), "type=PageFactory");
+        registerMBean(new ConfigurationMonitor(), "type=Configuration");
+    }
+
+    /**
+     * Records that framework configuration was (re)loaded
+     */
+    public static void recordConfiguration() {
+        CONFIGURATIONS.increment();
+        lastConfiguredTime.set(System.currentTimeMillis());
+    }
+
+    /**
+     * Registers MBean in platform MBean server under framework domain. Classes register their MBeans when they are loaded,
+     * MBean which is already registered, for example by other class loader, is left as is.
+     * Failure to register MBean is logged and doesn't stop the test run.
+     *
+     * @param mbean object implementing MXBean interface
+     * @param name  key properties of MBean name, for example "type=Cache,name=PageDefinition"
+     */
+    public static void registerMBean(Object mbean, String name) {
+        try {
+            ObjectName objectName = new ObjectName(MBEAN_DOMAIN + ":" + name);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(mbean, objectName);
+            }
+        } catch (JMException e) {
+            Logger.error(LogLevels.LEVEL_3, "FrameworkMetrics", "Can't register MBean " + name + ": " + e.toString());
+        }
+    }
+
+    private static class PageFactoryMonitor implements PageFactoryMXBean {
+
+        public long getActiveDrivers() {
+            return getDriversCreated() - getDriversTornDown();
+        }
+
+        public long getDriversCreated() {
+            return DRIVERS_CREATED.sum();
+        }
+
+        public long getDriversTornDown() {
+            return DRIVERS_TORN_DOWN.sum();
+        }
+
+        public long getPagesCreated() {
+            return PAGES_CREATED.sum();
+        }
+
+        public long getNavigations() {
+            return NAVIGATIONS.sum();
+        }
+
+        public long getNavigationFailures() {
+            return NAVIGATION_FAILURES.sum();
+        }
+
+        public long getVerificationFailures() {
+            return VERIFICATION_FAILURES.sum();
+        }
+
+        public long getNavigationWaitTimeMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(NAVIGATION_WAIT_TIME_NANOS.sum());
+        }
+
+        public double getAverageNavigationWaitTimeMillis() {
+            long navigations = getNavigations();
+            return navigations == 0 ? 0 : (double) getNavigationWaitTimeMillis() / navigations;
+        }
+
+        public long getNavigationTimeSavedMillis() {
+            return NAVIGATION_TIME_SAVED_MILLIS.sum();
+        }
+
+        public long getSessionStatesCaptured() {
+            return SESSION_STATES_CAPTURED.sum();
+        }
+
+        public long getSessionStatesInjected() {
+            return SESSION_STATES_INJECTED.sum();
+        }
+    }
+
+    private static class ConfigurationMonitor implements ConfigurationMXBean {
+
+        public long getConfigureCount() {
+            return CONFIGURATIONS.sum();
+        }
+
+        public long getReloadCount() {
+            return CONFIGURATION_RELOADS.sum();
+        }
+
+        public String getLastConfiguredTime() {
+            long time = lastConfiguredTime.get();
+            return time == 0 ? null : new Date(time).toString();
+        }
+
+        public String getBrowserType() {
+            return String.valueOf(Configuration.getBrowserType());
+        }
+
+        public String getEnvironmentName() {
+            return Configuration.getEnvironmentName();
+        }
+
+        public String getTestDataSetName() {
+            return Configuration.getTestDataSetName();
+        }
+    }
+}
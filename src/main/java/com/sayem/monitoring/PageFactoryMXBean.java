@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.monitoring;
+
+/**
+ * Management interface which exposes WebDriver and page object activity through JMX
+ */
+public interface PageFactoryMXBean {
+
+    public long getActiveDrivers();
+
+    public long getDriversCreated();
+
+    public long getDriversTornDown();
+
+    public long getPagesCreated();
+
+    public long getNavigations();
+
+    public long getNavigationFailures();
+
+    public long getVerificationFailures();
+
+    public long getNavigationWaitTimeMillis();
+
+    public double getAverageNavigationWaitTimeMillis();
+
+    public long getNavigationTimeSavedMillis();
+
+    public long getSessionStatesCaptured();
+
+    public long getSessionStatesInjected();
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.monitoring;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.sayem.configuration.Configuration;
+import com.sayem.logger.LogLevels;
+import com.sayem.logger.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Strings.nullToEmpty;
+import static com.sayem.helpers.StringHelper.toJsonString;
+
+/**
+ * Accounts CPU time, allocated memory and wall clock time consumed by test fixtures set up, tear down and test methods.
+ * Resources are sampled with ThreadMXBean on the thread which runs the fixture, so only work done by test thread is accounted,
+ * work done by browser process or other threads is not visible.
+ * Report which ranks fixtures by consumed resources is written into test results directory as CSV and JSON,
+ * metrics JVM can't measure are left empty in CSV and are null in JSON.
+ */
+public abstract class ResourceAccounting {
+
+    public static final String REPORT_FILE_NAME = "resource-usage";
+
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private static final boolean allocationSupported = isAllocationMeasurementSupported();
+    private static volatile boolean enabled;
+
+    private static final ConcurrentMap<String, FixtureResourceUsage> fixtures = new ConcurrentHashMap<String, FixtureResourceUsage>();
+    private static final ThreadLocal<ResourceSample> testStart = new ThreadLocal<ResourceSample>();
+
+    /**
+     * Enables or disables resource accounting
+     *
+     * @param enabled true if resources should be accounted
+     */
+    public static void setEnabled(boolean enabled) {
+        if (enabled && threadMXBean.isCurrentThreadCpuTimeSupported() && !threadMXBean.isThreadCpuTimeEnabled()) {
+            threadMXBean.setThreadCpuTimeEnabled(true);
+        }
+        ResourceAccounting.enabled = enabled;
+    }
+
+    /**
+     * Takes sample of resources consumed by current thread so far
+     *
+     * @return ResourceSample of current thread
+     */
+    @SuppressWarnings("restriction")
+    public static ResourceSample sample() {
+        long cpuTime = threadMXBean.isCurrentThreadCpuTimeSupported() ?
+                threadMXBean.getCurrentThreadCpuTime() : ResourceSample.NOT_AVAILABLE;
+        long allocatedBytes = allocationSupported ?
+                ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId())
+                : ResourceSample.NOT_AVAILABLE;
+        return new ResourceSample(cpuTime, allocatedBytes, System.nanoTime());
+    }
+
+    /**
+     * Records resources consumed by fixture set up which started with given sample on current thread
+     *
+     * @param fixtureClass class of test fixture
+     * @param start        sample taken before set up
+     */
+    public static void recordSetUp(Class fixtureClass, ResourceSample start) {
+        if (enabled) {
+            getFixture(fixtureClass.getName()).addSetUp(sample().since(start));
+        }
+    }
+
+    /**
+     * Records resources consumed by fixture tear down which started with given sample on current thread
+     *
+     * @param fixtureClass class of test fixture
+     * @param start        sample taken before tear down
+     */
+    public static void recordTearDown(Class fixtureClass, ResourceSample start) {
+        if (enabled) {
+            getFixture(fixtureClass.getName()).addTearDown(sample().since(start));
+        }
+    }
+
+    /**
+     * Starts accounting of test method
+     *
+     * @param fixtureClass class of test fixture
+     */
+    public static void startTest(Class fixtureClass) {
+        if (enabled) {
+            testStart.set(sample());
+        }
+    }
+
+    /**
+     * Ends accounting of test method which was started on current thread
+     *
+     * @param fixtureClass class of test fixture
+     * @param testName     name of test method
+     */
+    public static void endTest(Class fixtureClass, String testName) {
+        ResourceSample start = testStart.get();
+        if (!enabled || start == null) {
+            return;
+        }
+        testStart.remove();
+        getFixture(fixtureClass.getName()).addTest(testName, sample().since(start));
+    }
+
+    /**
+     * Writes report of resources consumed by fixtures. Fixtures are ranked by CPU time.
+     */
+    public static void writeReport() {
+        if (!enabled || fixtures.isEmpty()) {
+            return;
+        }
+
+        List<FixtureResourceUsage> byCpu = sortedBy(new Comparator<FixtureResourceUsage>() {
+            public int compare(FixtureResourceUsage first, FixtureResourceUsage second) {
+                return compareDescending(first.getCpuTime(), second.getCpuTime());
+            }
+        });
+        Map<FixtureResourceUsage, Integer> allocationRanks = ranks(sortedBy(new Comparator<FixtureResourceUsage>() {
+            public int compare(FixtureResourceUsage first, FixtureResourceUsage second) {
+                return compareDescending(first.getAllocatedBytes(), second.getAllocatedBytes());
+            }
+        }));
+        Map<FixtureResourceUsage, Integer> wallTimeRanks = ranks(sortedBy(new Comparator<FixtureResourceUsage>() {
+            public int compare(FixtureResourceUsage first, FixtureResourceUsage second) {
+                return compareDescending(first.getWallTime(), second.getWallTime());
+            }
+        }));
+
+        StringBuilder csv = new StringBuilder("cpuRank,allocationRank,wallTimeRank,fixture,tests,cpuMillis,allocatedBytes,wallMillis," +
+                "setUpCpuMillis,setUpAllocatedBytes,tearDownCpuMillis,tearDownAllocatedBytes\n");
+        StringBuilder json = new StringBuilder("{\"fixtures\":[");
+        for (int i = 0; i < byCpu.size(); i++) {
+            FixtureResourceUsage fixture = byCpu.get(i);
+            csv.append(i + 1).append(',')
+                    .append(allocationRanks.get(fixture)).append(',')
+                    .append(wallTimeRanks.get(fixture)).append(',')
+                    .append(fixture.getFixtureName()).append(',')
+                    .append(fixture.getTests().size()).append(',')
+                    .append(nullToEmpty(toMillis(fixture.getCpuTime()))).append(',')
+                    .append(nullToEmpty(toBytes(fixture.getAllocatedBytes()))).append(',')
+                    .append(toMillis(fixture.getWallTime())).append(',')
+                    .append(nullToEmpty(toMillis(fixture.getSetUpCpuTime()))).append(',')
+                    .append(nullToEmpty(toBytes(fixture.getSetUpAllocatedBytes()))).append(',')
+                    .append(nullToEmpty(toMillis(fixture.getTearDownCpuTime()))).append(',')
+                    .append(nullToEmpty(toBytes(fixture.getTearDownAllocatedBytes()))).append('\n');
+
+            //Metrics which are not available are appended as JSON null
+
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("{\"fixture\":").append(toJsonString(fixture.getFixtureName()))
+                    .append(",\"cpuRank\":").append(i + 1)
+                    .append(",\"allocationRank\":").append(allocationRanks.get(fixture))
+                    .append(",\"wallTimeRank\":").append(wallTimeRanks.get(fixture))
+                    .append(",\"cpuMillis\":").append(toMillis(fixture.getCpuTime()))
+                    .append(",\"allocatedBytes\":").append(toBytes(fixture.getAllocatedBytes()))
+                    .append(",\"wallMillis\":").append(toMillis(fixture.getWallTime()))
+                    .append(",\"setUpCpuMillis\":").append(toMillis(fixture.getSetUpCpuTime()))
+                    .append(",\"setUpAllocatedBytes\":").append(toBytes(fixture.getSetUpAllocatedBytes()))
+                    .append(",\"tearDownCpuMillis\":").append(toMillis(fixture.getTearDownCpuTime()))
+                    .append(",\"tearDownAllocatedBytes\":").append(toBytes(fixture.getTearDownAllocatedBytes()))
+                    .append(",\"tests\":[");
+            boolean firstTest = true;
+            for (FixtureResourceUsage.TestUsage test : fixture.getTests()) {
+                json.append(firstTest ? "" : ",")
+                        .append("{\"test\":").append(toJsonString(test.getTestName()))
+                        .append(",\"cpuMillis\":").append(toMillis(test.getUsage().getCpuTime()))
+                        .append(",\"allocatedBytes\":").append(toBytes(test.getUsage().getAllocatedBytes()))
+                        .append(",\"wallMillis\":").append(toMillis(test.getUsage().getWallTime()))
+                        .append('}');
+                firstTest = false;
+            }
+            json.append("]}");
+        }
+        json.append("\n]}\n");
+
+        write(REPORT_FILE_NAME + ".csv", csv);
+        write(REPORT_FILE_NAME + ".json", json);
+    }
+
+    static FixtureResourceUsage getFixture(String fixtureName) {
+        FixtureResourceUsage fixture = fixtures.get(fixtureName);
+        if (fixture == null) {
+            fixtures.putIfAbsent(fixtureName, new FixtureResourceUsage(fixtureName));
+            fixture = fixtures.get(fixtureName);
+        }
+        return fixture;
+    }
+
+    private static List<FixtureResourceUsage> sortedBy(Comparator<FixtureResourceUsage> comparator) {
+        List<FixtureResourceUsage> sorted = new ArrayList<FixtureResourceUsage>(fixtures.values());
+        Collections.sort(sorted, comparator);
+        return sorted;
+    }
+
+    private static Map<FixtureResourceUsage, Integer> ranks(List<FixtureResourceUsage> sorted) {
+        Map<FixtureResourceUsage, Integer> ranks = new HashMap<FixtureResourceUsage, Integer>();
+        for (int i = 0; i < sorted.size(); i++) {
+            ranks.put(sorted.get(i), i + 1);
+        }
+        return ranks;
+    }
+
+    private static int compareDescending(long first, long second) {
+        return first > second ? -1 : (first == second ? 0 : 1);
+    }
+
+    /**
+     * @return milliseconds with fraction, or null if time is not available
+     */
+    private static String toMillis(long nanos) {
+        return nanos == ResourceSample.NOT_AVAILABLE ? null : String.format(Locale.ENGLISH, "%.3f", nanos / 1000000.0);
+    }
+
+    /**
+     * @return bytes, or null if amount is not available
+     */
+    private static String toBytes(long bytes) {
+        return bytes == ResourceSample.NOT_AVAILABLE ? null : String.valueOf(bytes);
+    }
+
+    private static void write(String fileName, CharSequence content) {
+        File reportFile = new File(Configuration.getTestResultsDirectory(), fileName);
+        try {
+            Files.createParentDirs(reportFile);
+            Files.write(content, reportFile, Charsets.UTF_8);
+        } catch (IOException e) {
+            Logger.error(LogLevels.LEVEL_3, "ResourceAccounting", "Can't write report " + reportFile + ": " + e.toString());
+        }
+    }
+
+    @SuppressWarnings("restriction")
+    private static boolean isAllocationMeasurementSupported() {
+        try {
+            if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+                if (allocationMXBean.isThreadAllocatedMemorySupported()) {
+                    allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+                    return true;
+                }
+            }
+        } catch (Throwable e) {
+            //Not a HotSpot JVM, allocated memory will not be measured
+        }
+        return false;
+    }
+}
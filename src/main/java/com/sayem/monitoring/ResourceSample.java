@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.monitoring;
+
+/**
+ * Resources consumed by current thread at some moment: CPU time, allocated memory and wall clock time.
+ * Difference between two samples taken on the same thread shows how much resources code between them consumed.
+ */
+public class ResourceSample {
+
+    //Value of metric which JVM can't measure
+    public static final long NOT_AVAILABLE = -1;
+
+    private final long cpuTime;
+    private final long allocatedBytes;
+    private final long wallTime;
+
+    public ResourceSample(long cpuTime, long allocatedBytes, long wallTime) {
+        this.cpuTime = cpuTime;
+        this.allocatedBytes = allocatedBytes;
+        this.wallTime = wallTime;
+    }
+
+    /**
+     * Calculates resources consumed since given earlier sample. Metrics not available in either sample are not available in result
+     *
+     * @param start sample taken earlier on the same thread
+     * @return ResourceSample which holds difference between samples
+     */
+    public ResourceSample since(ResourceSample start) {
+        return new ResourceSample(difference(cpuTime, start.cpuTime), difference(allocatedBytes, start.allocatedBytes),
+                wallTime - start.wallTime);
+    }
+
+    private static long difference(long end, long start) {
+        return end == NOT_AVAILABLE || start == NOT_AVAILABLE ? NOT_AVAILABLE : end - start;
+    }
+
+    /**
+     * @return CPU time in nanoseconds, or {@link #NOT_AVAILABLE} if CPU time measurement is not supported by JVM
+     */
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * @return allocated memory in bytes, or {@link #NOT_AVAILABLE} if allocated memory measurement is not supported by JVM
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return wall clock time in nanoseconds
+     */
+    public long getWallTime() {
+        return wallTime;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.network;
+
+import com.google.common.base.Strings;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Rules applied to requests browser makes while tests run. Requests to blocked hosts are answered instantly
+ * without going to network, rewritten URLs are requested from another location.
+ * Rules are defined per environment in environments.properties:
+ * <pre>
+ * myEnv.block = *.doubleclick.net, www.google-analytics.com
+ * myEnv.rewrite = https://cdn.example.com/ => http://localhost:8080/static/
+ * </pre>
+ * Block rules are host names where '*' matches any characters. Rewrite rules replace URL prefix, several rules
+ * are separated by commas. Rules are immutable and can be shared by threads.
+ */
+public class RequestRules {
+
+    public static final RequestRules NONE = new RequestRules(null, new LinkedHashMap<String, String>());
+
+    private static final String REWRITE_SEPARATOR = "=>";
+
+    //All block rules joined in one expression, null if nothing is blocked
+    private final Pattern blockedHosts;
+    private final Map<String, String> rewrites;
+
+    private RequestRules(Pattern blockedHosts, Map<String, String> rewrites) {
+        this.blockedHosts = blockedHosts;
+        this.rewrites = rewrites;
+    }
+
+    /**
+     * Parses request rules
+     *
+     * @param blockRules   comma separated host name patterns, can be null
+     * @param rewriteRules comma separated rules in form URL prefix => replacement, can be null
+     * @return parsed rules
+     * @throws IllegalArgumentException if rewrite rule is incorrect
+     */
+    public static RequestRules parse(String blockRules, String rewriteRules) {
+        Pattern blockedHosts = null;
+        if (!Strings.isNullOrEmpty(blockRules)) {
+            List<String> expressions = new ArrayList<String>();
+            for (String host : blockRules.split(",")) {
+                host = host.trim().toLowerCase();
+                if (!host.isEmpty()) {
+                    expressions.add(Pattern.quote(host).replace("*", "\\E.*\\Q"));
+                }
+            }
+            if (!expressions.isEmpty()) {
+                StringBuilder expression = new StringBuilder();
+                for (String hostExpression : expressions) {
+                    expression.append(expression.length() == 0 ? "" : "|").append(hostExpression);
+                }
+                blockedHosts = Pattern.compile(expression.toString());
+            }
+        }
+
+        Map<String, String> rewrites = new LinkedHashMap<String, String>();
+        if (!Strings.isNullOrEmpty(rewriteRules)) {
+            for (String rule : rewriteRules.split(",")) {
+                if (rule.trim().isEmpty()) {
+                    continue;
+                }
+                int separator = rule.indexOf(REWRITE_SEPARATOR);
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Rewrite rule \"" + rule.trim() + "\" should be in form URL prefix " +
+                            REWRITE_SEPARATOR + " replacement");
+                }
+                rewrites.put(rule.substring(0, separator).trim(), rule.substring(separator + REWRITE_SEPARATOR.length()).trim());
+            }
+        }
+
+        return blockedHosts == null && rewrites.isEmpty() ? NONE : new RequestRules(blockedHosts, rewrites);
+    }
+
+    /**
+     * @return true if there are no rules
+     */
+    public boolean isEmpty() {
+        return blockedHosts == null && rewrites.isEmpty();
+    }
+
+    /**
+     * Checks whether requests to host should be blocked
+     *
+     * @param host host name
+     * @return true if host is blocked
+     */
+    public boolean isBlocked(String host) {
+        return blockedHosts != null && host != null && blockedHosts.matcher(host.toLowerCase()).matches();
+    }
+
+    /**
+     * Applies first matching rewrite rule to URL
+     *
+     * @param url requested URL
+     * @return rewritten URL or the same URL if no rewrite rule matches
+     */
+    public String rewrite(String url) {
+        for (Map.Entry<String, String> rewrite : rewrites.entrySet()) {
+            if (url.startsWith(rewrite.getKey())) {
+                return rewrite.getValue() + url.substring(rewrite.getKey().length());
+            }
+        }
+        return url;
+    }
+}
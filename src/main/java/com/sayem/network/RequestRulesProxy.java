@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.network;
+
+import com.sayem.logger.LogLevels;
+import com.sayem.logger.Logger;
+
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.io.Closeables.closeQuietly;
+
+/**
+ * Minimal HTTP proxy running inside test JVM, which lets real browsers follow request rules.
+ * Requests to blocked hosts are answered instantly, plain HTTP requests are rewritten and forwarded,
+ * HTTPS connections to other hosts are tunnelled as is (their URLs are encrypted, so they can't be rewritten).
+ * Each request is served on its own connection, browser opens a new one for next request.
+ * Number of threads serving connections is limited, connections over the limit are answered with 503 Service Unavailable.
+ */
+public class RequestRulesProxy {
+
+    private static final int CONNECT_TIMEOUT = 30000;
+    private static final int MAX_REQUEST_HEAD_SIZE = 64 * 1024;
+    private static final String CHARSET = "ISO-8859-1";
+    //Each tunnelled connection takes two threads, one for every direction
+    private static final int MAX_THREADS = 128;
+    private static final long IDLE_THREAD_TIMEOUT = 60;
+
+    private static RequestRulesProxy instance;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = new ThreadPoolExecutor(0, MAX_THREADS, IDLE_THREAD_TIMEOUT, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "request-rules-proxy");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private volatile RequestRules rules;
+
+    private RequestRulesProxy(RequestRules rules) throws IOException {
+        this.rules = rules;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                acceptConnections();
+            }
+        }, "request-rules-proxy-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Starts proxy if it's not running yet. Running proxy is switched to given rules.
+     *
+     * @param rules rules to apply to requests
+     * @return running proxy
+     * @throws IOException if proxy can't be started
+     */
+    public static synchronized RequestRulesProxy start(RequestRules rules) throws IOException {
+        if (instance == null) {
+            instance = new RequestRulesProxy(rules);
+            Logger.info(LogLevels.LEVEL_6, "RequestRulesProxy", "Started on " + instance.getAddress());
+        } else {
+            instance.rules = rules;
+        }
+        return instance;
+    }
+
+    /**
+     * Stops running proxy
+     */
+    public static synchronized void stop() {
+        if (instance != null) {
+            instance.connections.shutdownNow();
+            closeQuietly(instance.serverSocket);
+            instance = null;
+        }
+    }
+
+    /**
+     * @return address of proxy in form host:port, as expected by browser proxy settings
+     */
+    public String getAddress() {
+        return "127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket client = serverSocket.accept();
+                try {
+                    connections.execute(new Runnable() {
+                        public void run() {
+                            serve(client);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    Logger.info(LogLevels.LEVEL_9, "RequestRulesProxy", "Too many connections, request is rejected");
+                    try {
+                        respond(client.getOutputStream(), "503 Service Unavailable");
+                    } finally {
+                        closeQuietly(client);
+                    }
+                }
+            } catch (IOException e) {
+                //Server socket is closed or rejected client disconnected
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        Socket upstream = null;
+        try {
+            InputStream clientInput = new BufferedInputStream(client.getInputStream());
+            OutputStream clientOutput = client.getOutputStream();
+            String head = readRequestHead(clientInput);
+            String[] requestLine = head.substring(0, head.indexOf("\r\n")).split(" ");
+            if (requestLine.length != 3) {
+                respond(clientOutput, "400 Bad Request");
+                return;
+            }
+
+            RequestRules currentRules = rules;
+            if (requestLine[0].equals("CONNECT")) {
+                //Port follows last colon, IPv6 host like [::1] contains colons itself
+                String authority = requestLine[1];
+                int portSeparator = authority.lastIndexOf(':');
+                boolean hasPort = portSeparator > authority.lastIndexOf(']');
+                String host = hasPort ? authority.substring(0, portSeparator) : authority;
+                if (currentRules.isBlocked(host)) {
+                    respond(clientOutput, "403 Blocked");
+                    return;
+                }
+                upstream = connect(host, hasPort ? Integer.parseInt(authority.substring(portSeparator + 1)) : 443, false);
+                clientOutput.write("HTTP/1.1 200 Connection established\r\n\r\n".getBytes(CHARSET));
+                clientOutput.flush();
+                tunnel(clientInput, clientOutput, upstream);
+                return;
+            }
+
+            URL url = new URL(requestLine[1]);
+            if (currentRules.isBlocked(url.getHost())) {
+                respond(clientOutput, "204 No Content");
+                return;
+            }
+            url = new URL(currentRules.rewrite(requestLine[1]));
+            boolean secure = url.getProtocol().equals("https");
+            upstream = connect(url.getHost(), url.getPort() < 0 ? url.getDefaultPort() : url.getPort(), secure);
+            OutputStream upstreamOutput = upstream.getOutputStream();
+            upstreamOutput.write(forwardedHead(head, requestLine, url).getBytes(CHARSET));
+            upstreamOutput.flush();
+            tunnel(clientInput, clientOutput, upstream);
+        } catch (Exception e) {
+            Logger.info(LogLevels.LEVEL_9, "RequestRulesProxy", "Request failed: " + e.toString());
+        } finally {
+            closeQuietly(upstream);
+            closeQuietly(client);
+        }
+    }
+
+    private static String readRequestHead(InputStream input) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int matched = 0;
+        while (matched < 4) {
+            int b = input.read();
+            if (b < 0 || head.size() > MAX_REQUEST_HEAD_SIZE) {
+                throw new IOException("Incomplete request");
+            }
+            head.write(b);
+            matched = (b == '\r' && matched % 2 == 0) || (b == '\n' && matched % 2 == 1) ? matched + 1 : (b == '\r' ? 1 : 0);
+        }
+        return head.toString(CHARSET);
+    }
+
+    /**
+     * Builds request head sent to server: path instead of full URL, Host of rewritten URL and no persistent connection
+     */
+    private static String forwardedHead(String head, String[] requestLine, URL url) {
+        StringBuilder forwarded = new StringBuilder();
+        String path = url.getFile().isEmpty() ? "/" : url.getFile();
+        forwarded.append(requestLine[0]).append(' ').append(path).append(' ').append(requestLine[2]).append("\r\n");
+        String[] headers = head.split("\r\n");
+        for (int i = 1; i < headers.length; i++) {
+            String header = headers[i];
+            String name = header.contains(":") ? header.substring(0, header.indexOf(':')).trim().toLowerCase() : "";
+            if (name.isEmpty() || name.equals("host") || name.equals("connection") || name.equals("proxy-connection")
+                    || name.equals("keep-alive")) {
+                continue;
+            }
+            forwarded.append(header).append("\r\n");
+        }
+        forwarded.append("Host: ").append(url.getPort() < 0 ? url.getHost() : url.getHost() + ":" + url.getPort()).append("\r\n");
+        forwarded.append("Connection: close\r\n\r\n");
+        return forwarded.toString();
+    }
+
+    private static Socket connect(String host, int port, boolean secure) throws IOException {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+        if (secure) {
+            return ((SSLSocketFactory) SSLSocketFactory.getDefault()).createSocket(socket, host, port, true);
+        }
+        return socket;
+    }
+
+    /**
+     * Copies bytes in both directions until server closes connection
+     */
+    private void tunnel(final InputStream clientInput, OutputStream clientOutput, final Socket upstream) throws IOException {
+        connections.execute(new Runnable() {
+            public void run() {
+                try {
+                    copy(clientInput, upstream.getOutputStream());
+                } catch (IOException e) {
+                    //Connection is closed by the other side
+                }
+            }
+        });
+        copy(upstream.getInputStream(), clientOutput);
+    }
+
+    private static void copy(InputStream input, OutputStream output) throws IOException {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) >= 0) {
+            output.write(buffer, 0, read);
+            output.flush();
+        }
+    }
+
+    private static void respond(OutputStream output, String status) throws IOException {
+        output.write(("HTTP/1.1 " + status + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes(CHARSET));
+        output.flush();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.network;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+
+/**
+ * HtmlUnit connection which applies request rules. Blocked requests get empty response without going to network,
+ * rewritten requests are fetched from new location but page sees response as coming from original URL.
+ */
+public class RequestRulesWebConnection extends WebConnectionWrapper {
+
+    private final RequestRules rules;
+
+    /**
+     * Wraps connection of given client
+     *
+     * @param client HtmlUnit client which requests should follow rules
+     * @param rules  rules to apply
+     */
+    public RequestRulesWebConnection(WebClient client, RequestRules rules) {
+        super(client);
+        this.rules = rules;
+    }
+
+    @Override
+    public WebResponse getResponse(WebRequest request) throws IOException {
+        if (rules.isBlocked(request.getUrl().getHost())) {
+            return new WebResponse(new WebResponseData(new byte[0], 204, "Blocked", Collections.<NameValuePair>emptyList()), request, 0);
+        }
+        URL url = request.getUrl();
+        String rewrittenUrl = rules.rewrite(url.toString());
+        if (rewrittenUrl.equals(url.toString())) {
+            return super.getResponse(request);
+        }
+
+        //Response is returned for original URL, so page sees the same location as in real browser using the proxy
+        WebResponse response;
+        request.setUrl(new URL(rewrittenUrl));
+        try {
+            response = super.getResponse(request);
+        } finally {
+            request.setUrl(url);
+        }
+        return new WebResponse(new WebResponseData(response.getContentAsStream(), response.getStatusCode(),
+                response.getStatusMessage(), response.getResponseHeaders()), request, response.getLoadTime());
+    }
+}
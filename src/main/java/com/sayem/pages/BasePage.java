@@ -17,12 +17,22 @@
 package com.sayem.pages;
 
 import com.google.common.base.Strings;
+import com.sayem.artifacts.StepHistory;
 import com.sayem.exceptions.NavigationException;
 import com.sayem.logger.LogLevels;
 import com.sayem.logger.Logger;
+import com.sayem.monitoring.FrameworkMetrics;
+import com.sayem.tracing.FlightRecorderEvents;
+import com.sayem.tracing.TraceRecorder;
 
 import org.openqa.selenium.By;
+import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -35,13 +45,35 @@ public abstract class BasePage implements Page {
 
     protected WebDriver driver;
     protected PageDefinition pageDefinition;
+    //Class which describes the page, page interface for generated pages
+    private final Class pageClass;
 
     public BasePage(WebDriver driver) {
+        this(driver, null);
+    }
+
+    /**
+     * Creates page which definition is loaded for another class, used by pages generated by {@link PageFactory}
+     *
+     * @param driver              WebDriver object
+     * @param pageDefinitionClass class which page definition file should be used and which names the page, page class itself if null
+     */
+    BasePage(WebDriver driver, Class pageDefinitionClass) {
         setDriver(driver);
-        pageDefinition = new PageDefinition(this.getClass());
+        pageClass = pageDefinitionClass == null ? this.getClass() : pageDefinitionClass;
+        pageDefinition = new PageDefinition(pageClass);
     }
 
 
+    /**
+     * Returns name which identifies the page in logs, step history and traces
+     *
+     * @return name of the page class, or name of the page interface for generated pages
+     */
+    String getPageName() {
+        return pageClass.getName();
+    }
+
     private void setDriver(WebDriver driver) {
         PageFactory.checkDriver(driver);
         this.driver = driver;
@@ -53,12 +85,32 @@ public abstract class BasePage implements Page {
      * @throws NavigationException if page can not be opened
      */
     public void navigate() throws NavigationException {
-        navigate(pageDefinition.getUrl());
+        navigate(Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * Open page in the browser. Uses URL property from page definition file with placeholders like {orderId}
+     * replaced by given parameter values to determine how to navigate
+     *
+     * @param urlParameters URL parameter names mapped to values
+     * @throws NavigationException if page can not be opened or value of some URL parameter is missing
+     */
+    public void navigate(Map<String, String> urlParameters) throws NavigationException {
+        String url;
+        try {
+            url = pageDefinition.getUrl(urlParameters);
+        } catch (IllegalArgumentException e) {
+            String message = "Can't open page. " + e.getMessage();
+            Logger.error(LogLevels.LEVEL_8, pageClass.getSimpleName(), message);
+            throw new NavigationException(message);
+        }
+        navigate(url);
         verify();
     }
 
     /**
      * Open given URL in active browser. Doesn't verify that correct page is opened.
+     * Returns when page is ready according to ReadyState property of page definition, see {@link PageReadiness}.
      *
      * @param url String URL to open
      * @throws NavigationException if URL can not be opened
@@ -68,17 +120,27 @@ public abstract class BasePage implements Page {
 
         if (Strings.isNullOrEmpty(url)) {
             String message = "Can't open page, URL is null or empty";
-            Logger.error(LogLevels.LEVEL_8, this.getClass().getSimpleName(), message);
+            Logger.error(LogLevels.LEVEL_8, pageClass.getSimpleName(), message);
             throw new NavigationException(message);
         }
 
+        FrameworkMetrics.NAVIGATIONS.increment();
+
+        long startTime = System.nanoTime();
+        Object event = FlightRecorderEvents.begin(FlightRecorderEvents.NAVIGATION);
         try {
-            Logger.info(LogLevels.LEVEL_8, this.getClass().getSimpleName(), "Opening " + url);
-            driver.get(url);
+            Logger.info(LogLevels.LEVEL_8, pageClass.getSimpleName(), "Opening " + url);
+            PageReadiness.navigate(driver, url, pageDefinition, pageClass.getName());
+            StepHistory.record(StepHistory.NAVIGATE_ACTION, pageClass.getName(), url, null, null, null);
         } catch (Exception e) {
+            FrameworkMetrics.NAVIGATION_FAILURES.increment();
             String message = "Can't open " + url + ". " + e.toString();
-            Logger.error(LogLevels.LEVEL_8, this.getClass().getSimpleName(), message);
+            Logger.error(LogLevels.LEVEL_8, pageClass.getSimpleName(), message);
             throw new NavigationException(message);
+        } finally {
+            FrameworkMetrics.NAVIGATION_WAIT_TIME_NANOS.add(System.nanoTime() - startTime);
+            TraceRecorder.record("BasePage.navigate", "navigation", startTime, url);
+            FlightRecorderEvents.commit(event, pageClass.getName(), url, null, null);
         }
     }
 
@@ -91,8 +153,17 @@ public abstract class BasePage implements Page {
      * @throws NavigationException if wrong page is opened
      */
     public void verify() throws NavigationException {
-        verifyByTitle();
-        verifyByUrl();
+        long startTime = System.nanoTime();
+        Object event = FlightRecorderEvents.begin(FlightRecorderEvents.VERIFICATION);
+        try {
+            verifyByTitle();
+            verifyByUrl();
+        } finally {
+            TraceRecorder.record("BasePage.verify", "navigation", startTime, pageClass.getName());
+            if (event != null) {
+                FlightRecorderEvents.commit(event, pageClass.getName(), getUrl(), null, null);
+            }
+        }
     }
 
     /**
@@ -103,28 +174,33 @@ public abstract class BasePage implements Page {
     public void verifyByTitle() throws NavigationException {
         String actualPageTitle = getCurrentTitle();
         String expectedPageTitle = getTitle();
+        StepHistory.record("verifyByTitle", pageClass.getName(), null, actualPageTitle, null, null);
 
         if (!actualPageTitle.equalsIgnoreCase(expectedPageTitle)) {
             String message = "Wrong page is opened. Expected page with title [" + expectedPageTitle + "], \n" +
                     "got [" + actualPageTitle + "]";
-            Logger.error(LogLevels.LEVEL_8, this.getClass().getSimpleName(), message);
+            FrameworkMetrics.VERIFICATION_FAILURES.increment();
+            Logger.error(LogLevels.LEVEL_8, pageClass.getSimpleName(), message);
             throw new NavigationException(message);
         }
     }
 
     /**
-     * Verify that correct page is loaded by comparing actual URL of the page loaded in browser and expected page URL
+     * Verify that correct page is loaded by comparing actual URL of the page loaded in browser and expected page URL.
+     * Placeholders of expected page URL match any parameter value.
      *
      * @throws NavigationException if verification failed
      */
     public void verifyByUrl() throws NavigationException {
         String actualUrl = getCurrentUrl();
-        String expectedUrl = getUrl();
+        StepHistory.record("verifyByUrl", pageClass.getName(), actualUrl, null, null, null);
 
-        if (!actualUrl.equalsIgnoreCase(expectedUrl)) {
+        if (!pageDefinition.matchesUrl(actualUrl)) {
+            String expectedUrl = getUrl();
             String message = "Wrong page is opened. Expected page with URL [" + expectedUrl + "], \n" +
                     "got [" + actualUrl + "]";
-            Logger.error(LogLevels.LEVEL_8, this.getClass().getSimpleName(), message);
+            FrameworkMetrics.VERIFICATION_FAILURES.increment();
+            Logger.error(LogLevels.LEVEL_8, pageClass.getSimpleName(), message);
             throw new NavigationException(message);
         }
 
@@ -175,4 +251,98 @@ public abstract class BasePage implements Page {
     protected By getElementLocator(String elementName) {
         return this.pageDefinition.getElementLocator(elementName);
     }
+
+    /**
+     * Finds element on the page using element locator from page definition file
+     *
+     * @param elementName String element name
+     * @return WebElement found on the page
+     */
+    protected WebElement findElement(String elementName) {
+        long startTime = System.nanoTime();
+        By locator = getElementLocator(elementName);
+        StepHistory.record("findElement", pageClass.getName(), null, null, elementName, locator);
+        try {
+            return driver.findElement(locator);
+        } finally {
+            TraceRecorder.record("BasePage.findElement", "element", startTime, elementName);
+        }
+    }
+
+    /**
+     * Finds all elements on the page which match element locator from page definition file
+     *
+     * @param elementName String element name
+     * @return List of WebElements found on the page
+     */
+    protected List<WebElement> findElements(String elementName) {
+        long startTime = System.nanoTime();
+        By locator = getElementLocator(elementName);
+        StepHistory.record("findElements", pageClass.getName(), null, null, elementName, locator);
+        try {
+            return driver.findElements(locator);
+        } finally {
+            TraceRecorder.record("BasePage.findElements", "element", startTime, elementName);
+        }
+    }
+
+    /**
+     * Takes snapshot of the page source. Element locators from page definition are evaluated against the snapshot
+     * without further calls to the browser, which makes checks of static page content cheap.
+     *
+     * @return parsed page snapshot
+     * @throws IllegalStateException if page source can't be parsed
+     */
+    public PageSnapshot takeSnapshot() throws IllegalStateException {
+        long startTime = System.nanoTime();
+        StepHistory.record("takeSnapshot", pageClass.getName(), null, null, null, null);
+        try {
+            return PageSnapshot.parse(driver.getPageSource(), pageDefinition);
+        } finally {
+            TraceRecorder.record("BasePage.takeSnapshot", "element", startTime, pageClass.getName());
+        }
+    }
+
+    /**
+     * Fills many form fields of the page in one browser call. Fields which need native events are filled through WebDriver.
+     * See {@link ElementBatch#fill(Map)}
+     *
+     * @param values element names mapped to values, checkboxes and radio buttons are selected if value is "true"
+     */
+    protected void fillElements(Map<String, String> values) {
+        new ElementBatch(driver, pageDefinition, pageClass.getName()).fill(values);
+    }
+
+    /**
+     * Reads text, value or attribute of many elements of the page in one browser call
+     *
+     * @param readRequests element names mapped to {@link ElementBatch#TEXT}, {@link ElementBatch#VALUE}
+     *                     or attribute name with {@link ElementBatch#ATTRIBUTE_PREFIX}
+     * @return element names mapped to values of all elements which match their locators
+     */
+    protected Map<String, List<String>> readElements(Map<String, String> readRequests) {
+        return new ElementBatch(driver, pageDefinition, pageClass.getName()).read(readRequests);
+    }
+
+    /**
+     * Waits until element of the page appears. See {@link ElementWait} for how it waits
+     *
+     * @param elementName    String element name
+     * @param timeoutSeconds how long to wait in seconds
+     * @throws TimeoutException if element didn't appear in time
+     */
+    protected void waitForElement(String elementName, long timeoutSeconds) throws TimeoutException {
+        new ElementWait(driver, pageDefinition, pageClass.getName()).waitFor(elementName, true, timeoutSeconds);
+    }
+
+    /**
+     * Waits until element of the page disappears. See {@link ElementWait} for how it waits
+     *
+     * @param elementName    String element name
+     * @param timeoutSeconds how long to wait in seconds
+     * @throws TimeoutException if element didn't disappear in time
+     */
+    protected void waitForElementToDisappear(String elementName, long timeoutSeconds) throws TimeoutException {
+        new ElementWait(driver, pageDefinition, pageClass.getName()).waitFor(elementName, false, timeoutSeconds);
+    }
 }
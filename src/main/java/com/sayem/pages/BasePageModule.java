@@ -16,8 +16,15 @@
 
 package com.sayem.pages;
 
+import com.sayem.artifacts.StepHistory;
+import com.sayem.tracing.TraceRecorder;
 import org.openqa.selenium.By;
+import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.util.List;
+import java.util.Map;
 
 import static com.sayem.pages.PageFactory.checkDriver;
 
@@ -53,4 +60,80 @@ public abstract class BasePageModule {
         return this.pageModuleDefinition.getElementLocator(elementName);
     }
 
+    /**
+     * Finds element of the page module using element locator from page module definition file
+     *
+     * @param elementName String element name
+     * @return WebElement found on the page
+     */
+    protected WebElement findElement(String elementName) {
+        long startTime = System.nanoTime();
+        By locator = getElementLocator(elementName);
+        StepHistory.record("findElement", this.getClass().getName(), null, null, elementName, locator);
+        try {
+            return driver.findElement(locator);
+        } finally {
+            TraceRecorder.record("BasePageModule.findElement", "element", startTime, elementName);
+        }
+    }
+
+    /**
+     * Finds all elements of the page module which match element locator from page module definition file
+     *
+     * @param elementName String element name
+     * @return List of WebElements found on the page
+     */
+    protected List<WebElement> findElements(String elementName) {
+        long startTime = System.nanoTime();
+        By locator = getElementLocator(elementName);
+        StepHistory.record("findElements", this.getClass().getName(), null, null, elementName, locator);
+        try {
+            return driver.findElements(locator);
+        } finally {
+            TraceRecorder.record("BasePageModule.findElements", "element", startTime, elementName);
+        }
+    }
+
+    /**
+     * Fills many form fields of the page module in one browser call. Fields which need native events are filled through WebDriver.
+     * See {@link ElementBatch#fill(Map)}
+     *
+     * @param values element names mapped to values, checkboxes and radio buttons are selected if value is "true"
+     */
+    protected void fillElements(Map<String, String> values) {
+        new ElementBatch(driver, pageModuleDefinition, this.getClass().getName()).fill(values);
+    }
+
+    /**
+     * Reads text, value or attribute of many elements of the page module in one browser call
+     *
+     * @param readRequests element names mapped to {@link ElementBatch#TEXT}, {@link ElementBatch#VALUE}
+     *                     or attribute name with {@link ElementBatch#ATTRIBUTE_PREFIX}
+     * @return element names mapped to values of all elements which match their locators
+     */
+    protected Map<String, List<String>> readElements(Map<String, String> readRequests) {
+        return new ElementBatch(driver, pageModuleDefinition, this.getClass().getName()).read(readRequests);
+    }
+
+    /**
+     * Waits until element of the page module appears. See {@link ElementWait} for how it waits
+     *
+     * @param elementName    String element name
+     * @param timeoutSeconds how long to wait in seconds
+     * @throws TimeoutException if element didn't appear in time
+     */
+    protected void waitForElement(String elementName, long timeoutSeconds) throws TimeoutException {
+        new ElementWait(driver, pageModuleDefinition, this.getClass().getName()).waitFor(elementName, true, timeoutSeconds);
+    }
+
+    /**
+     * Waits until element of the page module disappears. See {@link ElementWait} for how it waits
+     *
+     * @param elementName    String element name
+     * @param timeoutSeconds how long to wait in seconds
+     * @throws TimeoutException if element didn't disappear in time
+     */
+    protected void waitForElementToDisappear(String elementName, long timeoutSeconds) throws TimeoutException {
+        new ElementWait(driver, pageModuleDefinition, this.getClass().getName()).waitFor(elementName, false, timeoutSeconds);
+    }
 }
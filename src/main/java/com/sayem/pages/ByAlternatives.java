@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsDriver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Locator of element which has several alternative locators in page definition. Alternatives are tried in order
+ * of their success rates kept by {@link LocatorStatistics}, first alternative which finds element wins,
+ * so locator which stopped working after UI change is moved back and doesn't cost timeout in next lookups.
+ * Alternatives after the first one which didn't find element are tried with implicit wait turned off.
+ */
+class ByAlternatives extends By {
+
+    private final String element;
+    private final Map<String, By> locators;
+
+    /**
+     * @param element  page class and element name, used as key of locator statistics
+     * @param locators alternative locators as written in page definition mapped to their By objects
+     */
+    ByAlternatives(String element, Map<String, By> locators) {
+        this.element = element;
+        this.locators = locators;
+    }
+
+    @Override
+    public WebElement findElement(SearchContext context) {
+        NoSuchElementException lastError = null;
+        List<String> failedLocators = new ArrayList<String>();
+        ImplicitWait implicitWait = new ImplicitWait(context);
+        try {
+            for (String locator : getOrderedLocators()) {
+                try {
+                    WebElement foundElement = context.findElement(locators.get(locator));
+                    LocatorStatistics.recordLookup(element, failedLocators, locator);
+                    return foundElement;
+                } catch (NoSuchElementException e) {
+                    failedLocators.add(locator);
+                    lastError = e;
+                    implicitWait.turnOff();
+                }
+            }
+        } finally {
+            implicitWait.restore();
+        }
+        throw lastError;
+    }
+
+    @Override
+    public List<WebElement> findElements(SearchContext context) {
+        List<String> failedLocators = new ArrayList<String>();
+        ImplicitWait implicitWait = new ImplicitWait(context);
+        try {
+            for (String locator : getOrderedLocators()) {
+                List<WebElement> elements = context.findElements(locators.get(locator));
+                if (!elements.isEmpty()) {
+                    LocatorStatistics.recordLookup(element, failedLocators, locator);
+                    return elements;
+                }
+                failedLocators.add(locator);
+                implicitWait.turnOff();
+            }
+        } finally {
+            implicitWait.restore();
+        }
+        return Collections.emptyList();
+    }
+
+    private List<String> getOrderedLocators() {
+        return LocatorStatistics.order(element, new ArrayList<String>(locators.keySet()));
+    }
+
+    /**
+     * Implicit wait of driver the lookup is done through. Lookup which didn't find element already waited for page
+     * to change, so other alternatives are tried without waiting and absent element costs implicit timeout once,
+     * not once per alternative.
+     */
+    private static class ImplicitWait {
+        private final WebDriver driver;
+        private long previousTimeout = -1;
+
+        private ImplicitWait(SearchContext context) {
+            if (context instanceof WebDriver) {
+                driver = (WebDriver) context;
+            } else if (context instanceof WrapsDriver) {
+                driver = ((WrapsDriver) context).getWrappedDriver();
+            } else {
+                driver = null;
+            }
+        }
+
+        private void turnOff() {
+            if (driver != null && previousTimeout < 0) {
+                previousTimeout = ElementWait.setImplicitWait(driver, 0);
+            }
+        }
+
+        private void restore() {
+            if (driver != null && previousTimeout >= 0) {
+                ElementWait.setImplicitWait(driver, previousTimeout);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "By.alternatives: " + locators.keySet();
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+/**
+ * Translates CSS selectors into equivalent XPath expressions, so CSS locators can be evaluated where only XPath is available.
+ * Supported are type, universal, id, class and attribute selectors (=, ~=, |=, ^=, $=, *=), :first-child, :last-child,
+ * :last-of-type and numeric :nth-child() and :nth-of-type(),
+ * all four combinators and selector groups. Element names are expected in lower case, as in HTML DOM.
+ */
+class CssToXPath {
+
+    private final String css;
+    private int position;
+
+    private CssToXPath(String css) {
+        this.css = css;
+    }
+
+    /**
+     * Translates CSS selector
+     *
+     * @param css CSS selector
+     * @return XPath expression which selects the same elements
+     * @throws IllegalArgumentException if selector is incorrect or uses not supported features
+     */
+    static String translate(String css) throws IllegalArgumentException {
+        return new CssToXPath(css).translateGroup();
+    }
+
+    /**
+     * Builds XPath string literal, values with both kinds of quotes are joined with concat()
+     *
+     * @param value string value
+     * @return XPath literal
+     */
+    static String literal(String value) {
+        if (value.indexOf('\'') < 0) {
+            return "'" + value + "'";
+        }
+        if (value.indexOf('"') < 0) {
+            return "\"" + value + "\"";
+        }
+        return "concat('" + value.replace("'", "', \"'\", '") + "')";
+    }
+
+    private String translateGroup() {
+        StringBuilder xpath = new StringBuilder();
+        do {
+            if (xpath.length() > 0) {
+                xpath.append(" | ");
+            }
+            xpath.append(translateSelector());
+        } while (consume(','));
+        skipWhitespace();
+        if (position < css.length()) {
+            throw error("unexpected character '" + css.charAt(position) + "'");
+        }
+        return xpath.toString();
+    }
+
+    private String translateSelector() {
+        skipWhitespace();
+        StringBuilder xpath = new StringBuilder("//");
+        xpath.append(translateCompound());
+        while (true) {
+            boolean whitespace = skipWhitespace();
+            if (position >= css.length() || css.charAt(position) == ',') {
+                return xpath.toString();
+            }
+            char combinator = css.charAt(position);
+            if (combinator == '>' || combinator == '+' || combinator == '~') {
+                position++;
+                skipWhitespace();
+            } else if (whitespace) {
+                combinator = ' ';
+            } else {
+                throw error("unexpected character '" + combinator + "'");
+            }
+
+            String compound = translateCompound();
+            switch (combinator) {
+                case '>':
+                    xpath.append('/').append(compound);
+                    break;
+                case '+':
+                    xpath.append("/following-sibling::*[1]/self::").append(compound);
+                    break;
+                case '~':
+                    xpath.append("/following-sibling::").append(compound);
+                    break;
+                default:
+                    xpath.append("//").append(compound);
+                    break;
+            }
+        }
+    }
+
+    private String translateCompound() {
+        StringBuilder xpath = new StringBuilder();
+        boolean universal = consume('*');
+        String element = universal ? "" : readIdentifier().toLowerCase();
+        boolean hasType = universal || !element.isEmpty();
+        xpath.append(element.isEmpty() ? "*" : element);
+
+        int qualifiers = 0;
+        for (; position < css.length(); qualifiers++) {
+            char c = css.charAt(position);
+            if (c == '#') {
+                position++;
+                xpath.append("[@id=").append(literal(requireIdentifier())).append(']');
+            } else if (c == '.') {
+                position++;
+                xpath.append("[contains(concat(' ', normalize-space(@class), ' '), ")
+                        .append(literal(" " + requireIdentifier() + " ")).append(")]");
+            } else if (c == '[') {
+                position++;
+                xpath.append('[').append(translateAttribute()).append(']');
+            } else if (c == ':') {
+                position++;
+                String pseudoClass = requireIdentifier();
+                if (pseudoClass.equals("first-child")) {
+                    xpath.append("[not(preceding-sibling::*)]");
+                } else if (pseudoClass.equals("last-child")) {
+                    xpath.append("[not(following-sibling::*)]");
+                } else if (pseudoClass.equals("last-of-type") && !element.isEmpty()) {
+                    xpath.append("[not(following-sibling::").append(element).append(")]");
+                } else if (pseudoClass.equals("nth-child")) {
+                    xpath.append("[count(preceding-sibling::*)=").append(readIndex() - 1).append(']');
+                } else if (pseudoClass.equals("nth-of-type") && !element.isEmpty()) {
+                    xpath.append("[count(preceding-sibling::").append(element).append(")=").append(readIndex() - 1).append(']');
+                } else {
+                    throw error("pseudo-class :" + pseudoClass + " is not supported");
+                }
+            } else {
+                break;
+            }
+        }
+        if (!hasType && qualifiers == 0) {
+            throw error("selector expected");
+        }
+        return xpath.toString();
+    }
+
+    private String translateAttribute() {
+        skipWhitespace();
+        String attribute = "@" + requireIdentifier();
+        skipWhitespace();
+        if (consume(']')) {
+            return attribute;
+        }
+
+        String operator;
+        if (consume('=')) {
+            operator = "=";
+        } else if (position + 1 < css.length() && css.charAt(position + 1) == '=') {
+            operator = css.substring(position, position + 2);
+            position += 2;
+        } else {
+            throw error("attribute operator expected");
+        }
+        skipWhitespace();
+        String value = readValue();
+        skipWhitespace();
+        if (!consume(']')) {
+            throw error("']' expected");
+        }
+
+        String literal = literal(value);
+        if (operator.equals("=")) {
+            return attribute + "=" + literal;
+        } else if (operator.equals("~=")) {
+            return "contains(concat(' ', normalize-space(" + attribute + "), ' '), " + literal(" " + value + " ") + ")";
+        } else if (operator.equals("|=")) {
+            return attribute + "=" + literal + " or starts-with(" + attribute + ", " + literal(value + "-") + ")";
+        } else if (operator.equals("^=")) {
+            return "starts-with(" + attribute + ", " + literal + ")";
+        } else if (operator.equals("$=")) {
+            return "substring(" + attribute + ", string-length(" + attribute + ") - " + value.length() + " + 1)=" + literal;
+        } else if (operator.equals("*=")) {
+            return "contains(" + attribute + ", " + literal + ")";
+        }
+        throw error("attribute operator " + operator + " is not supported");
+    }
+
+    private int readIndex() {
+        int start = position + 1;
+        if (!consume('(')) {
+            throw error("'(' expected");
+        }
+        while (position < css.length() && Character.isDigit(css.charAt(position))) {
+            position++;
+        }
+        if (position == start || !consume(')')) {
+            throw error("only numeric index is supported");
+        }
+        return Integer.parseInt(css.substring(start, position - 1));
+    }
+
+    private String readValue() {
+        if (position < css.length() && (css.charAt(position) == '\'' || css.charAt(position) == '"')) {
+            char quote = css.charAt(position);
+            int end = css.indexOf(quote, position + 1);
+            if (end < 0) {
+                throw error("unclosed string");
+            }
+            String value = css.substring(position + 1, end);
+            position = end + 1;
+            return value;
+        }
+        return requireIdentifier();
+    }
+
+    private String requireIdentifier() {
+        String identifier = readIdentifier();
+        if (identifier.isEmpty()) {
+            throw error("name expected");
+        }
+        return identifier;
+    }
+
+    private String readIdentifier() {
+        int start = position;
+        while (position < css.length()) {
+            char c = css.charAt(position);
+            if (Character.isLetterOrDigit(c) || c == '-' || c == '_') {
+                position++;
+            } else {
+                break;
+            }
+        }
+        return css.substring(start, position);
+    }
+
+    private boolean consume(char c) {
+        if (position < css.length() && css.charAt(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean skipWhitespace() {
+        int start = position;
+        while (position < css.length() && Character.isWhitespace(css.charAt(position))) {
+            position++;
+        }
+        return position > start;
+    }
+
+    private IllegalArgumentException error(String reason) {
+        return new IllegalArgumentException("Can't translate CSS selector [" + css + "] to XPath, " + reason + " at position " + position);
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import com.google.common.collect.ImmutableList;
+import com.sayem.artifacts.StepHistory;
+import com.sayem.tracing.TraceRecorder;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.Select;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fills and reads many elements of a page or page module in one JavaScript call instead of WebDriver call per element.
+ * Elements are looked up inside the browser by locators from page definition, alternative locators are tried
+ * in order of their success rates.
+ * <p/>
+ * Fields which can't be filled by script, like file inputs, disabled fields or elements which aren't form fields,
+ * are filled through WebDriver with native events. Elements which script fails to find, because browser doesn't support
+ * locator for example, are processed through WebDriver one by one, the rest are still processed by script.
+ * If browser can't execute JavaScript all elements are processed through WebDriver.
+ * Text is read the same way in both cases, as visible text with whitespace collapsed.
+ */
+public class ElementBatch {
+
+    public static final String TEXT = "text";
+    public static final String VALUE = "value";
+    public static final String ATTRIBUTE_PREFIX = "@";
+
+    /**
+     * JavaScript function findElements(locatorType, locatorValue) which finds all elements matching
+     * page definition locator and returns them as array, function findAlternatives(locators) which tries
+     * [locatorType, locatorValue] pairs in order and returns {index, elements} of first pair which matches any element,
+     * index is -1 if none does, and function visibleText(element) which returns text of element as WebElement.getText()
+     * does: empty for hidden elements, with whitespace collapsed, see {@link #normalizeText(String)}
+     */
+    static final String FIND_ELEMENTS_FUNCTION =
+            "function visibleText(e) {" +
+            "  for (var p = e; p && p.nodeType == 1; p = p.parentNode) {" +
+            "    var style = window.getComputedStyle ? window.getComputedStyle(p, null) : p.currentStyle;" +
+            "    if (style && (style.display == 'none' || p == e && style.visibility == 'hidden')) return '';" +
+            "  }" +
+            "  var text = e.innerText === undefined ? e.textContent : e.innerText;" +
+            "  return (text || '').replace(/[\\s\\u00a0]+/g, ' ').replace(/^ | $/g, '');" +
+            "}" +
+            "function findElements(type, value) {" +
+            "  function toArray(list) { var result = []; for (var i = 0; i < list.length; i++) result.push(list[i]); return result; }" +
+            "  switch (type.toLowerCase()) {" +
+            "    case 'id': var e = document.getElementById(value); return e ? [e] : [];" +
+            "    case 'name': return toArray(document.getElementsByName(value));" +
+            "    case 'css': return toArray(document.querySelectorAll(value));" +
+            "    case 'tagname': return toArray(document.getElementsByTagName(value));" +
+            "    case 'xpath':" +
+            "      var nodes = document.evaluate(value, document, null, 7, null), result = [];" +
+            "      for (var i = 0; i < nodes.snapshotLength; i++) result.push(nodes.snapshotItem(i));" +
+            "      return result;" +
+            "    case 'linktext':" +
+            "    case 'partiallinktext':" +
+            "      var links = document.getElementsByTagName('a'), matching = [];" +
+            "      for (var i = 0; i < links.length; i++) {" +
+            "        var linkText = visibleText(links[i]);" +
+            "        if (type.toLowerCase() == 'linktext' ? linkText == value : linkText.indexOf(value) >= 0) matching.push(links[i]);" +
+            "      }" +
+            "      return matching;" +
+            "  }" +
+            "  throw new Error('Locator type ' + type + ' is not recognised');" +
+            "}" +
+            "function findAlternatives(locators) {" +
+            "  for (var i = 0; i < locators.length; i++) {" +
+            "    var elements = findElements(locators[i][0], locators[i][1]);" +
+            "    if (elements.length > 0) return {index: i, elements: elements};" +
+            "  }" +
+            "  return {index: -1, elements: []};" +
+            "}";
+
+    private static final String FILL_SCRIPT = FIND_ELEMENTS_FUNCTION +
+            "function fire(e, name) {" +
+            "  var event = document.createEvent('HTMLEvents'); event.initEvent(name, true, true); e.dispatchEvent(event);" +
+            "}" +
+            "var fields = arguments[0], nativeFields = [], found = [];" +
+            "for (var i = 0; i < fields.length; i++) {" +
+            "  try {" +
+            "    var alternatives = findAlternatives(fields[i][1]), e = alternatives.elements[0];" +
+            "  } catch (error) {" +
+            "    found.push(null); nativeFields.push(fields[i][0]); continue;" +
+            "  }" +
+            "  found.push(alternatives.index);" +
+            "  var tag = e ? e.tagName.toLowerCase() : '', inputType = e ? (e.type || '').toLowerCase() : '';" +
+            "  if (!e || e.disabled || e.readOnly || inputType == 'file'" +
+            "      || (tag != 'input' && tag != 'textarea' && tag != 'select')) {" +
+            "    nativeFields.push(fields[i][0]); continue;" +
+            "  }" +
+            "  if (inputType == 'checkbox' || inputType == 'radio') {" +
+            "    e.checked = fields[i][2] == 'true';" +
+            "  } else {" +
+            "    e.value = fields[i][2];" +
+            "    fire(e, 'input');" +
+            "  }" +
+            "  fire(e, 'change');" +
+            "}" +
+            "return [nativeFields, found];";
+
+    private static final String READ_SCRIPT = FIND_ELEMENTS_FUNCTION +
+            "var requests = arguments[0], results = [], found = [];" +
+            "for (var i = 0; i < requests.length; i++) {" +
+            "  try {" +
+            "    var alternatives = findAlternatives(requests[i][1]), elements = alternatives.elements, values = [];" +
+            "    for (var j = 0; j < elements.length; j++) {" +
+            "      var e = elements[j], read = requests[i][2];" +
+            "      if (read == '" + TEXT + "') values.push(visibleText(e));" +
+            "      else if (read == '" + VALUE + "') values.push(e.value === undefined ? null : String(e.value));" +
+            "      else values.push(e.getAttribute(read.substring(1)));" +
+            "    }" +
+            "    found.push(alternatives.index);" +
+            "    results.push(values);" +
+            "  } catch (error) {" +
+            "    found.push(null); results.push(null);" +
+            "  }" +
+            "}" +
+            "return [results, found];";
+
+    private final WebDriver driver;
+    private final PageDefinition definition;
+    private final String ownerName;
+
+    /**
+     * @param driver     WebDriver object
+     * @param definition page or page module definition with element locators
+     * @param ownerName  name of page or page module class, used for step history
+     */
+    ElementBatch(WebDriver driver, PageDefinition definition, String ownerName) {
+        this.driver = driver;
+        this.definition = definition;
+        this.ownerName = ownerName;
+    }
+
+    /**
+     * Fills form fields. Text fields get values, checkboxes and radio buttons are selected if value is "true".
+     * Script sets values and fires input and change events, fields which need native events are filled through WebDriver.
+     *
+     * @param values element names mapped to values, fields are filled in map order
+     * @throws IllegalArgumentException if element locator can not be found or parsed
+     */
+    void fill(Map<String, String> values) {
+        long startTime = System.nanoTime();
+        StepHistory.record("fillElements", ownerName, null, null, values.keySet().toString(), null);
+        try {
+            List<List<Object>> fields = new ArrayList<List<Object>>();
+            List<List<String[]>> locators = new ArrayList<List<String[]>>();
+            for (Map.Entry<String, String> value : values.entrySet()) {
+                locators.add(definition.getParsedElementLocators(value.getKey()));
+                fields.add(toScriptArgument(value.getKey(), locators.get(locators.size() - 1), value.getValue()));
+            }
+
+            Set<String> nativeFields = new LinkedHashSet<String>(values.keySet());
+            if (!fields.isEmpty()) {
+                Object result = executeScript(FILL_SCRIPT, fields);
+                if (result instanceof List && ((List<?>) result).size() == 2) {
+                    nativeFields.retainAll(toStrings((List<?>) ((List<?>) result).get(0)));
+                    recordLocatorResults(values.keySet(), locators, (List<?>) ((List<?>) result).get(1));
+                }
+            }
+
+            for (String elementName : nativeFields) {
+                fillNatively(elementName, values.get(elementName));
+            }
+        } finally {
+            TraceRecorder.record("ElementBatch.fill", "element", startTime, ownerName);
+        }
+    }
+
+    /**
+     * Reads all elements matching each requested element locator
+     *
+     * @param readRequests element names mapped to what should be read: {@link #TEXT}, {@link #VALUE} or attribute name with {@link #ATTRIBUTE_PREFIX}
+     * @return element names mapped to values read from all matching elements, in map order
+     * @throws IllegalArgumentException if element locator can not be found or parsed, or read request is not recognised
+     */
+    Map<String, List<String>> read(Map<String, String> readRequests) {
+        long startTime = System.nanoTime();
+        StepHistory.record("readElements", ownerName, null, null, readRequests.keySet().toString(), null);
+        try {
+            List<List<Object>> requests = new ArrayList<List<Object>>();
+            List<List<String[]>> locators = new ArrayList<List<String[]>>();
+            for (Map.Entry<String, String> readRequest : readRequests.entrySet()) {
+                String read = readRequest.getValue();
+                if (!TEXT.equals(read) && !VALUE.equals(read) && !(read.startsWith(ATTRIBUTE_PREFIX) && read.length() > 1)) {
+                    throw new IllegalArgumentException("Can't read " + read + " of element " + readRequest.getKey() + ".\n" +
+                            "Allowed values are " + TEXT + ", " + VALUE + " and attribute name starting with " + ATTRIBUTE_PREFIX);
+                }
+                locators.add(definition.getParsedElementLocators(readRequest.getKey()));
+                requests.add(toScriptArgument(readRequest.getKey(), locators.get(locators.size() - 1), read));
+            }
+
+            Object result = requests.isEmpty() ? null : executeScript(READ_SCRIPT, requests);
+            List<?> values = Collections.emptyList();
+            if (result instanceof List && ((List<?>) result).size() == 2
+                    && ((List<?>) ((List<?>) result).get(0)).size() == requests.size()) {
+                values = (List<?>) ((List<?>) result).get(0);
+                recordLocatorResults(readRequests.keySet(), locators, (List<?>) ((List<?>) result).get(1));
+            }
+
+            //Elements which script couldn't read, because of unsupported locator for example, are read through WebDriver
+            Map<String, List<String>> results = new LinkedHashMap<String, List<String>>();
+            int i = 0;
+            for (Map.Entry<String, String> readRequest : readRequests.entrySet()) {
+                Object value = i < values.size() ? values.get(i) : null;
+                results.put(readRequest.getKey(), value instanceof List ? toStrings((List<?>) value)
+                        : readNatively(readRequest.getKey(), readRequest.getValue()));
+                i++;
+            }
+            return results;
+        } finally {
+            TraceRecorder.record("ElementBatch.read", "element", startTime, ownerName);
+        }
+    }
+
+    private List<Object> toScriptArgument(String elementName, List<String[]> locators, String value) {
+        //Validates locator the same way as WebDriver lookup does
+        definition.getElementLocator(elementName);
+        return ImmutableList.<Object>of(elementName, toScriptLocators(locators), value == null ? "" : value);
+    }
+
+    /**
+     * Converts locators to script argument, list of [locatorType, locatorValue] pairs
+     *
+     * @param locators locators as returned by {@link PageDefinition#getParsedElementLocators}
+     * @return locators as lists, which are passed to scripts as arrays
+     */
+    static List<List<String>> toScriptLocators(List<String[]> locators) {
+        List<List<String>> scriptLocators = new ArrayList<List<String>>(locators.size());
+        for (String[] locator : locators) {
+            scriptLocators.add(ImmutableList.copyOf(locator));
+        }
+        return scriptLocators;
+    }
+
+    /**
+     * Records which alternative locator found each element in script
+     *
+     * @param elementNames names of elements in order they were passed to script
+     * @param locators     locators of each element in order they were tried
+     * @param foundIndexes index of locator which found each element, -1 if none did
+     */
+    private void recordLocatorResults(Collection<String> elementNames, List<List<String[]>> locators, List<?> foundIndexes) {
+        int i = 0;
+        for (String elementName : elementNames) {
+            if (i < foundIndexes.size() && foundIndexes.get(i) instanceof Number) {
+                definition.recordLocatorResults(elementName, locators.get(i), ((Number) foundIndexes.get(i)).intValue());
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Executes script if browser supports JavaScript
+     *
+     * @return script result or null if script can't be executed, so elements should be processed through WebDriver
+     */
+    private Object executeScript(String script, Object argument) {
+        if (!(driver instanceof JavascriptExecutor)) {
+            return null;
+        }
+        try {
+            return ((JavascriptExecutor) driver).executeScript(script, argument);
+        } catch (WebDriverException e) {
+            return null;
+        } catch (UnsupportedOperationException e) {
+            //HtmlUnit with JavaScript disabled
+            return null;
+        }
+    }
+
+    private void fillNatively(String elementName, String value) {
+        WebElement element = driver.findElement(definition.getElementLocator(elementName));
+        String inputType = element.getAttribute("type");
+        if ("select".equalsIgnoreCase(element.getTagName())) {
+            //Option is selected by value, the same way as script sets value of select element
+            Select select = new Select(element);
+            if (select.isMultiple()) {
+                select.deselectAll();
+            }
+            select.selectByValue(value == null ? "" : value);
+        } else if ("checkbox".equalsIgnoreCase(inputType) || "radio".equalsIgnoreCase(inputType)) {
+            if (element.isSelected() != Boolean.parseBoolean(value)) {
+                element.click();
+            }
+        } else {
+            element.clear();
+            element.sendKeys(value == null ? "" : value);
+        }
+    }
+
+    private List<String> readNatively(String elementName, String read) {
+        By locator = definition.getElementLocator(elementName);
+        List<String> values = new ArrayList<String>();
+        for (WebElement element : driver.findElements(locator)) {
+            if (TEXT.equals(read)) {
+                values.add(normalizeText(element.getText()));
+            } else if (VALUE.equals(read)) {
+                values.add(element.getAttribute("value"));
+            } else {
+                values.add(element.getAttribute(read.substring(ATTRIBUTE_PREFIX.length())));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Collapses whitespace of element text into single spaces, so text read through WebDriver
+     * is the same as text read by script
+     *
+     * @param text text of element
+     * @return text without leading and trailing whitespace
+     */
+    static String normalizeText(String text) {
+        return text == null ? null : text.replaceAll("[\\s\\u00a0]+", " ").trim();
+    }
+
+    private static List<String> toStrings(List<?> values) {
+        if (values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> strings = new ArrayList<String>(values.size());
+        for (Object value : values) {
+            strings.add(value == null ? null : value.toString());
+        }
+        return strings;
+    }
+}
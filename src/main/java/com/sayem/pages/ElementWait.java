@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import com.sayem.artifacts.StepHistory;
+import com.sayem.configuration.Configuration;
+import com.sayem.enums.WaitMode;
+import com.sayem.tracing.TraceRecorder;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+import org.openqa.selenium.support.ui.WebDriverWait;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for elements of a page or page module to appear or disappear.
+ * In {@link WaitMode#EVENT} mode script injected into the browser observes DOM changes with MutationObserver
+ * and returns as soon as element locator from page definition matches, so each wait is one asynchronous script call
+ * which completes right after the change. Alternative locators are tried in order of their success rates, element
+ * is present if any of them matches. Browsers without MutationObserver or JavaScript are polled through WebDriver.
+ */
+public class ElementWait {
+
+    //Asynchronous script is allowed to run a bit longer than the wait, so wait timeout is reported by script itself
+    private static final long SCRIPT_TIMEOUT_MARGIN = 2000;
+    private static final long POLLING_INTERVAL = 100;
+
+    private static final String WAIT_SCRIPT = ElementBatch.FIND_ELEMENTS_FUNCTION +
+            "var locators = arguments[0], present = arguments[1], timeout = arguments[2];" +
+            "var callback = arguments[arguments.length - 1], observer = null, timer = null;" +
+            "function check() {" +
+            "  var index = findAlternatives(locators).index;" +
+            "  return present ? (index >= 0 ? index : null) : (index < 0 ? -1 : null);" +
+            "}" +
+            "function done(result) {" +
+            "  if (observer) observer.disconnect();" +
+            "  if (timer) clearTimeout(timer);" +
+            "  observer = null; timer = null; callback(result);" +
+            "}" +
+            "var result = check();" +
+            "if (result !== null) { callback(result); }" +
+            "else if (!window.MutationObserver) { callback(null); }" +
+            "else {" +
+            "  observer = new MutationObserver(function() {" +
+            "    if (observer) { var result = check(); if (result !== null) done(result); }" +
+            "  });" +
+            "  observer.observe(document, {childList: true, subtree: true, attributes: true, characterData: true});" +
+            "  timer = setTimeout(function() { if (observer) done(false); }, timeout);" +
+            "}";
+
+    private static volatile WaitMode waitMode = WaitMode.EVENT;
+    //Script timeout last set for each browser, so it's not set again before every wait
+    private static final Map<WebDriver, Long> scriptTimeouts = Collections.synchronizedMap(new WeakHashMap<WebDriver, Long>());
+    //Implicit wait last set for each browser, so lookups which shouldn't wait can turn it off and restore it
+    private static final Map<WebDriver, Long> implicitWaits = Collections.synchronizedMap(new WeakHashMap<WebDriver, Long>());
+
+    private final WebDriver driver;
+    private final PageDefinition definition;
+    private final String ownerName;
+
+    /**
+     * @param driver     WebDriver object
+     * @param definition page or page module definition with element locators
+     * @param ownerName  name of page or page module class, used for step history
+     */
+    ElementWait(WebDriver driver, PageDefinition definition, String ownerName) {
+        this.driver = driver;
+        this.definition = definition;
+        this.ownerName = ownerName;
+    }
+
+    /**
+     * Configures how page objects wait for elements
+     *
+     * @param mode wait mode
+     */
+    public static void configure(WaitMode mode) {
+        waitMode = mode;
+    }
+
+    /**
+     * Waits until at least one element matches element locator or no element matches it
+     *
+     * @param elementName    name of the element in page definition
+     * @param present        true to wait for element to appear, false to wait for it to disappear
+     * @param timeoutSeconds how long to wait
+     * @throws TimeoutException if element didn't appear or disappear in time
+     */
+    void waitFor(String elementName, boolean present, long timeoutSeconds) throws TimeoutException {
+        long startTime = System.nanoTime();
+        By locator = definition.getElementLocator(elementName);
+        StepHistory.record(present ? "waitForElement" : "waitForElementToDisappear", ownerName, null, null, elementName, locator);
+        try {
+            long timeout = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+            Boolean result = waitMode == WaitMode.EVENT ? waitForEvent(elementName, present, timeout) : null;
+            if (result == null) {
+                long remainingTime = timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                waitByPolling(locator, present, Math.max(remainingTime, 0));
+            } else if (!result) {
+                throw new TimeoutException("Element " + elementName + (present ? " didn't appear" : " didn't disappear") +
+                        " in " + timeoutSeconds + " seconds");
+            }
+        } finally {
+            TraceRecorder.record(present ? "ElementWait.waitForElement" : "ElementWait.waitForElementToDisappear", "element",
+                    startTime, elementName);
+        }
+    }
+
+    /**
+     * Waits in browser for DOM changes
+     *
+     * @return true if element appeared or disappeared, false on timeout, null if browser can't wait for DOM changes
+     */
+    private Boolean waitForEvent(String elementName, boolean present, long timeout) {
+        if (!(driver instanceof JavascriptExecutor)) {
+            return null;
+        }
+        List<String[]> locators = definition.getParsedElementLocators(elementName);
+        try {
+            setScriptTimeout(driver, timeout + SCRIPT_TIMEOUT_MARGIN);
+            //Script returns index of alternative which found element, -1 when element disappeared or false on timeout
+            Object result = ((JavascriptExecutor) driver).executeAsyncScript(WAIT_SCRIPT, ElementBatch.toScriptLocators(locators),
+                    present, timeout);
+            if (result instanceof Number) {
+                definition.recordLocatorResults(elementName, locators, ((Number) result).intValue());
+                return true;
+            }
+            return Boolean.FALSE.equals(result) ? Boolean.FALSE : null;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (WebDriverException e) {
+            return null;
+        } catch (UnsupportedOperationException e) {
+            //HtmlUnit with JavaScript disabled
+            return null;
+        }
+    }
+
+    /**
+     * Sets how long asynchronous scripts may run in the browser. All framework code which runs asynchronous scripts
+     * sets timeout through this method, so cached value is always the one set in the browser and call is skipped
+     * only if timeout is the same.
+     *
+     * @param driver  WebDriver object
+     * @param timeout script timeout in milliseconds
+     */
+    static void setScriptTimeout(WebDriver driver, long timeout) {
+        Long currentTimeout = scriptTimeouts.get(driver);
+        if (currentTimeout == null || currentTimeout != timeout) {
+            driver.manage().timeouts().setScriptTimeout(timeout, TimeUnit.MILLISECONDS);
+            scriptTimeouts.put(driver, timeout);
+        }
+    }
+
+    /**
+     * Sets how long WebDriver waits for elements to appear in lookups. All framework code sets implicit wait through
+     * this method, so code which polls for elements itself can turn implicit wait off and restore it afterwards.
+     *
+     * @param driver  WebDriver object
+     * @param timeout implicit wait in milliseconds
+     * @return previous implicit wait in milliseconds, default element timeout if it wasn't set through this method
+     */
+    static long setImplicitWait(WebDriver driver, long timeout) {
+        Long currentTimeout = implicitWaits.get(driver);
+        if (currentTimeout == null || currentTimeout != timeout) {
+            driver.manage().timeouts().implicitlyWait(timeout, TimeUnit.MILLISECONDS);
+            implicitWaits.put(driver, timeout);
+        }
+        return currentTimeout != null ? currentTimeout : TimeUnit.SECONDS.toMillis(Configuration.getDefaultElementTimeout());
+    }
+
+    /**
+     * Polls with implicit wait turned off, otherwise each poll for absent element would wait for implicit timeout
+     */
+    private void waitByPolling(final By locator, final boolean present, long timeout) throws TimeoutException {
+        long implicitWait = setImplicitWait(driver, 0);
+        try {
+            new WebDriverWait(driver, 0, POLLING_INTERVAL)
+                    .withTimeout(timeout, TimeUnit.MILLISECONDS)
+                    .until(new ExpectedCondition<Boolean>() {
+                        public Boolean apply(WebDriver driver) {
+                            return driver.findElements(locator).isEmpty() != present;
+                        }
+                    });
+        } finally {
+            setImplicitWait(driver, implicitWait);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.io.Files;
+import com.sayem.configuration.Configuration;
+import com.sayem.logger.LogLevels;
+import com.sayem.logger.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Rewrites XPath element locators of page definitions into equivalent CSS locators when elements are looked up,
+ * because browsers find elements by CSS selectors several times faster. XPath locators which can't be translated
+ * exactly keep their original form. Rewritten locators are listed in locator-rewrites.csv in test results directory.
+ */
+public abstract class LocatorOptimizer {
+
+    public static final String REPORT_FILE_NAME = "locator-rewrites.csv";
+
+    private static final String XPATH_PREFIX = "xpath~";
+    private static final String CSS_PREFIX = "css~";
+
+    private static volatile boolean enabled = true;
+    private static volatile boolean positionalSelectorsSupported = true;
+    //XPath locators mapped to their rewritten form, prefixed if positional selectors are supported
+    private static final ConcurrentMap<String, String> translations = new ConcurrentHashMap<String, String>();
+    private static final Set<String> rewrites = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Enables or disables rewriting of XPath locators
+     *
+     * @param enabled true if XPath locators should be rewritten
+     */
+    public static void setEnabled(boolean enabled) {
+        LocatorOptimizer.enabled = enabled;
+    }
+
+    /**
+     * Sets whether browser supports CSS3 structural pseudo-classes like :nth-of-type. If it doesn't, XPath locators
+     * with positions like //ul/li[2] keep their original form
+     *
+     * @param supported true if positions can be rewritten into CSS
+     */
+    public static void setPositionalSelectorsSupported(boolean supported) {
+        positionalSelectorsSupported = supported;
+    }
+
+    /**
+     * Rewrites XPath alternatives of element locator for active browser when element is looked up, so locators follow
+     * browser type even if it changes after page definition is loaded. Translations are cached.
+     *
+     * @param pageClassName name of a page class which element is looked up
+     * @param elementName   name of the element in page definition
+     * @param locator       locator from page definition
+     * @return locator with XPath alternatives rewritten to CSS, or the same locator if nothing can be translated
+     */
+    static String optimize(String pageClassName, String elementName, String locator) {
+        if (!enabled || locator == null) {
+            return locator;
+        }
+        String optimizedLocator = optimize(locator);
+        if (!optimizedLocator.equals(locator)) {
+            String rewrite = toCsv(String.valueOf(pageClassName)) + "," + toCsv(elementName) + "," + toCsv(locator) + "," +
+                    toCsv(optimizedLocator);
+            if (rewrites.add(rewrite)) {
+                Logger.info(LogLevels.LEVEL_9, "LocatorOptimizer", "Locator of " + pageClassName + "." + elementName +
+                        " is rewritten from " + locator + " to " + optimizedLocator);
+            }
+        }
+        return optimizedLocator;
+    }
+
+    /**
+     * Rewrites XPath locator into CSS locator
+     *
+     * @param locator locator in form locatorType~locatorValue, or several such locators separated by ||
+     * @return locator with XPath alternatives rewritten to CSS, or the same locator if nothing can be translated
+     */
+    static String optimize(String locator) {
+        if (locator == null) {
+            return null;
+        }
+        List<String> alternatives = PageDefinition.splitAlternatives(locator);
+        if (alternatives.size() <= 1) {
+            return optimizeAlternative(locator);
+        }
+        boolean rewritten = false;
+        List<String> optimizedAlternatives = new ArrayList<String>();
+        for (String alternative : alternatives) {
+            String optimizedAlternative = optimizeAlternative(alternative);
+            rewritten |= !optimizedAlternative.equals(alternative);
+            optimizedAlternatives.add(optimizedAlternative);
+        }
+        return rewritten ? Joiner.on(" " + PageDefinition.LOCATOR_ALTERNATIVES_SEPARATOR + " ").join(optimizedAlternatives) : locator;
+    }
+
+    private static String optimizeAlternative(String locator) {
+        if (!locator.regionMatches(true, 0, XPATH_PREFIX, 0, XPATH_PREFIX.length())) {
+            return locator;
+        }
+        boolean positionalSelectors = positionalSelectorsSupported;
+        String key = (positionalSelectors ? "positional " : "") + locator;
+        String optimizedLocator = translations.get(key);
+        if (optimizedLocator == null) {
+            String css = XPathToCss.translate(locator.substring(XPATH_PREFIX.length()), positionalSelectors);
+            optimizedLocator = css == null ? locator : CSS_PREFIX + css;
+            translations.putIfAbsent(key, optimizedLocator);
+        }
+        return optimizedLocator;
+    }
+
+    /**
+     * Writes list of rewritten locators to test results directory
+     */
+    public static void writeReport() {
+        if (rewrites.isEmpty()) {
+            return;
+        }
+        StringBuilder csv = new StringBuilder("page,element,originalLocator,rewrittenLocator\n");
+        for (String rewrite : rewrites) {
+            csv.append(rewrite).append('\n');
+        }
+
+        File reportFile = new File(Configuration.getTestResultsDirectory(), REPORT_FILE_NAME);
+        try {
+            Files.createParentDirs(reportFile);
+            Files.write(csv, reportFile, Charsets.UTF_8);
+        } catch (IOException e) {
+            Logger.error(LogLevels.LEVEL_3, "LocatorOptimizer", "Can't write report " + reportFile + ": " + e.toString());
+        }
+    }
+
+    private static String toCsv(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import com.sayem.logger.LogLevels;
+import com.sayem.logger.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.io.Closeables.closeQuietly;
+
+/**
+ * Success rates of alternative element locators. Rates are kept in local file between test runs,
+ * so locators which work are tried first from the start of the next run. Until file is configured rates are kept
+ * only in memory.
+ * Locator which failed in its last lookup while other alternative found the element is tried after all others,
+ * however long its history of successes, so dead locator costs timeout once. Otherwise locators are ordered by
+ * success rate. Locator with no history is ranked in the middle: it's tried after locators which mostly work
+ * and before locators which mostly fail. Locators with equal rates keep page definition order.
+ */
+public abstract class LocatorStatistics {
+
+    public static final String DEFAULT_FILE_NAME = "locator-statistics.properties";
+
+    private static final String KEY_SEPARATOR = "|";
+
+    private static final ConcurrentMap<String, Statistics> statistics = new ConcurrentHashMap<String, Statistics>();
+    private static final AtomicBoolean modified = new AtomicBoolean();
+    private static volatile File file;
+    private static volatile boolean loaded;
+    private static volatile boolean frozen;
+
+    /**
+     * Configures file where statistics are kept between runs. Statistics are read from the file on first use
+     *
+     * @param fileName path to statistics file or null to keep statistics only in memory
+     */
+    public static synchronized void configure(String fileName) {
+        File newFile = fileName == null ? null : new File(fileName);
+        if (newFile == null ? file != null : !newFile.equals(file)) {
+            file = newFile;
+            statistics.clear();
+            modified.set(false);
+            loaded = false;
+        }
+    }
+
+    /**
+     * Freezes statistics loaded from the file. Frozen statistics are neither updated nor saved, so alternatives are
+     * tried in the same order in every run, for example when driver commands are recorded and then replayed.
+     *
+     * @param frozen true to stop updating statistics
+     */
+    public static void setFrozen(boolean frozen) {
+        LocatorStatistics.frozen = frozen;
+    }
+
+    /**
+     * Orders alternative locators of element by their success rates
+     *
+     * @param element  page class and element name
+     * @param locators alternative locators in page definition order
+     * @return new list of locators, best first
+     */
+    static List<String> order(String element, List<String> locators) {
+        load();
+        //Ranks are taken once, so concurrent lookups don't change them while sorting
+        final Map<String, Double> ranks = new HashMap<String, Double>();
+        for (String locator : locators) {
+            ranks.put(locator, getRank(element, locator));
+        }
+        List<String> orderedLocators = new ArrayList<String>(locators);
+        Collections.sort(orderedLocators, new Comparator<String>() {
+            public int compare(String first, String second) {
+                return Double.compare(ranks.get(second), ranks.get(first));
+            }
+        });
+        return orderedLocators;
+    }
+
+    /**
+     * Records result of lookup which tried alternatives in order. Failures are recorded only when other alternative
+     * found element. If none did, element is just absent, for example when waiting for it to disappear,
+     * and that says nothing about locators.
+     *
+     * @param element           page class and element name
+     * @param failedLocators    alternatives which were tried and didn't find element
+     * @param successfulLocator alternative which found element or null if none did
+     */
+    static void recordLookup(String element, List<String> failedLocators, String successfulLocator) {
+        if (successfulLocator == null) {
+            return;
+        }
+        for (String failedLocator : failedLocators) {
+            recordFailure(element, failedLocator);
+        }
+        recordSuccess(element, successfulLocator);
+    }
+
+    static void recordSuccess(String element, String locator) {
+        if (frozen) {
+            return;
+        }
+        Statistics locatorStatistics = getStatistics(element, locator);
+        locatorStatistics.successes.incrementAndGet();
+        locatorStatistics.lastFailed = false;
+        modified.set(true);
+    }
+
+    static void recordFailure(String element, String locator) {
+        if (frozen) {
+            return;
+        }
+        Statistics locatorStatistics = getStatistics(element, locator);
+        locatorStatistics.failures.incrementAndGet();
+        locatorStatistics.lastFailed = true;
+        modified.set(true);
+    }
+
+    /**
+     * Writes statistics to the file if they changed since they were loaded
+     */
+    public static synchronized void save() {
+        if (file == null || !modified.getAndSet(false)) {
+            return;
+        }
+        Properties properties = new Properties();
+        for (Map.Entry<String, Statistics> entry : statistics.entrySet()) {
+            Statistics locatorStatistics = entry.getValue();
+            properties.setProperty(entry.getKey(), locatorStatistics.successes.get() + "," + locatorStatistics.failures.get() +
+                    "," + locatorStatistics.lastFailed);
+        }
+        OutputStream stream = null;
+        try {
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            stream = new FileOutputStream(file);
+            properties.store(stream, "Success rates of alternative element locators, format: successes,failures,lastFailed");
+        } catch (IOException e) {
+            Logger.error(LogLevels.LEVEL_3, "LocatorStatistics", "Can't write " + file + ": " + e.toString());
+        } finally {
+            closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Success rate with one success and one failure added, so locator without history gets 0.5.
+     * Locator which failed last gets rank below 0, below any success rate.
+     */
+    private static double getRank(String element, String locator) {
+        Statistics locatorStatistics = statistics.get(element + KEY_SEPARATOR + locator);
+        if (locatorStatistics == null) {
+            return 0.5;
+        }
+        long successes = locatorStatistics.successes.get();
+        double successRate = (successes + 1.0) / (successes + locatorStatistics.failures.get() + 2.0);
+        return locatorStatistics.lastFailed ? successRate - 1 : successRate;
+    }
+
+    private static Statistics getStatistics(String element, String locator) {
+        String key = element + KEY_SEPARATOR + locator;
+        Statistics locatorStatistics = statistics.get(key);
+        if (locatorStatistics == null) {
+            statistics.putIfAbsent(key, new Statistics(0, 0));
+            locatorStatistics = statistics.get(key);
+        }
+        return locatorStatistics;
+    }
+
+    private static void load() {
+        if (loaded) {
+            return;
+        }
+        synchronized (LocatorStatistics.class) {
+            if (loaded) {
+                return;
+            }
+            if (file != null && file.isFile()) {
+                Properties properties = new Properties();
+                InputStream stream = null;
+                try {
+                    stream = new FileInputStream(file);
+                    properties.load(stream);
+                    for (String key : properties.stringPropertyNames()) {
+                        String[] counts = properties.getProperty(key).split(",");
+                        Statistics locatorStatistics = new Statistics(Long.parseLong(counts[0].trim()), Long.parseLong(counts[1].trim()));
+                        locatorStatistics.lastFailed = counts.length > 2 && Boolean.parseBoolean(counts[2].trim());
+                        statistics.putIfAbsent(key, locatorStatistics);
+                    }
+                } catch (IOException e) {
+                    Logger.error(LogLevels.LEVEL_3, "LocatorStatistics", "Can't read " + file + ": " + e.toString());
+                } catch (RuntimeException e) {
+                    //Damaged file is ignored, statistics are collected again
+                    Logger.error(LogLevels.LEVEL_3, "LocatorStatistics", "Can't parse " + file + ": " + e.toString());
+                } finally {
+                    closeQuietly(stream);
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    private static class Statistics {
+        private final AtomicLong successes;
+        private final AtomicLong failures;
+        private volatile boolean lastFailed;
+
+        private Statistics(long successes, long failures) {
+            this.successes = new AtomicLong(successes);
+            this.failures = new AtomicLong(failures);
+        }
+    }
+}
@@ -16,15 +16,31 @@
 
 package com.sayem.pages;
 
+import com.google.common.base.Objects;
 import com.google.common.base.Strings;
+import com.google.common.io.InputSupplier;
 import com.sayem.configuration.Configuration;
+import com.sayem.enums.ReadyState;
 import com.sayem.logger.LogLevels;
 import com.sayem.logger.Logger;
+import com.sayem.monitoring.CacheStatistics;
+import com.sayem.monitoring.FrameworkMetrics;
+import com.sayem.resources.ResourceIndex;
+import com.sayem.tracing.FlightRecorderEvents;
 import org.openqa.selenium.By;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
 
+import static com.google.common.io.Closeables.closeQuietly;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasItems;
 
@@ -39,25 +55,69 @@ import static org.hamcrest.Matchers.hasItems;
  *         Date 28/08/2011
  */
 public class PageDefinition {
+
+    static final String LOCATOR_ALTERNATIVES_SEPARATOR = "||";
+
+    //Page definitions are loaded once per page class, pages created later reuse loaded definition
+    private static final ConcurrentMap<Class, Properties> pageDefinitionsCache = new ConcurrentHashMap<Class, Properties>();
+    private static final CacheStatistics cacheStatistics = new CacheStatistics(pageDefinitionsCache);
+
+    static {
+        FrameworkMetrics.registerMBean(cacheStatistics, "type=Cache,name=PageDefinition");
+    }
+    //URL templates are compiled once per page class and environment
+    private static final ConcurrentMap<Class, UrlTemplate> urlTemplatesCache = new ConcurrentHashMap<Class, UrlTemplate>();
+
     private Properties pageDefinition;
+    private Class pageClass;
+    private String pageClassName;
+    private volatile UrlTemplate urlTemplate;
 
 
     public PageDefinition(Class pageClass) {
+        this.pageClass = pageClass;
+        pageClassName = pageClass.getName();
+        Properties cachedPageDefinition = pageDefinitionsCache.get(pageClass);
+        if (cachedPageDefinition != null) {
+            cacheStatistics.recordHit();
+            pageDefinition = cachedPageDefinition;
+        } else {
+            cacheStatistics.recordMiss();
+            pageDefinition = loadPageDefinition(pageClass);
+            pageDefinitionsCache.putIfAbsent(pageClass, pageDefinition);
+        }
+    }
+
+    /**
+     * Loads page definition from PageName.properties file located in the same package as page class.
+     *
+     * @param pageClass class of a page which definition should be loaded
+     * @return Properties object with loaded page definition
+     * @throws InstantiationError if page definition can not be loaded or mandatory properties are missing
+     */
+    private static Properties loadPageDefinition(Class pageClass) throws InstantiationError {
         String pageName = pageClass.getSimpleName();
-        pageDefinition = new Properties();
+        Properties pageDefinition = new Properties();
+        InputSupplier<InputStream> pageDefinitionSource = ResourceIndex.getResource(pageClass, pageName + ".properties");
+        if (pageDefinitionSource == null) {
+            String message = "Can't load page definition for " + pageName + ".";
+            Logger.error(LogLevels.LEVEL_8, pageClass.getSimpleName(), message);
+            throw new InstantiationError(message);
+        }
         try {
-            InputStream pageDefinitionStream = pageClass.getResourceAsStream(pageName + ".properties");
-            pageDefinition.load(pageDefinitionStream);
+            InputStream pageDefinitionStream = pageDefinitionSource.getInput();
+            try {
+                pageDefinition.load(pageDefinitionStream);
+            } finally {
+                closeQuietly(pageDefinitionStream);
+            }
             checkMandatoryPropertiesPresence(pageDefinition);
+            return pageDefinition;
         } catch (IOException e) {
             String message = "Can't load page definition for " + pageName + ".\n" +
                     "Error details: " + e.toString();
             Logger.error(LogLevels.LEVEL_8, pageClass.getSimpleName(), message);
             throw new InstantiationError(message);
-        } catch (NullPointerException e) {
-            String message = "Can't load page definition for " + pageName + ".";
-            Logger.error(LogLevels.LEVEL_8, pageClass.getSimpleName(), message);
-            throw new InstantiationError(message);
         }
     }
 
@@ -70,6 +130,15 @@ public class PageDefinition {
         this.pageDefinition = pageDefinition;
     }
 
+    /**
+     * Retrieves statistics of page definitions cache
+     *
+     * @return CacheStatistics of page definitions cache
+     */
+    public static CacheStatistics getCacheStatistics() {
+        return cacheStatistics;
+    }
+
     /**
      * Checks that mandatory page definition properties are present in page definition file.
      * Usually those properties are expected page title and page URL.
@@ -77,7 +146,7 @@ public class PageDefinition {
      * @param pageDefinition Properties object which contains loaded page definition properties
      * @throws InstantiationError if mandatory properties are missing
      */
-    private void checkMandatoryPropertiesPresence(Properties pageDefinition) throws InstantiationError {
+    private static void checkMandatoryPropertiesPresence(Properties pageDefinition) throws InstantiationError {
         try {
             assertThat(pageDefinition.stringPropertyNames(), hasItems("URL", "Title"));
         } catch (AssertionError e) {
@@ -90,19 +159,105 @@ public class PageDefinition {
     }
 
     /**
-     * Retrieves page url based on page definition file and environment settings
+     * Retrieves page url based on page definition file and environment settings.
+     * URL of page with placeholders like /orders/{orderId} is returned with placeholders, see {@link #getUrl(Map)}.
      *
      * @return String page URL
      */
     public String getUrl() {
-        String environmentUrl = Configuration.getEnvironmentProperty("url");
-        if (Strings.isNullOrEmpty(environmentUrl)) {
-            return pageDefinition.getProperty("URL");
-        } else {
-            return environmentUrl + pageDefinition.getProperty("URL");
+        return getUrlTemplate().toString();
+    }
+
+    /**
+     * Retrieves page url based on page definition file and environment settings, with placeholders
+     * in form {parameterName} replaced by URL-encoded parameter values.
+     *
+     * @param parameterValues parameter names mapped to values
+     * @return String page URL
+     * @throws IllegalArgumentException if value of some parameter is missing
+     */
+    public String getUrl(Map<String, String> parameterValues) throws IllegalArgumentException {
+        return getUrlTemplate().expand(parameterValues);
+    }
+
+    /**
+     * Checks whether given URL is URL of this page, ignoring case. Placeholders of page URL match any parameter value.
+     *
+     * @param url URL to check
+     * @return true if URL matches page URL
+     */
+    public boolean matchesUrl(String url) {
+        return getUrlTemplate().matches(url);
+    }
+
+    /**
+     * Retrieves page URL template compiled for active environment
+     *
+     * @return compiled URL template
+     * @throws IllegalArgumentException if page URL can not be parsed
+     */
+    UrlTemplate getUrlTemplate() throws IllegalArgumentException {
+        String environment = Configuration.getEnvironmentName();
+        UrlTemplate template = urlTemplate;
+        if (template != null && Objects.equal(template.getEnvironment(), environment)) {
+            return template;
+        }
+        template = pageClass == null ? null : urlTemplatesCache.get(pageClass);
+        if (template == null || !Objects.equal(template.getEnvironment(), environment)) {
+            template = UrlTemplate.compile(environment, Strings.emptyToNull(Configuration.getEnvironmentProperty("url")),
+                    pageDefinition.getProperty("URL"));
+            if (pageClass != null) {
+                urlTemplatesCache.put(pageClass, template);
+            }
+        }
+        urlTemplate = template;
+        return template;
+    }
+
+    /**
+     * Retrieves when page is considered ready after navigation. Defined by ReadyState property in form
+     * LOAD, DOM_INTERACTIVE, NETWORK_IDLE or ELEMENT~elementName. LOAD is used if property is not defined.
+     *
+     * @return ReadyState enum value
+     * @throws IllegalArgumentException if property value is incorrect
+     */
+    public ReadyState getReadyState() throws IllegalArgumentException {
+        String readyState = pageDefinition.getProperty("ReadyState");
+        if (Strings.isNullOrEmpty(readyState)) {
+            return ReadyState.LOAD;
+        }
+        int separatorIndex = readyState.indexOf("~");
+        try {
+            return ReadyState.valueOf((separatorIndex < 0 ? readyState : readyState.substring(0, separatorIndex)).trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Ready state [" + readyState + "] is incorrect. " +
+                    "Allowed values are LOAD, DOM_INTERACTIVE, NETWORK_IDLE and ELEMENT~elementName.");
         }
     }
 
+    /**
+     * Retrieves name of element which presence means that page is ready, defined by ReadyState property in form ELEMENT~elementName
+     *
+     * @return element name or null if ready state is not defined by element
+     */
+    public String getReadyElement() {
+        String readyState = pageDefinition.getProperty("ReadyState");
+        if (Strings.isNullOrEmpty(readyState) || readyState.indexOf("~") < 0) {
+            return null;
+        }
+        return Strings.emptyToNull(readyState.substring(readyState.indexOf("~") + 1).trim());
+    }
+
+    /**
+     * Checks whether page definition contains locator of given element
+     *
+     * @param elementName name of the element in page definition file
+     * @return true if element is defined
+     */
+    public boolean hasElement(String elementName) {
+        return !Strings.isNullOrEmpty(pageDefinition.getProperty(elementName));
+    }
+
     /**
      * Retrieves element locator for given element name from page definition.
      *
@@ -111,14 +266,43 @@ public class PageDefinition {
      * @throws IllegalArgumentException if element locator can not be found or parsed.
      */
     public By getElementLocator(String elementName) throws IllegalArgumentException {
-        String elementLocator = pageDefinition.getProperty(elementName);
-        if (Strings.isNullOrEmpty(elementLocator)) {
-            String message = "Can't find element locator for element " + elementName + " in page definition. \n" +
-                    "Element definition should be in format elementName=locatorType~locatorValue.";
-            Logger.error(LogLevels.LEVEL_8, getClass().getSimpleName(), message);
-            throw new IllegalArgumentException(message);
+        Object event = FlightRecorderEvents.begin(FlightRecorderEvents.LOCATOR_RESOLUTION);
+        try {
+            return resolveElementLocator(elementName);
+        } finally {
+            FlightRecorderEvents.commit(event, pageClassName, null, elementName, null);
         }
+    }
 
+    /**
+     * Parses element locator for given element name from page definition into By object.
+     * Element with several alternative locators gets By object which tries them in order learned from their success rates.
+     *
+     * @param elementName name of the element in page definition file
+     * @return By object which represents element locator
+     * @throws IllegalArgumentException if element locator can not be found or parsed.
+     */
+    private By resolveElementLocator(String elementName) throws IllegalArgumentException {
+        List<String> alternatives = getLocatorAlternatives(elementName);
+        if (alternatives.size() == 1) {
+            return toBy(elementName, alternatives.get(0));
+        }
+        Map<String, By> locators = new LinkedHashMap<String, By>();
+        for (String alternative : alternatives) {
+            locators.put(alternative, toBy(elementName, alternative));
+        }
+        return new ByAlternatives(pageClassName + "." + elementName, locators);
+    }
+
+    /**
+     * Parses single element locator into By object.
+     *
+     * @param elementName    name of the element in page definition file
+     * @param elementLocator element locator in format locatorType~locatorValue
+     * @return By object which represents element locator
+     * @throws IllegalArgumentException if element locator can not be parsed.
+     */
+    private By toBy(String elementName, String elementLocator) throws IllegalArgumentException {
         String[] parsedElementLocator = parseElementLocator(elementLocator);
 
         String locatorType = parsedElementLocator[0];
@@ -153,6 +337,85 @@ public class PageDefinition {
 
     }
 
+    /**
+     * Retrieves alternative locators of given element from page definition. Alternatives are separated by ||,
+     * for example submit=id~submit || css~form button[type='submit']
+     *
+     * @param elementName name of the element in page definition file
+     * @return list of locators in format locatorType~locatorValue, in page definition order, XPath rewritten to CSS
+     * if it's configured so
+     * @throws IllegalArgumentException if element locator can not be found
+     */
+    private List<String> getLocatorAlternatives(String elementName) throws IllegalArgumentException {
+        String elementLocator = LocatorOptimizer.optimize(pageClassName, elementName, pageDefinition.getProperty(elementName));
+        List<String> alternatives = Strings.isNullOrEmpty(elementLocator) ? Collections.<String>emptyList() : splitAlternatives(elementLocator);
+        if (alternatives.isEmpty()) {
+            String message = "Can't find element locator for element " + elementName + " in page definition. \n" +
+                    "Element definition should be in format elementName=locatorType~locatorValue.";
+            Logger.error(LogLevels.LEVEL_8, getClass().getSimpleName(), message);
+            throw new IllegalArgumentException(message);
+        }
+        return alternatives;
+    }
+
+    /**
+     * Splits element locator definition into alternative locators
+     *
+     * @param elementLocator element locator definition
+     * @return list of non-empty locators
+     */
+    static List<String> splitAlternatives(String elementLocator) {
+        List<String> alternatives = new ArrayList<String>();
+        for (String alternative : elementLocator.split(Pattern.quote(LOCATOR_ALTERNATIVES_SEPARATOR))) {
+            if (!alternative.trim().isEmpty()) {
+                alternatives.add(alternative.trim());
+            }
+        }
+        return alternatives;
+    }
+
+    /**
+     * Retrieves alternative locators of given element from page definition as locator type and locator value,
+     * in order of their success rates. Used by code which looks elements up inside the browser or in page source
+     * instead of through WebDriver, such code tries alternatives in order and reports result
+     * through {@link #recordLocatorResults}.
+     *
+     * @param elementName name of the element in page definition file
+     * @return list of String arrays where first element is locator type and second is locator value
+     * @throws IllegalArgumentException if element locator can not be found or parsed.
+     */
+    List<String[]> getParsedElementLocators(String elementName) throws IllegalArgumentException {
+        List<String> alternatives = getLocatorAlternatives(elementName);
+        if (alternatives.size() > 1) {
+            alternatives = LocatorStatistics.order(pageClassName + "." + elementName, alternatives);
+        }
+        List<String[]> locators = new ArrayList<String[]>(alternatives.size());
+        for (String alternative : alternatives) {
+            locators.add(parseElementLocator(alternative));
+        }
+        return locators;
+    }
+
+    /**
+     * Records which alternative locator found element looked up by locators from {@link #getParsedElementLocators},
+     * so success rates are learned from these lookups as well as from lookups through WebDriver.
+     *
+     * @param elementName name of the element in page definition file
+     * @param locators    locators in order they were tried
+     * @param foundIndex  index of locator which found element or negative number if none did
+     */
+    void recordLocatorResults(String elementName, List<String[]> locators, int foundIndex) {
+        if (locators.size() < 2 || foundIndex < 0 || foundIndex >= locators.size()) {
+            return;
+        }
+        List<String> failedLocators = new ArrayList<String>(foundIndex);
+        for (String[] locator : locators.subList(0, foundIndex)) {
+            failedLocators.add(locator[0] + "~" + locator[1]);
+        }
+        String[] foundLocator = locators.get(foundIndex);
+        LocatorStatistics.recordLookup(pageClassName + "." + elementName, failedLocators, foundLocator[0] + "~" + foundLocator[1]);
+    }
+
     /**
      * Parse element locator string in format locatorType~locatorValue and return it as array of two strings.
      *
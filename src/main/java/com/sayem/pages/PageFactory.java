@@ -16,16 +16,31 @@
 
 package com.sayem.pages;
 
+import com.sayem.artifacts.StepHistory;
 import com.sayem.configuration.Configuration;
+import com.sayem.drivers.CachingHtmlUnitDriver;
+import com.sayem.drivers.DriverRecorder;
+import com.sayem.drivers.FastHtmlUnitDriver;
+import com.sayem.exceptions.NavigationException;
 import com.sayem.helpers.WindowHelper;
 import com.sayem.logger.LogLevels;
 import com.sayem.logger.Logger;
+import com.sayem.monitoring.FrameworkMetrics;
+import com.sayem.network.RequestRules;
+import com.sayem.network.RequestRulesProxy;
+import com.sayem.session.SessionStateCache;
+import com.sayem.session.SetupFlow;
+import com.sayem.tracing.FlightRecorderEvents;
+import com.sayem.tracing.TraceRecorder;
+import org.openqa.selenium.Proxy;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.firefox.FirefoxDriver;
-import org.openqa.selenium.htmlunit.HtmlUnitDriver;
 import org.openqa.selenium.ie.InternetExplorerDriver;
+import org.openqa.selenium.remote.CapabilityType;
+import org.openqa.selenium.remote.DesiredCapabilities;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.concurrent.TimeUnit;
 
@@ -41,23 +56,26 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public abstract class PageFactory {
 
-    //TODO: Implement Page Factory using dynamic proxy in similar way as Selenium guys did but made it to use properties file
-    //TODO: Implement methods to detect and return page which is currently open
-
     private static WebDriver driver;
 
 
     /**
      * Instantiates page object. Page object should implement {@link Page} interface and should have constructor which accepts WebDriver instance.
+     * If interface which extends {@link Page} is given, page object is generated from its page definition, see {@link PageProxy}.
      * Instantiated page will not open browser during or after instantiation.
      *
-     * @param pageClass class of a page which should be instantiated
+     * @param pageClass class or interface of a page which should be instantiated
      * @return object of given page class
      * @throws InstantiationError if page object can not be instantiated
      */
     public static <T extends Page> T getPage(Class<T> pageClass) throws InstantiationError {
+        Object event = FlightRecorderEvents.begin(FlightRecorderEvents.PAGE_INSTANTIATION);
         try {
-            return pageClass.getConstructor(WebDriver.class).newInstance(getDriver());
+            T page = pageClass.isInterface() ? PageProxy.create(pageClass, getDriver())
+                    : pageClass.getConstructor(WebDriver.class).newInstance(getDriver());
+            FrameworkMetrics.PAGES_CREATED.increment();
+            FlightRecorderEvents.commit(event, pageClass.getName(), null, null, null);
+            return page;
 
         } catch (InstantiationException e) {
             String message = "Can't instantiate page " + pageClass.getName() + ".\n" +
@@ -86,6 +104,32 @@ public abstract class PageFactory {
         }
     }
 
+    /**
+     * Detects which page is open in the browser and instantiates it. Page is looked up in {@link PageRegistry}
+     * by current URL and title, so browser is asked only for them no matter how many pages are defined.
+     *
+     * @return page object of currently open page
+     * @throws NavigationException if opened page doesn't match any page definition
+     * @throws InstantiationError  if page object can not be instantiated
+     */
+    public static BasePage detectCurrentPage() throws NavigationException, InstantiationError {
+        long startTime = System.nanoTime();
+        WebDriver driver = getDriver();
+        String url = driver.getCurrentUrl();
+        String title = driver.getTitle();
+        try {
+            Class<? extends BasePage> pageClass = PageRegistry.findPage(url, title);
+            if (pageClass == null) {
+                String message = "Can't detect opened page, no page definition matches " + url + " [" + title + "]";
+                Logger.error(LogLevels.LEVEL_6, "PageFactory", message);
+                throw new NavigationException(message);
+            }
+            return getPage(pageClass);
+        } finally {
+            TraceRecorder.record("PageFactory.detectCurrentPage", "navigation", startTime, url);
+        }
+    }
+
     /**
      * Checks that WebDriver instance is ready for use
      *
@@ -108,47 +152,99 @@ public abstract class PageFactory {
     /**
      * Implements singleton-like logic for WebDriver. If no active WebDriver object exists this method will create new one.
      * If active WebDriver object exists method will return it. Type of driver depends on framework configuration. If configuration is not set then HtmlUnit will be used.
+     * Commands of created driver are recorded if it's configured so, see {@link DriverRecorder}.
      *
      * @return active WebDriver object which is ready for use
      */
     public static WebDriver getDriver() {
+        long startTime = System.nanoTime();
         try {
             checkDriver(driver);
         } catch (Exception e) {
+            Object event = FlightRecorderEvents.begin(FlightRecorderEvents.DRIVER_CREATION);
             switch (Configuration.getBrowserType()) {
                 case UNKNOWN:
-                    driver = new HtmlUnitDriver();
+                    driver = new CachingHtmlUnitDriver();
                     break;
                 case IE:
-                    driver = new InternetExplorerDriver();
+                    driver = new InternetExplorerDriver(withRequestRules(DesiredCapabilities.internetExplorer()));
                     break;
                 case FIREFOX:
-                    driver = new FirefoxDriver();
+                    driver = new FirefoxDriver(withRequestRules(DesiredCapabilities.firefox()));
                     break;
                 case HTML_UNIT:
-                    driver = new HtmlUnitDriver();
-                    ((HtmlUnitDriver) driver).setJavascriptEnabled(true);
+                    driver = new CachingHtmlUnitDriver(true);
+                    break;
+                case HTML_UNIT_FAST:
+                    driver = new FastHtmlUnitDriver();
                     break;
                 case CHROME:
                     System.setProperty("webdriver.chrome.driver", Configuration.getPathToChromeDriver());
-                    driver = new ChromeDriver();
+                    driver = new ChromeDriver(withRequestRules(DesiredCapabilities.chrome()));
+                    break;
+                case REPLAY:
+                    driver = DriverRecorder.replay();
                     break;
                 default:
-                    driver = new HtmlUnitDriver();
+                    driver = new CachingHtmlUnitDriver();
                     break;
             }
+            driver = DriverRecorder.record(driver);
+            FrameworkMetrics.DRIVERS_CREATED.increment();
+            FlightRecorderEvents.commit(event, driver.getClass().getName(), null, null, null);
+            StepHistory.setDriver(driver);
 
             //Set how long webDriver should wait for elements to be found
-            driver.manage().timeouts().implicitlyWait(Configuration.getDefaultElementTimeout(), TimeUnit.SECONDS);
+            ElementWait.setImplicitWait(driver, TimeUnit.SECONDS.toMillis(Configuration.getDefaultElementTimeout()));
 
             WindowHelper.focus(driver);
             WindowHelper.maximize(driver);
         }
 
+        TraceRecorder.record("PageFactory.getDriver", "driver", startTime, null);
+        return driver;
+    }
 
+    /**
+     * Retrieves active WebDriver object brought to the state left by setup flow, for example with logged in user.
+     * Setup flow runs only once per environment and user, other drivers get captured cookies and local storage
+     * until they expire. See {@link SessionStateCache}.
+     *
+     * @param flowName name of setup flow, for example "login"
+     * @param user     user the flow is run for
+     * @param flow     setup flow
+     * @return active WebDriver object which is ready for use
+     */
+    public static WebDriver getDriver(String flowName, String user, SetupFlow flow) {
+        WebDriver driver = getDriver();
+        SessionStateCache.apply(driver, flowName, user, flow);
         return driver;
     }
 
+    /**
+     * Adds proxy settings to browser capabilities if active environment defines request rules.
+     * Browser is pointed to in-process proxy which blocks and rewrites requests.
+     *
+     * @param capabilities capabilities of browser to be started
+     * @return the same capabilities object
+     * @throws InstantiationError if proxy can not be started
+     */
+    private static DesiredCapabilities withRequestRules(DesiredCapabilities capabilities) throws InstantiationError {
+        RequestRules requestRules = Configuration.getRequestRules();
+        if (requestRules.isEmpty()) {
+            return capabilities;
+        }
+        try {
+            String proxyAddress = RequestRulesProxy.start(requestRules).getAddress();
+            capabilities.setCapability(CapabilityType.PROXY, new Proxy().setHttpProxy(proxyAddress).setSslProxy(proxyAddress));
+            return capabilities;
+        } catch (IOException e) {
+            String message = "Can't start proxy for request rules.\n" +
+                    "Error details: " + e;
+            Logger.error(LogLevels.LEVEL_1, "PageFactory", message);
+            throw new InstantiationError(message);
+        }
+    }
 
     /**
      * Tear down active WebDriver object
@@ -156,8 +252,13 @@ public abstract class PageFactory {
     public static void tearDown() {
         try {
             checkDriver(driver);
+            Object event = FlightRecorderEvents.begin(FlightRecorderEvents.DRIVER_TEARDOWN);
+            String driverClassName = driver.getClass().getName();
             driver.quit();
             driver = null;
+            FrameworkMetrics.DRIVERS_TORN_DOWN.increment();
+            StepHistory.setDriver(null);
+            FlightRecorderEvents.commit(event, driverClassName, null, null, null);
 
         } catch (Exception e) {
             //If driver is already killed don't do anything
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of page URLs and titles used to find which page is open in the browser.
+ * URLs are kept in prefix trie, so lookup takes time proportional to URL length no matter how many pages are indexed.
+ * URL which ends with '*' matches any URL starting with the rest of it, other URLs should match exactly.
+ * URLs and titles are compared ignoring case, the same way as {@link BasePage#verify()} does.
+ * <p/>
+ * Index is filled once and then only read, so it can be shared by threads after it's built.
+ */
+class PageIndex {
+
+    private static final String WILDCARD = "*";
+
+    private final Node root = new Node();
+    //Titles of indexed pages in lower case
+    private final Map<String, String> pageTitles = new HashMap<String, String>();
+    private int size;
+
+    /**
+     * Adds page to index
+     *
+     * @param url       page URL or URL prefix ending with '*', can be null
+     * @param title     page title, can be null
+     * @param pageClass name of page class
+     */
+    void add(String url, String title, String pageClass) {
+        if (url != null && title != null) {
+            String key = url.trim().toLowerCase();
+            boolean prefix = key.endsWith(WILDCARD);
+            if (prefix) {
+                key = key.substring(0, key.length() - WILDCARD.length());
+            }
+            Node node = root;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.getOrAddChild(key.charAt(i));
+            }
+            if (prefix) {
+                node.prefixPages = append(node.prefixPages, pageClass);
+            } else {
+                node.exactPages = append(node.exactPages, pageClass);
+            }
+            pageTitles.put(pageClass, title.trim().toLowerCase());
+        }
+        size++;
+    }
+
+    /**
+     * Finds pages which match both given URL and title, like {@link BasePage#verify()} requires. Pages with exactly
+     * matching URL are preferred over pages with matching URL prefix, longer prefix is preferred over shorter one.
+     * Pages without URL or title are never found.
+     *
+     * @param url   URL of page opened in the browser
+     * @param title title of page opened in the browser
+     * @return names of page classes, the best match first, empty list if no page matches
+     */
+    List<String> find(String url, String title) {
+        if (title == null) {
+            return new ArrayList<String>(0);
+        }
+        String titleKey = title.trim().toLowerCase();
+        List<String> matching = new ArrayList<String>(1);
+        for (List<String> pages : findByUrl(url == null ? "" : url.trim().toLowerCase())) {
+            for (String page : pages) {
+                if (titleKey.equals(pageTitles.get(page)) && !matching.contains(page)) {
+                    matching.add(page);
+                }
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * @return number of indexed pages
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Collects pages which match URL
+     *
+     * @param url URL in lower case
+     * @return lists of pages with exactly matching URL and with matching prefixes, the longest match first
+     */
+    private List<List<String>> findByUrl(String url) {
+        List<List<String>> pages = new ArrayList<List<String>>();
+        if (root.prefixPages != null) {
+            pages.add(root.prefixPages);
+        }
+        Node node = root;
+        for (int i = 0; i < url.length() && node != null; i++) {
+            node = node.getChild(url.charAt(i));
+            if (node != null && node.prefixPages != null) {
+                pages.add(node.prefixPages);
+            }
+        }
+        if (node != null && node.exactPages != null) {
+            pages.add(node.exactPages);
+        }
+        Collections.reverse(pages);
+        return pages;
+    }
+
+    private static List<String> append(List<String> pages, String pageClass) {
+        if (pages == null) {
+            pages = new ArrayList<String>(1);
+        }
+        if (!pages.contains(pageClass)) {
+            pages.add(pageClass);
+        }
+        return pages;
+    }
+
+    /**
+     * Trie node. Most nodes have one child, so children are kept in small parallel arrays instead of maps
+     */
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private List<String> exactPages;
+        private List<String> prefixPages;
+
+        private Node getChild(char key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node getOrAddChild(char key) {
+            Node child = getChild(key);
+            if (child == null) {
+                child = new Node();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = key;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+}
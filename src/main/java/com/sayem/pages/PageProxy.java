@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import com.sayem.exceptions.NavigationException;
+import com.sayem.logger.LogLevels;
+import com.sayem.logger.Logger;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.Locatable;
+import org.openqa.selenium.internal.WrapsElement;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Generates page objects for interfaces which extend {@link Page}. Interface declares element accessors,
+ * their implementation is generated from element locators in page definition file of the interface:
+ * <pre>
+ * public interface LoginPage extends Page {
+ *     WebElement getUserName();         //userName=id~user
+ *     List&lt;WebElement&gt; getErrors();     //errors=css~.error
+ *     By getSubmit();                   //submit=name~submit
+ * }
+ * </pre>
+ * Element name is accessor name without "get" prefix, starting with lower or upper case letter, or accessor name itself.
+ * Accessors which return WebElement return proxy which finds element on first use. Found elements are kept
+ * until page is navigated again. Element proxies answer equals, hashCode and toString without finding the element.
+ * Methods of {@link Page} and other public methods of {@link BasePage} declared by the interface, like navigate with
+ * URL parameters, are implemented by {@link BasePage}, which names the page after its interface.
+ * <p/>
+ * Proxy class and mapping of accessors to elements are generated once per page interface and reused by all its pages.
+ */
+class PageProxy {
+
+    private static final ConcurrentMap<Class, PageProxyType> proxyTypes = new ConcurrentHashMap<Class, PageProxyType>();
+    private static final Constructor<?> elementProxyConstructor = getProxyConstructor(WebElement.class, WrapsElement.class, Locatable.class);
+
+    private enum AccessorType {ELEMENT, ELEMENTS, LOCATOR}
+
+    /**
+     * Creates page object for page interface
+     *
+     * @param pageInterface interface which extends Page
+     * @param driver        WebDriver object
+     * @return page object which implements given interface
+     * @throws InstantiationError if interface declares methods which can't be generated
+     */
+    static <T extends Page> T create(Class<T> pageInterface, WebDriver driver) throws InstantiationError {
+        PageProxyType proxyType = proxyTypes.get(pageInterface);
+        if (proxyType == null) {
+            proxyType = new PageProxyType(pageInterface);
+            PageProxyType existingType = proxyTypes.putIfAbsent(pageInterface, proxyType);
+            if (existingType != null) {
+                proxyType = existingType;
+            }
+        }
+        ProxiedPage page = new ProxiedPage(driver, pageInterface);
+        return pageInterface.cast(newInstance(proxyType.constructor, new PageHandler(proxyType, page)));
+    }
+
+    private static Constructor<?> getProxyConstructor(Class<?>... interfaces) {
+        try {
+            return Proxy.getProxyClass(interfaces[0].getClassLoader(), interfaces).getConstructor(InvocationHandler.class);
+        } catch (NoSuchMethodException e) {
+            throw new InstantiationError("Can't generate proxy class for " + interfaces[0].getName() + ". " + e.toString());
+        }
+    }
+
+    private static Object newInstance(Constructor<?> constructor, InvocationHandler handler) {
+        try {
+            return constructor.newInstance(handler);
+        } catch (Exception e) {
+            throw new InstantiationError("Can't instantiate proxy " + constructor.getDeclaringClass().getName() + ". " + e.toString());
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    /**
+     * Proxy class and accessors of one page interface
+     */
+    private static class PageProxyType {
+        private final Constructor<?> constructor;
+        private final Map<Method, Accessor> accessors = new HashMap<Method, Accessor>();
+        //Methods implemented by BasePage, like navigate and verify
+        private final Map<Method, Method> pageMethods = new HashMap<Method, Method>();
+
+        private PageProxyType(Class<?> pageInterface) throws InstantiationError {
+            constructor = getProxyConstructor(pageInterface);
+            PageDefinition pageDefinition = new PageDefinition(pageInterface);
+            for (Method method : pageInterface.getMethods()) {
+                try {
+                    pageMethods.put(method, BasePage.class.getMethod(method.getName(), method.getParameterTypes()));
+                } catch (NoSuchMethodException e) {
+                    accessors.put(method, new Accessor(getElementName(method, pageDefinition), getAccessorType(method)));
+                }
+            }
+        }
+
+        private static String getElementName(Method method, PageDefinition pageDefinition) throws InstantiationError {
+            String name = method.getName();
+            if (name.startsWith("get") && name.length() > 3) {
+                String elementName = name.substring(3);
+                String lowerCaseElementName = Character.toLowerCase(elementName.charAt(0)) + elementName.substring(1);
+                if (pageDefinition.hasElement(lowerCaseElementName)) {
+                    return lowerCaseElementName;
+                }
+                if (pageDefinition.hasElement(elementName)) {
+                    return elementName;
+                }
+            }
+            if (pageDefinition.hasElement(name)) {
+                return name;
+            }
+            throw accessorError(method, "element " + name + " is not defined in page definition");
+        }
+
+        private static AccessorType getAccessorType(Method method) throws InstantiationError {
+            if (method.getParameterTypes().length > 0) {
+                throw accessorError(method, "element accessors can't have parameters");
+            }
+            Class<?> returnType = method.getReturnType();
+            if (returnType == WebElement.class) {
+                return AccessorType.ELEMENT;
+            }
+            if (returnType == By.class) {
+                return AccessorType.LOCATOR;
+            }
+            Type genericReturnType = method.getGenericReturnType();
+            if (returnType == List.class && genericReturnType instanceof ParameterizedType
+                    && ((ParameterizedType) genericReturnType).getActualTypeArguments()[0] == WebElement.class) {
+                return AccessorType.ELEMENTS;
+            }
+            throw accessorError(method, "element accessors should return WebElement, List<WebElement> or By");
+        }
+
+        private static InstantiationError accessorError(Method method, String reason) {
+            String message = "Can't generate " + method.getDeclaringClass().getName() + "." + method.getName() + ", " + reason + ".";
+            Logger.error(LogLevels.LEVEL_1, "PageFactory", message);
+            return new InstantiationError(message);
+        }
+    }
+
+    private static class Accessor {
+        private final String elementName;
+        private final AccessorType type;
+
+        private Accessor(String elementName, AccessorType type) {
+            this.elementName = elementName;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Page which backs generated page object. Keeps found elements until it's navigated again
+     */
+    private static class ProxiedPage extends BasePage {
+        private final Map<String, WebElement> elements = new HashMap<String, WebElement>();
+        private final Map<String, List<WebElement>> elementLists = new HashMap<String, List<WebElement>>();
+
+        private ProxiedPage(WebDriver driver, Class pageInterface) {
+            super(driver, pageInterface);
+        }
+
+        @Override
+        public void navigate(String url) throws NavigationException {
+            elements.clear();
+            elementLists.clear();
+            super.navigate(url);
+        }
+
+        private WebElement getElement(String elementName) {
+            WebElement element = elements.get(elementName);
+            if (element == null) {
+                element = findElement(elementName);
+                elements.put(elementName, element);
+            }
+            return element;
+        }
+
+        private List<WebElement> getElements(String elementName) {
+            List<WebElement> elementList = elementLists.get(elementName);
+            if (elementList == null) {
+                elementList = findElements(elementName);
+                elementLists.put(elementName, elementList);
+            }
+            return elementList;
+        }
+    }
+
+    private static class PageHandler implements InvocationHandler {
+        private final PageProxyType proxyType;
+        private final ProxiedPage page;
+
+        private PageHandler(PageProxyType proxyType, ProxiedPage page) {
+            this.proxyType = proxyType;
+            this.page = page;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Accessor accessor = proxyType.accessors.get(method);
+            if (accessor == null) {
+                Method pageMethod = proxyType.pageMethods.get(method);
+                if (pageMethod == null) {
+                    return invokeObjectMethod(proxy, method, args);
+                }
+                return PageProxy.invoke(pageMethod, page, args);
+            }
+            switch (accessor.type) {
+                case ELEMENT:
+                    return newInstance(elementProxyConstructor, new ElementHandler(page, accessor.elementName));
+                case ELEMENTS:
+                    return page.getElements(accessor.elementName);
+                default:
+                    return page.getElementLocator(accessor.elementName);
+            }
+        }
+
+        private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("equals")) {
+                return proxy == args[0];
+            }
+            if (method.getName().equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            return proxy.getClass().getInterfaces()[0].getName() + " page";
+        }
+    }
+
+    /**
+     * Finds element on first call to it
+     */
+    private static class ElementHandler implements InvocationHandler {
+        private final ProxiedPage page;
+        private final String elementName;
+
+        private ElementHandler(ProxiedPage page, String elementName) {
+            this.page = page;
+            this.elementName = elementName;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            //Object methods shouldn't find the element, proxies are kept in collections and logged
+            if (method.getDeclaringClass() == Object.class) {
+                if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                return elementName + " element of " + page.getPageName() + " page";
+            }
+            WebElement element = page.getElement(elementName);
+            if (method.getDeclaringClass() == WrapsElement.class) {
+                return element;
+            }
+            return PageProxy.invoke(method, element, args);
+        }
+    }
+}
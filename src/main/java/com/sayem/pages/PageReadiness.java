@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import com.sayem.enums.ReadyState;
+import com.sayem.monitoring.FrameworkMetrics;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Opens pages and returns as soon as they are ready for use according to {@link ReadyState} from page definition,
+ * instead of waiting for full page load as WebDriver.get does. Navigation is started by script, then browser is asked
+ * for document state, less often the longer it takes, until new document arrives. Script running in new document
+ * waits until it's parsed, then, depending on ready state, given element appears or page makes no requests for a while.
+ * <p/>
+ * Responses which don't replace the page, like downloads and 204 No Content, leave the page in the browser.
+ * If the page left is still shown after a few seconds, URL is opened with WebDriver.get, which returns when browser
+ * stops loading. Browsers which can't navigate by script open URL with WebDriver.get as well.
+ * <p/>
+ * When next page is opened, load time of the page left is compared with time it took to get ready,
+ * the difference is recorded as time saved by navigation.
+ */
+public class PageReadiness {
+
+    public static final int DEFAULT_TIMEOUT = 30;
+
+    //How long page should make no requests to be considered idle
+    private static final long NETWORK_QUIET_PERIOD = 500;
+    private static final long POLLING_INTERVAL = 50;
+    private static final long MAX_POLLING_INTERVAL = 400;
+    //How long page left can be shown before navigation is considered to not replace it
+    private static final long NEW_DOCUMENT_TIMEOUT = 5000;
+
+    private static final String NAVIGATE_SCRIPT =
+            "var timing = window.performance && window.performance.timing, loadTime = -1;" +
+            "if (timing && timing.navigationStart > 0) {" +
+            "  loadTime = (timing.loadEventEnd > 0 ? timing.loadEventEnd : new Date().getTime()) - timing.navigationStart;" +
+            "}" +
+            "var url = arguments[0], sameDocument = window.location.href.split('#')[0] == url.split('#')[0];" +
+            "window.pageReadinessMarker = true;" +
+            "window.location.href = url;" +
+            "if (sameDocument && url.indexOf('#') >= 0) window.location.reload();" +
+            "return loadTime;";
+
+    private static final String LOAD_TIME_SCRIPT =
+            "var timing = window.performance && window.performance.timing;" +
+            "if (!timing || timing.navigationStart <= 0) return -1;" +
+            "return (timing.loadEventEnd > 0 ? timing.loadEventEnd : new Date().getTime()) - timing.navigationStart;";
+
+    //Returns "left" while page left is shown, otherwise ready state of new document
+    private static final String DOCUMENT_STATE_SCRIPT =
+            "return window.pageReadinessMarker !== undefined ? 'left' : document.readyState;";
+
+    private static final String DOM_INTERACTIVE_SCRIPT =
+            "var callback = arguments[arguments.length - 1];" +
+            "(function check() {" +
+            "  if (document.readyState != 'loading') callback(true);" +
+            "  else setTimeout(check, 10);" +
+            "})();";
+
+    private static final String NETWORK_IDLE_SCRIPT =
+            "var quietPeriod = arguments[0], timeout = arguments[1], callback = arguments[arguments.length - 1];" +
+            "function now() { return new Date().getTime(); }" +
+            "var tracker = window.pageReadinessTracker;" +
+            "if (!tracker) {" +
+            "  tracker = window.pageReadinessTracker = {pending: 0, lastActivity: now()};" +
+            "  var send = XMLHttpRequest.prototype.send;" +
+            "  XMLHttpRequest.prototype.send = function() {" +
+            "    var request = this, finished = false;" +
+            "    tracker.pending++; tracker.lastActivity = now();" +
+            "    request.addEventListener('readystatechange', function() {" +
+            "      if (request.readyState == 4 && !finished) { finished = true; tracker.pending--; tracker.lastActivity = now(); }" +
+            "    });" +
+            "    return send.apply(this, arguments);" +
+            "  };" +
+            "  if (window.fetch) {" +
+            "    var fetch = window.fetch;" +
+            "    window.fetch = function() {" +
+            "      function finish() { tracker.pending--; tracker.lastActivity = now(); }" +
+            "      tracker.pending++; tracker.lastActivity = now();" +
+            "      return fetch.apply(this, arguments).then(function(response) { finish(); return response; }," +
+            "          function(error) { finish(); throw error; });" +
+            "    };" +
+            "  }" +
+            "}" +
+            "function resources() {" +
+            "  return window.performance && window.performance.getEntriesByType ? window.performance.getEntriesByType('resource').length : 0;" +
+            "}" +
+            "var started = now(), resourceCount = resources();" +
+            "(function check() {" +
+            "  var time = now(), count = resources();" +
+            "  if (count != resourceCount) { resourceCount = count; tracker.lastActivity = time; }" +
+            "  if (tracker.pending <= 0 && document.readyState != 'loading' && time - tracker.lastActivity >= quietPeriod) callback(true);" +
+            "  else if (time - started >= timeout) callback(false);" +
+            "  else setTimeout(check, 50);" +
+            "})();";
+
+    private static volatile long timeout = TimeUnit.SECONDS.toMillis(DEFAULT_TIMEOUT);
+    //Time it took for last page opened in each browser to get ready, compared with its load time when next page is opened
+    private static final Map<WebDriver, Long> readyTimes = Collections.synchronizedMap(new WeakHashMap<WebDriver, Long>());
+
+    /**
+     * Configures how long to wait for page to get ready
+     *
+     * @param timeoutSeconds time in seconds
+     * @throws IllegalArgumentException if time is not positive
+     */
+    public static void configure(int timeoutSeconds) {
+        checkArgument(timeoutSeconds > 0, "Page ready timeout should be positive");
+        timeout = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+    }
+
+    /**
+     * Opens URL and waits until page is ready. Pages with LOAD ready state and browsers without JavaScript are opened with WebDriver.get
+     *
+     * @param driver     WebDriver object
+     * @param url        String URL to open
+     * @param definition definition of the page being opened
+     * @param ownerName  name of page class, used for step history
+     * @throws TimeoutException if page didn't get ready in time
+     */
+    static void navigate(WebDriver driver, String url, PageDefinition definition, String ownerName) throws TimeoutException {
+        ReadyState readyState = definition.getReadyState();
+        if (readyState == ReadyState.LOAD || !(driver instanceof JavascriptExecutor)) {
+            if (readyTimes.containsKey(driver)) {
+                recordTimeSaved(driver, executeScript(driver, LOAD_TIME_SCRIPT));
+            }
+            driver.get(url);
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        JavascriptExecutor executor = (JavascriptExecutor) driver;
+        try {
+            recordTimeSaved(driver, executor.executeScript(NAVIGATE_SCRIPT, url));
+        } catch (UnsupportedOperationException e) {
+            //HtmlUnit with JavaScript disabled
+            driver.get(url);
+            return;
+        } catch (WebDriverException e) {
+            //Browser refused the script, for example page left has no window to run it in
+            driver.get(url);
+            return;
+        }
+
+        if (!waitForNewDocument(driver, startTime, url)) {
+            //Download or 204 No Content, WebDriver.get returns when browser stops loading
+            driver.get(url);
+            return;
+        }
+
+        if (readyState == ReadyState.ELEMENT) {
+            String elementName = definition.getReadyElement();
+            if (elementName == null) {
+                throw new IllegalArgumentException("Ready state of " + ownerName + " should name element in form ELEMENT~elementName");
+            }
+            long remainingTime = timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            new ElementWait(driver, definition, ownerName).waitFor(elementName, true,
+                    Math.max(TimeUnit.MILLISECONDS.toSeconds(remainingTime), 1));
+
+        } else if (readyState == ReadyState.NETWORK_IDLE) {
+            long remainingTime = Math.max(timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), 0);
+            ElementWait.setScriptTimeout(driver, remainingTime + NETWORK_QUIET_PERIOD + 2000);
+            if (!Boolean.TRUE.equals(executor.executeAsyncScript(NETWORK_IDLE_SCRIPT, NETWORK_QUIET_PERIOD, remainingTime))) {
+                throw new TimeoutException("Page " + url + " didn't stop making requests in " + TimeUnit.MILLISECONDS.toSeconds(timeout) + " seconds");
+            }
+        }
+
+        readyTimes.put(driver, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    }
+
+    /**
+     * Waits until page left is replaced by new document and new document is parsed
+     *
+     * @param driver    WebDriver object
+     * @param startTime time navigation started, as returned by System.nanoTime
+     * @param url       String URL being opened
+     * @return false if page left is still shown, so navigation doesn't replace it
+     * @throws TimeoutException if new document didn't get parsed in time
+     */
+    private static boolean waitForNewDocument(WebDriver driver, long startTime, String url) throws TimeoutException {
+        long pollingInterval = POLLING_INTERVAL;
+        while (true) {
+            Object state = executeScript(driver, DOCUMENT_STATE_SCRIPT);
+            if ("left".equals(state)) {
+                if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) > Math.min(NEW_DOCUMENT_TIMEOUT, timeout)) {
+                    return false;
+                }
+            } else if (state != null && (!state.equals("loading") || waitForDomInteractive(driver, startTime))) {
+                return true;
+            }
+            checkTimeout(startTime, url);
+            sleep(pollingInterval);
+            pollingInterval = Math.min(pollingInterval * 2, MAX_POLLING_INTERVAL);
+        }
+    }
+
+    /**
+     * Waits inside the browser until new document is parsed, so it's not asked for document state again and again
+     *
+     * @param driver    WebDriver object
+     * @param startTime time navigation started, as returned by System.nanoTime
+     * @return false if document was replaced while waiting
+     */
+    private static boolean waitForDomInteractive(WebDriver driver, long startTime) {
+        long remainingTime = Math.max(timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), 0);
+        try {
+            ElementWait.setScriptTimeout(driver, remainingTime);
+            return Boolean.TRUE.equals(((JavascriptExecutor) driver).executeAsyncScript(DOM_INTERACTIVE_SCRIPT));
+        } catch (WebDriverException e) {
+            //Document was replaced by redirect or script timed out, state is checked again
+            return false;
+        }
+    }
+
+    /**
+     * Records difference between load time of the page which is left and time it took to get ready
+     *
+     * @param driver   WebDriver object
+     * @param loadTime load time of the page in milliseconds reported by browser, or until now if it's still loading
+     */
+    private static void recordTimeSaved(WebDriver driver, Object loadTime) {
+        Long readyTime = readyTimes.remove(driver);
+        if (readyTime != null && loadTime instanceof Number && ((Number) loadTime).longValue() > readyTime) {
+            FrameworkMetrics.NAVIGATION_TIME_SAVED_MILLIS.add(((Number) loadTime).longValue() - readyTime);
+        }
+    }
+
+    private static Object executeScript(WebDriver driver, String script) {
+        try {
+            return ((JavascriptExecutor) driver).executeScript(script);
+        } catch (WebDriverException e) {
+            //Browser can refuse scripts while document is being replaced
+            return null;
+        }
+    }
+
+    private static void checkTimeout(long startTime, String url) throws TimeoutException {
+        if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) > timeout) {
+            throw new TimeoutException("Page " + url + " didn't get ready in " + TimeUnit.MILLISECONDS.toSeconds(timeout) + " seconds");
+        }
+    }
+
+    private static void sleep(long interval) {
+        try {
+            Thread.sleep(interval);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("Interrupted while waiting for page to get ready");
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Strings;
+import com.google.common.io.InputSupplier;
+import com.sayem.configuration.Configuration;
+import com.sayem.logger.LogLevels;
+import com.sayem.logger.Logger;
+import com.sayem.resources.ResourceIndex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import static com.google.common.io.Closeables.closeQuietly;
+
+/**
+ * Registry of page classes used to detect which page is open in the browser.
+ * Pages are found by their page definition files in class path: every PageName.properties file with URL and Title
+ * properties which has PageName class next to it is registered. Pages defined outside of indexed class path
+ * can be registered explicitly.
+ * <p/>
+ * Index is built on first lookup and rebuilt when active environment changes, because page URLs depend on it.
+ * Page classes are loaded only when they match, so registry of thousands of pages is cheap to build.
+ */
+public abstract class PageRegistry {
+
+    private static final String PAGE_DEFINITION_EXTENSION = ".properties";
+
+    private static final Set<Class<? extends BasePage>> registeredPages = new CopyOnWriteArraySet<Class<? extends BasePage>>();
+    private static volatile IndexedEnvironment indexedEnvironment;
+
+    /**
+     * Registers page which page definition is not found in class path scan
+     *
+     * @param pageClass class of a page
+     */
+    public static void register(Class<? extends BasePage> pageClass) {
+        if (registeredPages.add(pageClass)) {
+            indexedEnvironment = null;
+        }
+    }
+
+    /**
+     * Finds class of page with given URL and title. Page is found only if its title and full URL template match,
+     * so found page passes {@link BasePage#verify()} unless it overrides verification.
+     *
+     * @param url   URL of page opened in the browser
+     * @param title title of page opened in the browser
+     * @return page class or null if no registered page matches
+     */
+    public static Class<? extends BasePage> findPage(String url, String title) {
+        List<String> pageClassNames = getIndex().find(url, title);
+        for (String pageClassName : pageClassNames) {
+            Class<? extends BasePage> pageClass = loadPageClass(pageClassName);
+            if (pageClass != null && matchesUrl(pageClass, url)) {
+                if (pageClassNames.size() > 1) {
+                    Logger.info(LogLevels.LEVEL_6, "PageRegistry", pageClassNames.size() + " pages match " + url +
+                            " [" + title + "], " + pageClass.getName() + " is selected");
+                }
+                return pageClass;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves number of pages in the registry, builds registry if it's not built yet
+     *
+     * @return number of registered pages
+     */
+    public static int size() {
+        return getIndex().size();
+    }
+
+    private static PageIndex getIndex() {
+        String environment = Configuration.getEnvironmentName();
+        IndexedEnvironment indexed = indexedEnvironment;
+        if (indexed == null || !Objects.equal(indexed.environment, environment)) {
+            synchronized (PageRegistry.class) {
+                indexed = indexedEnvironment;
+                if (indexed == null || !Objects.equal(indexed.environment, environment)) {
+                    indexed = new IndexedEnvironment(environment, buildIndex());
+                    indexedEnvironment = indexed;
+                }
+            }
+        }
+        return indexed.index;
+    }
+
+    private static PageIndex buildIndex() {
+        PageIndex index = new PageIndex();
+        String environment = Configuration.getEnvironmentName();
+        String environmentUrl = Strings.emptyToNull(Configuration.getEnvironmentProperty("url"));
+        ClassLoader classLoader = PageRegistry.class.getClassLoader();
+
+        for (String resourceName : ResourceIndex.getResourceNames()) {
+            if (!resourceName.endsWith(PAGE_DEFINITION_EXTENSION)) {
+                continue;
+            }
+            String classResourceName = resourceName.substring(0, resourceName.length() - PAGE_DEFINITION_EXTENSION.length());
+            if (classLoader.getResource(classResourceName + ".class") == null) {
+                continue;
+            }
+            Properties pageDefinition = loadPageDefinition(resourceName);
+            if (pageDefinition != null && pageDefinition.containsKey("URL") && pageDefinition.containsKey("Title")) {
+                try {
+                    index.add(UrlTemplate.compile(environment, environmentUrl, pageDefinition.getProperty("URL")).getIndexPattern(),
+                            pageDefinition.getProperty("Title"), classResourceName.replace('/', '.'));
+                } catch (IllegalArgumentException e) {
+                    Logger.error(LogLevels.LEVEL_3, "PageRegistry", "Can't index " + resourceName + ": " + e.getMessage());
+                }
+            }
+        }
+
+        for (Class<? extends BasePage> pageClass : registeredPages) {
+            PageDefinition pageDefinition = new PageDefinition(pageClass);
+            index.add(pageDefinition.getUrlTemplate().getIndexPattern(), pageDefinition.getTitle(), pageClass.getName());
+        }
+        return index;
+    }
+
+    private static Properties loadPageDefinition(String resourceName) {
+        InputSupplier<InputStream> resource = ResourceIndex.getResource(resourceName);
+        if (resource == null) {
+            return null;
+        }
+        Properties pageDefinition = new Properties();
+        InputStream stream = null;
+        try {
+            stream = resource.getInput();
+            pageDefinition.load(stream);
+            return pageDefinition;
+        } catch (IOException e) {
+            Logger.error(LogLevels.LEVEL_3, "PageRegistry", "Can't read " + resourceName + ": " + e.toString());
+            return null;
+        } finally {
+            closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Checks URL against full URL template of the page, index matches only its literal prefix
+     *
+     * @param pageClass class of a page
+     * @param url       URL of page opened in the browser
+     * @return true if page URL matches
+     */
+    private static boolean matchesUrl(Class<? extends BasePage> pageClass, String url) {
+        try {
+            return url != null && new PageDefinition(pageClass).matchesUrl(url);
+        } catch (IllegalArgumentException e) {
+            return false;
+        } catch (InstantiationError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Loads page class, classes which are not pages are skipped
+     *
+     * @param pageClassName name of page class
+     * @return page class or null if class can't be loaded or isn't page
+     */
+    private static Class<? extends BasePage> loadPageClass(String pageClassName) {
+        try {
+            Class<?> pageClass = Class.forName(pageClassName, false, PageRegistry.class.getClassLoader());
+            return BasePage.class.isAssignableFrom(pageClass) ? pageClass.asSubclass(BasePage.class) : null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    private static class IndexedEnvironment {
+        private final String environment;
+        private final PageIndex index;
+
+        private IndexedEnvironment(String environment, PageIndex index) {
+            this.environment = environment;
+            this.index = index;
+        }
+    }
+}
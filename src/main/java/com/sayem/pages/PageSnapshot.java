@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import org.cyberneko.html.parsers.DOMParser;
+import org.openqa.selenium.NoSuchElementException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Snapshot of page source parsed in test process. Page definition locators are evaluated against the snapshot
+ * without calls to the browser, so checking static content of the page costs one call no matter how many checks are done.
+ * <p/>
+ * Snapshot reflects page at the moment it was taken. Text is element text content with whitespace collapsed,
+ * unlike WebDriver it includes text of hidden elements. Snapshot is not thread-safe.
+ */
+public class PageSnapshot {
+
+    //CSS locators are translated to XPath once per JVM
+    private static final ConcurrentMap<String, String> cssTranslations = new ConcurrentHashMap<String, String>();
+
+    private final Document document;
+    private final PageDefinition definition;
+    private final XPath xpath = XPathFactory.newInstance().newXPath();
+    private final Map<String, List<Element>> matchingElements = new HashMap<String, List<Element>>();
+
+    private PageSnapshot(Document document, PageDefinition definition) {
+        this.document = document;
+        this.definition = definition;
+    }
+
+    /**
+     * Parses page source
+     *
+     * @param pageSource HTML source of the page
+     * @param definition page definition with element locators
+     * @return parsed snapshot
+     * @throws IllegalStateException if page source can't be parsed
+     */
+    static PageSnapshot parse(String pageSource, PageDefinition definition) throws IllegalStateException {
+        DOMParser parser = new DOMParser();
+        try {
+            //Element names in lower case and no namespaces, so locators written for browser DOM match
+            parser.setFeature("http://xml.org/sax/features/namespaces", false);
+            parser.setProperty("http://cyberneko.org/html/properties/names/elems", "lower");
+            //Default HTML document upper-cases element names whatever parser reports, plain DOM document keeps them
+            parser.setProperty("http://apache.org/xml/properties/dom/document-class-name", "org.apache.xerces.dom.DocumentImpl");
+            parser.parse(new InputSource(new StringReader(pageSource == null ? "" : pageSource)));
+        } catch (SAXException e) {
+            throw new IllegalStateException("Can't parse page source. " + e.toString());
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't parse page source. " + e.toString());
+        }
+        return new PageSnapshot(parser.getDocument(), definition);
+    }
+
+    /**
+     * @param elementName name of the element in page definition
+     * @return true if at least one element matches element locator
+     */
+    public boolean isPresent(String elementName) {
+        return !findElements(elementName).isEmpty();
+    }
+
+    /**
+     * @param elementName name of the element in page definition
+     * @return number of elements which match element locator
+     */
+    public int count(String elementName) {
+        return findElements(elementName).size();
+    }
+
+    /**
+     * Retrieves text of first element which matches element locator
+     *
+     * @param elementName name of the element in page definition
+     * @return text with whitespace collapsed
+     * @throws NoSuchElementException if no element matches
+     */
+    public String getText(String elementName) throws NoSuchElementException {
+        return getText(findElement(elementName));
+    }
+
+    /**
+     * Retrieves texts of all elements which match element locator
+     *
+     * @param elementName name of the element in page definition
+     * @return texts with whitespace collapsed, in document order
+     */
+    public List<String> getTexts(String elementName) {
+        List<String> texts = new ArrayList<String>();
+        for (Element element : findElements(elementName)) {
+            texts.add(getText(element));
+        }
+        return texts;
+    }
+
+    /**
+     * Retrieves attribute of first element which matches element locator
+     *
+     * @param elementName   name of the element in page definition
+     * @param attributeName name of the attribute
+     * @return attribute value or null if element doesn't have it
+     * @throws NoSuchElementException if no element matches
+     */
+    public String getAttribute(String elementName, String attributeName) throws NoSuchElementException {
+        Element element = findElement(elementName);
+        return element.hasAttribute(attributeName) ? element.getAttribute(attributeName) : null;
+    }
+
+    private Element findElement(String elementName) throws NoSuchElementException {
+        List<Element> elements = findElements(elementName);
+        if (elements.isEmpty()) {
+            throw new NoSuchElementException("Element " + elementName + " is not found in page snapshot");
+        }
+        return elements.get(0);
+    }
+
+    private List<Element> findElements(String elementName) {
+        List<Element> elements = matchingElements.get(elementName);
+        if (elements != null) {
+            return elements;
+        }
+
+        //Validates locator the same way as WebDriver lookup does
+        definition.getElementLocator(elementName);
+        //Alternative locators are tried in order of their success rates, first one which matches any element wins
+        List<String[]> locators = definition.getParsedElementLocators(elementName);
+        elements = new ArrayList<Element>();
+        for (int i = 0; i < locators.size() && elements.isEmpty(); i++) {
+            evaluate(elementName, toXPath(locators.get(i)[0], locators.get(i)[1]), elements);
+            if (!elements.isEmpty()) {
+                definition.recordLocatorResults(elementName, locators, i);
+            }
+        }
+        matchingElements.put(elementName, elements);
+        return elements;
+    }
+
+    private void evaluate(String elementName, String expression, List<Element> elements) {
+        try {
+            NodeList nodes = (NodeList) xpath.evaluate(expression, document, XPathConstants.NODESET);
+            for (int i = 0; i < nodes.getLength(); i++) {
+                if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE) {
+                    elements.add((Element) nodes.item(i));
+                }
+            }
+        } catch (XPathExpressionException e) {
+            throw new IllegalArgumentException("Can't evaluate locator of element " + elementName + " as XPath " + expression + ". " + e.toString());
+        }
+    }
+
+    /**
+     * Converts page definition locator to XPath expression
+     *
+     * @param locatorType  locator type from page definition
+     * @param locatorValue locator value from page definition
+     * @return XPath expression
+     */
+    static String toXPath(String locatorType, String locatorValue) {
+        if (locatorType.equalsIgnoreCase("xpath")) {
+            return locatorValue;
+        } else if (locatorType.equalsIgnoreCase("css")) {
+            String translation = cssTranslations.get(locatorValue);
+            if (translation == null) {
+                translation = CssToXPath.translate(locatorValue);
+                cssTranslations.putIfAbsent(locatorValue, translation);
+            }
+            return translation;
+        } else if (locatorType.equalsIgnoreCase("id")) {
+            return "//*[@id=" + CssToXPath.literal(locatorValue) + "]";
+        } else if (locatorType.equalsIgnoreCase("name")) {
+            return "//*[@name=" + CssToXPath.literal(locatorValue) + "]";
+        } else if (locatorType.equalsIgnoreCase("tagName")) {
+            return "//" + locatorValue.toLowerCase();
+        } else if (locatorType.equalsIgnoreCase("linkText")) {
+            return "//a[normalize-space(.)=" + CssToXPath.literal(locatorValue.trim()) + "]";
+        } else if (locatorType.equalsIgnoreCase("partialLinkText")) {
+            return "//a[contains(normalize-space(.), " + CssToXPath.literal(locatorValue.trim()) + ")]";
+        }
+        throw new IllegalArgumentException("Locator type " + locatorType + " can't be evaluated in page snapshot");
+    }
+
+    private static String getText(Element element) {
+        return element.getTextContent().replaceAll("\\s+", " ").trim();
+    }
+}
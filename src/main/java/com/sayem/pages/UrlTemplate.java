@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Page URL with placeholders, for example /orders/{orderId}?tab={tab}. Template is compiled once per page
+ * and environment into literal segments, parameter names and anchored regular expression, so expanding and matching URLs
+ * doesn't parse it again.
+ * Values of parameters are URL-encoded when template is expanded.
+ * When URLs are matched, a path parameter matches any text except a / and a query parameter matches any text except a &.
+ */
+class UrlTemplate {
+
+    private static final String UNRESERVED_CHARACTERS = "-_.~";
+    private static final String PATH_VALUE_REGEX = "[^/?#]+";
+    private static final String QUERY_VALUE_REGEX = "[^&#]+";
+
+    private final String environment;
+    private final String template;
+    //literals.length is always parameters.length + 1, literal i is followed by parameter i
+    private final String[] literals;
+    private final String[] parameters;
+    private final boolean[] queryParameters;
+    private final int literalsLength;
+    //Whole URL should match, so values are found by backtracking, null if template has no placeholders
+    private final Pattern pattern;
+
+    private UrlTemplate(String environment, String template, String[] literals, String[] parameters, boolean[] queryParameters) {
+        this.environment = environment;
+        this.template = template;
+        this.literals = literals;
+        this.parameters = parameters;
+        this.queryParameters = queryParameters;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        literalsLength = length;
+        pattern = parameters.length == 0 ? null : compilePattern(literals, queryParameters);
+    }
+
+    /**
+     * Compiles page URL template
+     *
+     * @param environment    name of environment template is compiled for
+     * @param environmentUrl base URL of environment, can be null
+     * @param pageUrl        URL from page definition, can contain placeholders in form {name}
+     * @return compiled template
+     * @throws IllegalArgumentException if placeholder is not closed or has no name
+     */
+    static UrlTemplate compile(String environment, String environmentUrl, String pageUrl) throws IllegalArgumentException {
+        String template = (environmentUrl == null ? "" : environmentUrl) + (pageUrl == null ? "" : pageUrl);
+        List<String> literals = new ArrayList<String>();
+        List<String> parameters = new ArrayList<String>();
+        List<Boolean> queryParameters = new ArrayList<Boolean>();
+
+        int position = 0;
+        int start;
+        while ((start = template.indexOf('{', position)) >= 0) {
+            int end = template.indexOf('}', start);
+            if (end < 0 || end == start + 1) {
+                throw new IllegalArgumentException("Can't parse URL template [" + template + "].\n" +
+                        "Placeholders should have format {parameterName}");
+            }
+            literals.add(template.substring(position, start));
+            parameters.add(template.substring(start + 1, end).trim());
+            queryParameters.add(template.lastIndexOf('?', start) >= 0);
+            position = end + 1;
+        }
+        literals.add(template.substring(position));
+
+        boolean[] query = new boolean[queryParameters.size()];
+        for (int i = 0; i < query.length; i++) {
+            query[i] = queryParameters.get(i);
+        }
+        return new UrlTemplate(environment, template, literals.toArray(new String[literals.size()]),
+                parameters.toArray(new String[parameters.size()]), query);
+    }
+
+    /**
+     * @return name of environment template was compiled for
+     */
+    String getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * @return true if template has placeholders
+     */
+    boolean hasParameters() {
+        return parameters.length > 0;
+    }
+
+    /**
+     * Expands template with given parameter values. Template without placeholders is returned as is.
+     *
+     * @param parameterValues parameter names mapped to values
+     * @return URL
+     * @throws IllegalArgumentException if value of some parameter is missing
+     */
+    String expand(Map<String, String> parameterValues) throws IllegalArgumentException {
+        if (parameters.length == 0) {
+            return template;
+        }
+        StringBuilder url = new StringBuilder(literalsLength + 16 * parameters.length);
+        for (int i = 0; i < parameters.length; i++) {
+            url.append(literals[i]);
+            String value = parameterValues.get(parameters[i]);
+            if (value == null) {
+                throw new IllegalArgumentException("Value of URL parameter " + parameters[i] +
+                        " is missing, URL template is [" + template + "]");
+            }
+            appendEncoded(url, value, queryParameters[i]);
+        }
+        return url.append(literals[parameters.length]).toString();
+    }
+
+    /**
+     * Checks whether URL matches template, ignoring case
+     *
+     * @param url URL to check
+     * @return true if URL matches
+     */
+    boolean matches(String url) {
+        if (url == null) {
+            return false;
+        }
+        if (parameters.length == 0) {
+            return template.equalsIgnoreCase(url);
+        }
+        return pattern.matcher(url).matches();
+    }
+
+    /**
+     * Retrieves template as pattern for {@link PageIndex}, in which everything starting from first placeholder is replaced with *.
+     * Pattern matches more URLs than template does, so pages found by it should be checked with {@link #matches(String)}.
+     *
+     * @return URL pattern
+     */
+    String getIndexPattern() {
+        return parameters.length == 0 ? template : literals[0] + "*";
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+
+    private static Pattern compilePattern(String[] literals, boolean[] queryParameters) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < queryParameters.length; i++) {
+            appendLiteral(regex, literals[i]);
+            regex.append(queryParameters[i] ? QUERY_VALUE_REGEX : PATH_VALUE_REGEX);
+        }
+        appendLiteral(regex, literals[queryParameters.length]);
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+
+    private static void appendLiteral(StringBuilder regex, String literal) {
+        if (!literal.isEmpty()) {
+            regex.append(Pattern.quote(literal));
+        }
+    }
+
+    private static void appendEncoded(StringBuilder url, String value, boolean queryParameter) {
+        if (isUnreserved(value)) {
+            url.append(value);
+            return;
+        }
+        String encoded;
+        try {
+            encoded = URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        url.append(queryParameter ? encoded : encoded.replace("+", "%20"));
+    }
+
+    private static boolean isUnreserved(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+            if (!(character >= 'a' && character <= 'z' || character >= 'A' && character <= 'Z' || character >= '0' && character <= '9'
+                    || UNRESERVED_CHARACTERS.indexOf(character) >= 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
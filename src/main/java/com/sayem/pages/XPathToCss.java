@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Translates XPath expressions into CSS selectors which select exactly the same elements.
+ * Supported subset is location paths starting with // (or /html) made of descendant and child steps with element names or *,
+ * attribute presence and equality, contains(@attr, 'x'), starts-with(@attr, 'x'), class token test
+ * contains(concat(' ', normalize-space(@class), ' '), ' x '), conditions joined with 'and',
+ * and position or last() as first predicate of a step. Everything else is not translated.
+ * Position is translated into CSS3 structural pseudo-classes, which are not supported by all browsers, so its translation
+ * can be turned off.
+ */
+class XPathToCss {
+
+    private static final Pattern CLASS_TOKEN = Pattern.compile(
+            "^concat\\(\\s*(['\"]) \\1\\s*,\\s*normalize-space\\(\\s*@class\\s*\\)\\s*,\\s*(['\"]) \\2\\s*\\)\\s*,\\s*(['\"]) ([\\w-]+) \\3\\s*\\)");
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][\\w-]*");
+
+    private final String xpath;
+    private final boolean positionalSelectors;
+    private int position;
+
+    private XPathToCss(String xpath, boolean positionalSelectors) {
+        this.xpath = xpath;
+        this.positionalSelectors = positionalSelectors;
+    }
+
+    /**
+     * Translates XPath expression
+     *
+     * @param xpath XPath expression
+     * @return equivalent CSS selector or null if expression can't be translated exactly
+     */
+    static String translate(String xpath) {
+        return translate(xpath, true);
+    }
+
+    /**
+     * Translates XPath expression
+     *
+     * @param xpath               XPath expression
+     * @param positionalSelectors true if position can be translated into :nth-of-type, :nth-child, :last-of-type and :last-child
+     * @return equivalent CSS selector or null if expression can't be translated exactly
+     */
+    static String translate(String xpath, boolean positionalSelectors) {
+        try {
+            return new XPathToCss(xpath.trim(), positionalSelectors).translatePath();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private String translatePath() {
+        StringBuilder css = new StringBuilder();
+        boolean absolute;
+        if (consume("//")) {
+            absolute = false;
+        } else if (consume("/")) {
+            absolute = true;
+        } else {
+            throw notTranslatable();
+        }
+
+        String step = translateStep();
+        //Only /html can be translated, because CSS can't express element which is child of the document
+        if (absolute && !step.equalsIgnoreCase("html")) {
+            throw notTranslatable();
+        }
+        css.append(step);
+
+        while (position < xpath.length()) {
+            if (consume("//")) {
+                css.append(' ');
+            } else if (consume("/")) {
+                css.append(" > ");
+            } else {
+                throw notTranslatable();
+            }
+            css.append(translateStep());
+        }
+        return css.toString();
+    }
+
+    private String translateStep() {
+        skipWhitespace();
+        String name = consume("*") ? "*" : readName();
+        if (name.isEmpty() || xpath.startsWith("::", position) || xpath.startsWith("(", position)) {
+            throw notTranslatable();
+        }
+
+        StringBuilder conditions = new StringBuilder();
+        String index = "";
+        boolean firstPredicate = true;
+        skipWhitespace();
+        while (consume("[")) {
+            skipWhitespace();
+            String number = readDigits();
+            if (!number.isEmpty() || xpath.startsWith("last()", position)) {
+                //Position counts all preceding predicates, so only first predicate position matches CSS index
+                if (!firstPredicate || !positionalSelectors) {
+                    throw notTranslatable();
+                }
+                if (number.isEmpty()) {
+                    position += "last()".length();
+                    index = name.equals("*") ? ":last-child" : ":last-of-type";
+                } else {
+                    index = (name.equals("*") ? ":nth-child(" : ":nth-of-type(") + Integer.parseInt(number) + ")";
+                }
+            } else {
+                conditions.append(translateCondition());
+                while (consumeKeyword("and")) {
+                    conditions.append(translateCondition());
+                }
+            }
+            skipWhitespace();
+            if (!consume("]")) {
+                throw notTranslatable();
+            }
+            firstPredicate = false;
+            skipWhitespace();
+        }
+
+        if (name.equals("*") && (conditions.length() > 0 || !index.isEmpty())) {
+            name = "";
+        }
+        return name + conditions + index;
+    }
+
+    private String translateCondition() {
+        skipWhitespace();
+        if (consume("@")) {
+            String attribute = readName();
+            skipWhitespace();
+            if (attribute.isEmpty() || xpath.startsWith("!=", position)) {
+                throw notTranslatable();
+            }
+            if (!consume("=")) {
+                return "[" + attribute + "]";
+            }
+            skipWhitespace();
+            return attributeSelector(attribute, "=", readLiteral());
+        }
+
+        if (consume("contains(")) {
+            skipWhitespace();
+            Matcher classToken = CLASS_TOKEN.matcher(xpath.substring(position));
+            if (classToken.find() && IDENTIFIER.matcher(classToken.group(4)).matches()) {
+                position += classToken.end();
+                return "." + classToken.group(4);
+            }
+            return translateFunction("*=");
+        }
+        if (consume("starts-with(")) {
+            skipWhitespace();
+            return translateFunction("^=");
+        }
+        throw notTranslatable();
+    }
+
+    private String translateFunction(String operator) {
+        if (!consume("@")) {
+            throw notTranslatable();
+        }
+        String attribute = readName();
+        skipWhitespace();
+        if (attribute.isEmpty() || !consume(",")) {
+            throw notTranslatable();
+        }
+        skipWhitespace();
+        String value = readLiteral();
+        skipWhitespace();
+        if (!consume(")")) {
+            throw notTranslatable();
+        }
+        return attributeSelector(attribute, operator, value);
+    }
+
+    private static String attributeSelector(String attribute, String operator, String value) {
+        if (attribute.equals("id") && operator.equals("=") && IDENTIFIER.matcher(value).matches()) {
+            return "#" + value;
+        }
+        if (value.indexOf('\\') >= 0 || value.indexOf('\n') >= 0 || (value.indexOf('"') >= 0 && value.indexOf('\'') >= 0)) {
+            throw notTranslatable();
+        }
+        //Empty value never matches with ^= and *= in CSS, but always matches in XPath
+        if (value.isEmpty() && !operator.equals("=")) {
+            throw notTranslatable();
+        }
+        String quote = value.indexOf('"') >= 0 ? "'" : "\"";
+        return "[" + attribute + operator + quote + value + quote + "]";
+    }
+
+    private String readLiteral() {
+        if (position >= xpath.length() || (xpath.charAt(position) != '\'' && xpath.charAt(position) != '"')) {
+            throw notTranslatable();
+        }
+        char quote = xpath.charAt(position);
+        int end = xpath.indexOf(quote, position + 1);
+        if (end < 0) {
+            throw notTranslatable();
+        }
+        String value = xpath.substring(position + 1, end);
+        position = end + 1;
+        return value;
+    }
+
+    private String readName() {
+        int start = position;
+        while (position < xpath.length()) {
+            char c = xpath.charAt(position);
+            if (Character.isLetterOrDigit(c) || c == '-' || c == '_') {
+                position++;
+            } else {
+                break;
+            }
+        }
+        return xpath.substring(start, position);
+    }
+
+    private String readDigits() {
+        int start = position;
+        while (position < xpath.length() && Character.isDigit(xpath.charAt(position))) {
+            position++;
+        }
+        return xpath.substring(start, position);
+    }
+
+    private boolean consumeKeyword(String keyword) {
+        int start = position;
+        skipWhitespace();
+        if (position > start && xpath.startsWith(keyword, position) && position + keyword.length() < xpath.length()
+                && Character.isWhitespace(xpath.charAt(position + keyword.length()))) {
+            position += keyword.length();
+            return true;
+        }
+        position = start;
+        return false;
+    }
+
+    private boolean consume(String token) {
+        if (xpath.startsWith(token, position)) {
+            position += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (position < xpath.length() && Character.isWhitespace(xpath.charAt(position))) {
+            position++;
+        }
+    }
+
+    private static IllegalArgumentException notTranslatable() {
+        return new IllegalArgumentException();
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.resources;
+
+import com.google.common.io.InputSupplier;
+import com.google.common.io.Resources;
+import com.sayem.logger.LogLevels;
+import com.sayem.logger.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static com.google.common.io.ByteStreams.toByteArray;
+import static com.google.common.io.Closeables.closeQuietly;
+
+/**
+ * Index of framework resources (page definitions, test datasets and configuration files) available in class path.
+ * Index is built once, when first resource is requested, by scanning all class path directories and jars in parallel.
+ * Class path is taken from java.class.path and from class loader of the framework, so entries of class loaders
+ * set up by IDE, build tool or application server are indexed too.
+ * Content of small resources is kept in memory after first read, so resources packaged in jars
+ * are read as fast as resources in exploded directories. Jars are opened only while resources are read.
+ * Resources which are not in the index, for example loaded by custom class loaders, are looked up through class loader.
+ */
+public abstract class ResourceIndex {
+
+    //Only resources with these extensions are indexed, classes and other resources are left to class loader
+    private static final String[] INDEXED_EXTENSIONS = {".properties", ".xml"};
+    //Resources not larger than this are kept in memory after first read
+    private static final long MAX_CACHED_RESOURCE_SIZE = 256 * 1024;
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+
+    private static volatile Map<String, IndexedResource> index;
+
+    /**
+     * Retrieves resource by its absolute name in class path
+     *
+     * @param resourceName name of a resource with '/' as separator, like com/sayem/pages/HomePage.properties
+     * @return source of resource content or null if resource is not found
+     */
+    public static InputSupplier<InputStream> getResource(String resourceName) {
+        if (resourceName.startsWith("/")) {
+            resourceName = resourceName.substring(1);
+        }
+        IndexedResource resource = getIndex().get(resourceName);
+        if (resource != null) {
+            return resource;
+        }
+        URL url = ResourceIndex.class.getClassLoader().getResource(resourceName);
+        return url == null ? null : Resources.newInputStreamSupplier(url);
+    }
+
+    /**
+     * Retrieves resource by name relative to package of given class, the same way as Class.getResource does
+     *
+     * @param relativeClass class to which package resource name is relative
+     * @param resourceName  name of a resource with '/' as separator, name which starts with '/' is absolute
+     * @return source of resource content or null if resource is not found
+     */
+    public static InputSupplier<InputStream> getResource(Class relativeClass, String resourceName) {
+        if (!resourceName.startsWith("/") && relativeClass.getPackage() != null) {
+            resourceName = relativeClass.getPackage().getName().replace('.', '/') + "/" + resourceName;
+        }
+        InputSupplier<InputStream> resource = getResource(resourceName);
+        if (resource == null) {
+            URL url = relativeClass.getResource("/" + resourceName);
+            return url == null ? null : Resources.newInputStreamSupplier(url);
+        }
+        return resource;
+    }
+
+    /**
+     * Retrieves names of all indexed resources, builds index if it's not built yet
+     *
+     * @return unmodifiable set of resource names with '/' as separator
+     */
+    public static Set<String> getResourceNames() {
+        return Collections.unmodifiableSet(getIndex().keySet());
+    }
+
+    /**
+     * Retrieves number of resources in the index, builds index if it's not built yet
+     *
+     * @return number of indexed resources
+     */
+    public static int size() {
+        return getIndex().size();
+    }
+
+    private static Map<String, IndexedResource> getIndex() {
+        if (index == null) {
+            synchronized (ResourceIndex.class) {
+                if (index == null) {
+                    index = buildIndex(ResourceIndex.class.getClassLoader(), System.getProperty("java.class.path", ""));
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Scans class path entries in parallel. Jars can reference other jars in Class-Path manifest attribute,
+     * those are scanned after jars which reference them. First resource with given name wins, as in class loader.
+     * Entries of class path are scanned first, then entries only class loader knows about.
+     *
+     * @param classLoader class loader which directories and jars are indexed
+     * @param classPath   class path in java.class.path format
+     * @return resources by name
+     */
+    static Map<String, IndexedResource> buildIndex(ClassLoader classLoader, String classPath) {
+        long startTime = System.currentTimeMillis();
+        Map<String, IndexedResource> resources = new HashMap<String, IndexedResource>();
+        Set<File> scannedEntries = new LinkedHashSet<File>();
+        List<File> entries = new ArrayList<File>();
+        for (String entry : classPath.split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                entries.add(new File(entry).getAbsoluteFile());
+            }
+        }
+        entries.addAll(getClassLoaderEntries(classLoader));
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            while (!entries.isEmpty()) {
+                List<Future<ScannedEntry>> scans = new ArrayList<Future<ScannedEntry>>();
+                for (final File entry : entries) {
+                    if (scannedEntries.add(entry)) {
+                        scans.add(executor.submit(new Callable<ScannedEntry>() {
+                            public ScannedEntry call() throws Exception {
+                                return scan(entry);
+                            }
+                        }));
+                    }
+                }
+                entries = new ArrayList<File>();
+                for (Future<ScannedEntry> scan : scans) {
+                    ScannedEntry scannedEntry = scan.get();
+                    for (Map.Entry<String, IndexedResource> resource : scannedEntry.resources.entrySet()) {
+                        if (!resources.containsKey(resource.getKey())) {
+                            resources.put(resource.getKey(), resource.getValue());
+                        }
+                    }
+                    entries.addAll(scannedEntry.referencedEntries);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Logger.error(LogLevels.LEVEL_3, "ResourceIndex", "Can't index class path: " + e.getCause().toString());
+        } finally {
+            executor.shutdown();
+        }
+
+        Logger.info(LogLevels.LEVEL_9, "ResourceIndex", "Indexed " + resources.size() + " resources in " +
+                scannedEntries.size() + " class path entries in " + (System.currentTimeMillis() - startTime) + " ms");
+        return resources;
+    }
+
+    /**
+     * Finds directories and jars of class loader: directories are roots of "" resource,
+     * jars are found by their manifests. Entries which are not local files are left to class loader.
+     */
+    private static List<File> getClassLoaderEntries(ClassLoader classLoader) {
+        List<File> entries = new ArrayList<File>();
+        if (classLoader == null) {
+            return entries;
+        }
+        try {
+            for (URL directory : Collections.list(classLoader.getResources(""))) {
+                if ("file".equals(directory.getProtocol())) {
+                    entries.add(new File(directory.toURI()).getAbsoluteFile());
+                }
+            }
+            for (URL manifest : Collections.list(classLoader.getResources(MANIFEST_NAME))) {
+                String location = manifest.toString();
+                if (location.startsWith("jar:file:") && location.endsWith("!/" + MANIFEST_NAME)) {
+                    URI jar = new URI(location.substring("jar:".length(), location.length() - ("!/" + MANIFEST_NAME).length()));
+                    entries.add(new File(jar).getAbsoluteFile());
+                }
+            }
+        } catch (Exception e) {
+            //Class loader entries which can't be listed are still available through class loader
+            Logger.error(LogLevels.LEVEL_3, "ResourceIndex", "Can't list class loader entries: " + e.toString());
+        }
+        return entries;
+    }
+
+    private static ScannedEntry scan(File entry) {
+        ScannedEntry scannedEntry = new ScannedEntry();
+        try {
+            if (entry.isDirectory()) {
+                scanDirectory(entry.toPath(), scannedEntry);
+            } else if (entry.isFile()) {
+                scanJar(entry, scannedEntry);
+            }
+        } catch (IOException e) {
+            //Entry which can't be read is skipped, its resources are still available through class loader
+            Logger.error(LogLevels.LEVEL_3, "ResourceIndex", "Can't index " + entry + ": " + e.toString());
+        }
+        return scannedEntry;
+    }
+
+    private static void scanDirectory(final Path directory, final ScannedEntry scannedEntry) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                String name = directory.relativize(file).toString().replace(File.separatorChar, '/');
+                if (attributes.isRegularFile() && isIndexed(name)) {
+                    scannedEntry.resources.put(name, new IndexedResource(file.toFile(), null));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void scanJar(File jar, ScannedEntry scannedEntry) throws IOException {
+        ZipFile zip = new ZipFile(jar);
+        try {
+            Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry zipEntry = zipEntries.nextElement();
+                if (!zipEntry.isDirectory() && isIndexed(zipEntry.getName())) {
+                    scannedEntry.resources.put(zipEntry.getName(), new IndexedResource(jar, zipEntry.getName()));
+                }
+            }
+            scanManifest(jar, zip, scannedEntry);
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static void scanManifest(File jar, ZipFile zip, ScannedEntry scannedEntry) throws IOException {
+        ZipEntry manifestEntry = zip.getEntry(MANIFEST_NAME);
+        if (manifestEntry != null) {
+            InputStream manifestStream = zip.getInputStream(manifestEntry);
+            try {
+                String classPath = new Manifest(manifestStream).getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+                if (classPath != null) {
+                    URI jarLocation = jar.toURI();
+                    for (String reference : classPath.trim().split("\\s+")) {
+                        try {
+                            URI referencedEntry = jarLocation.resolve(reference);
+                            if ("file".equals(referencedEntry.getScheme())) {
+                                scannedEntry.referencedEntries.add(new File(referencedEntry));
+                            }
+                        } catch (IllegalArgumentException e) {
+                            //Malformed reference is ignored the same way as class loader does
+                        }
+                    }
+                }
+            } finally {
+                closeQuietly(manifestStream);
+            }
+        }
+    }
+
+    private static boolean isIndexed(String name) {
+        for (String extension : INDEXED_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class ScannedEntry {
+        private final Map<String, IndexedResource> resources = new LinkedHashMap<String, IndexedResource>();
+        private final List<File> referencedEntries = new ArrayList<File>();
+    }
+
+    /**
+     * Resource located in class path directory or jar. Small resources are kept in memory after first read and
+     * are re-read if their file or jar was modified or resized, so tests which modify configuration files see the changes.
+     * Jar is opened for each read and closed when content is read, so it can be replaced or deleted while tests run.
+     */
+    static class IndexedResource implements InputSupplier<InputStream> {
+        //Resource file, or jar which contains resource
+        private final File file;
+        private final String jarEntryName;
+        private volatile CachedContent cachedContent;
+
+        /**
+         * @param file         resource file, or jar which contains resource
+         * @param jarEntryName name of resource in jar, null for resource file
+         */
+        IndexedResource(File file, String jarEntryName) {
+            this.file = file;
+            this.jarEntryName = jarEntryName;
+        }
+
+        public InputStream getInput() throws IOException {
+            long modificationTime = file.lastModified();
+            long fileSize = file.length();
+            CachedContent content = cachedContent;
+            if (content != null && content.modificationTime == modificationTime && content.fileSize == fileSize) {
+                return new ByteArrayInputStream(content.bytes);
+            }
+            if (jarEntryName == null) {
+                if (fileSize > MAX_CACHED_RESOURCE_SIZE) {
+                    return new FileInputStream(file);
+                }
+                content = new CachedContent(Files.readAllBytes(file.toPath()), modificationTime, fileSize);
+            } else {
+                ZipFile jar = new ZipFile(file);
+                boolean streamed = false;
+                try {
+                    ZipEntry jarEntry = jar.getEntry(jarEntryName);
+                    if (jarEntry == null) {
+                        throw new FileNotFoundException(jarEntryName + " is removed from " + file);
+                    }
+                    if (jarEntry.getSize() < 0 || jarEntry.getSize() > MAX_CACHED_RESOURCE_SIZE) {
+                        InputStream stream = new JarEntryStream(jar, jar.getInputStream(jarEntry));
+                        streamed = true;
+                        return stream;
+                    }
+                    InputStream stream = jar.getInputStream(jarEntry);
+                    try {
+                        content = new CachedContent(toByteArray(stream), modificationTime, fileSize);
+                    } finally {
+                        closeQuietly(stream);
+                    }
+                } finally {
+                    if (!streamed) {
+                        jar.close();
+                    }
+                }
+            }
+            cachedContent = content;
+            return new ByteArrayInputStream(content.bytes);
+        }
+    }
+
+    /**
+     * Stream of large jar entry which closes the jar when it's closed
+     */
+    private static class JarEntryStream extends FilterInputStream {
+        private final ZipFile jar;
+
+        private JarEntryStream(ZipFile jar, InputStream stream) {
+            super(stream);
+            this.jar = jar;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                jar.close();
+            }
+        }
+    }
+
+    private static class CachedContent {
+        private final byte[] bytes;
+        //Modification time and size of resource file or jar when content was read
+        private final long modificationTime;
+        private final long fileSize;
+
+        private CachedContent(byte[] bytes, long modificationTime, long fileSize) {
+            this.bytes = bytes;
+            this.modificationTime = modificationTime;
+            this.fileSize = fileSize;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.session;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.events.AbstractWebDriverEventListener;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Cookies and local storage of a browser captured after setup flow, for every site the flow visited, so flows which
+ * go through single sign-on or other sites are captured completely. State is immutable and can be shared by threads.
+ * State expires when configured time to live passes or when any captured cookie expires, whatever comes first.
+ */
+public class SessionState {
+
+    private static final String READ_LOCAL_STORAGE_SCRIPT =
+            "var items = [];" +
+            "if (window.localStorage) {" +
+            "  for (var i = 0; i < window.localStorage.length; i++) {" +
+            "    var key = window.localStorage.key(i);" +
+            "    items.push([key, window.localStorage.getItem(key)]);" +
+            "  }" +
+            "}" +
+            "return items;";
+
+    private static final String WRITE_LOCAL_STORAGE_SCRIPT =
+            "var items = arguments[0];" +
+            "for (var i = 0; i < items.length; i++) {" +
+            "  window.localStorage.setItem(items[i][0], items[i][1]);" +
+            "}";
+
+    //Sites in order flow left them, site flow ended on is the last one
+    private final Map<String, Set<Cookie>> cookies;
+    private final Map<String, Map<String, String>> localStorage;
+    private final long expiryTime;
+
+    /**
+     * @param cookies      cookies of each site by its origin, site flow ended on is the last one
+     * @param localStorage local storage of each site by its origin
+     * @param expiryTime   time in milliseconds when state expires
+     */
+    SessionState(Map<String, Set<Cookie>> cookies, Map<String, Map<String, String>> localStorage, long expiryTime) {
+        checkArgument(!cookies.isEmpty(), "Session state should have at least one site");
+        ImmutableMap.Builder<String, Set<Cookie>> siteCookies = ImmutableMap.builder();
+        ImmutableMap.Builder<String, Map<String, String>> siteLocalStorage = ImmutableMap.builder();
+        for (Map.Entry<String, Set<Cookie>> site : cookies.entrySet()) {
+            Map<String, String> items = localStorage.get(site.getKey());
+            siteCookies.put(site.getKey(), ImmutableSet.copyOf(site.getValue()));
+            siteLocalStorage.put(site.getKey(), items == null ? ImmutableMap.<String, String>of() : ImmutableMap.copyOf(items));
+        }
+        this.cookies = siteCookies.build();
+        this.localStorage = siteLocalStorage.build();
+        this.expiryTime = expiryTime;
+    }
+
+    /**
+     * Captures cookies and local storage of page currently opened in the browser and of sites visited before it
+     *
+     * @param driver       WebDriver object to capture state from
+     * @param visitedSites states of sites setup flow visited
+     * @param timeToLive   how long in milliseconds captured state can be used
+     * @return captured state
+     * @throws IllegalStateException if no page with HTTP(S) URL is opened in the browser
+     */
+    static SessionState capture(WebDriver driver, SiteRecorder visitedSites, long timeToLive) {
+        visitedSites.record(driver);
+
+        long expiryTime = System.currentTimeMillis() + timeToLive;
+        for (Set<Cookie> siteCookies : visitedSites.cookies.values()) {
+            for (Cookie cookie : siteCookies) {
+                if (cookie.getExpiry() != null) {
+                    expiryTime = Math.min(expiryTime, cookie.getExpiry().getTime());
+                }
+            }
+        }
+        return new SessionState(visitedSites.cookies, visitedSites.localStorage, expiryTime);
+    }
+
+    /**
+     * Injects captured state into the browser. Browser opens origin of each captured site, because cookies and
+     * local storage can be set only for opened site, and stays on the site flow ended on.
+     * Cookies browser already has for those sites are replaced.
+     *
+     * @param driver WebDriver object to inject state into
+     */
+    void injectInto(WebDriver driver) {
+        for (Map.Entry<String, Set<Cookie>> site : cookies.entrySet()) {
+            driver.get(site.getKey());
+            driver.manage().deleteAllCookies();
+            for (Cookie cookie : site.getValue()) {
+                driver.manage().addCookie(cookie);
+            }
+
+            Map<String, String> siteLocalStorage = localStorage.get(site.getKey());
+            if (!siteLocalStorage.isEmpty() && driver instanceof JavascriptExecutor) {
+                List<List<String>> items = new ArrayList<List<String>>();
+                for (Map.Entry<String, String> item : siteLocalStorage.entrySet()) {
+                    items.add(ImmutableList.of(item.getKey(), item.getValue()));
+                }
+                ((JavascriptExecutor) driver).executeScript(WRITE_LOCAL_STORAGE_SCRIPT, items);
+            }
+        }
+    }
+
+    /**
+     * @param now current time in milliseconds
+     * @return true if state can't be used anymore and setup flow should be run again
+     */
+    public boolean isExpired(long now) {
+        return now >= expiryTime;
+    }
+
+    /**
+     * @return URL of site flow ended on, in form scheme://host:port/
+     */
+    public String getOrigin() {
+        return Iterables.getLast(cookies.keySet());
+    }
+
+    /**
+     * @return URLs of all sites state was captured from, in form scheme://host:port/, site flow ended on is the last one
+     */
+    public Set<String> getOrigins() {
+        return cookies.keySet();
+    }
+
+    /**
+     * @return cookies of all captured sites
+     */
+    public Set<Cookie> getCookies() {
+        return ImmutableSet.copyOf(Iterables.concat(cookies.values()));
+    }
+
+    /**
+     * @return local storage of site flow ended on
+     */
+    public Map<String, String> getLocalStorage() {
+        return localStorage.get(getOrigin());
+    }
+
+    /**
+     * Cuts path, query and fragment from URL
+     *
+     * @param url String URL
+     * @return URL in form scheme://host:port/
+     * @throws IllegalStateException if URL is not HTTP(S) URL
+     */
+    static String getOrigin(String url) {
+        try {
+            URL parsedUrl = new URL(url);
+            if (!parsedUrl.getProtocol().startsWith("http")) {
+                throw new IllegalStateException("Can't capture session state of " + url + ", it's not HTTP page");
+            }
+            return parsedUrl.getProtocol() + "://" + parsedUrl.getHost() +
+                    (parsedUrl.getPort() < 0 ? "" : ":" + parsedUrl.getPort()) + "/";
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException("Can't capture session state of " + url + ". " + e.toString());
+        }
+    }
+
+    /**
+     * Records cookies and local storage of every HTTP(S) site browser opens while setup flow runs, because browser
+     * gives cookies only of the site which is currently open. Site is read before and after each navigation and after
+     * each click and change of field value, the latest state of each site is kept. Recorder is used by one thread.
+     */
+    static class SiteRecorder extends AbstractWebDriverEventListener {
+        private final Map<String, Set<Cookie>> cookies = new LinkedHashMap<String, Set<Cookie>>();
+        private final Map<String, Map<String, String>> localStorage = new LinkedHashMap<String, Map<String, String>>();
+
+        @Override
+        public void beforeNavigateTo(String url, WebDriver driver) {
+            recordQuietly(driver);
+        }
+
+        @Override
+        public void afterNavigateTo(String url, WebDriver driver) {
+            recordQuietly(driver);
+        }
+
+        @Override
+        public void afterNavigateBack(WebDriver driver) {
+            recordQuietly(driver);
+        }
+
+        @Override
+        public void afterNavigateForward(WebDriver driver) {
+            recordQuietly(driver);
+        }
+
+        @Override
+        public void afterClickOn(WebElement element, WebDriver driver) {
+            recordQuietly(driver);
+        }
+
+        @Override
+        public void afterChangeValueOf(WebElement element, WebDriver driver) {
+            recordQuietly(driver);
+        }
+
+        /**
+         * Records state of site currently opened in the browser
+         *
+         * @param driver WebDriver object
+         * @throws IllegalStateException if no page with HTTP(S) URL is opened in the browser
+         */
+        void record(WebDriver driver) {
+            String origin = getOrigin(driver.getCurrentUrl());
+            Set<Cookie> siteCookies = driver.manage().getCookies();
+            Map<String, String> siteLocalStorage = new LinkedHashMap<String, String>();
+            if (driver instanceof JavascriptExecutor) {
+                Object items = ((JavascriptExecutor) driver).executeScript(READ_LOCAL_STORAGE_SCRIPT);
+                if (items instanceof List) {
+                    for (Object item : (List<?>) items) {
+                        List<?> pair = (List<?>) item;
+                        siteLocalStorage.put(String.valueOf(pair.get(0)), String.valueOf(pair.get(1)));
+                    }
+                }
+            }
+            //Site is moved to the end, so the last recorded site is the one flow ended on
+            cookies.remove(origin);
+            cookies.put(origin, siteCookies);
+            localStorage.put(origin, siteLocalStorage);
+        }
+
+        private void recordQuietly(WebDriver driver) {
+            try {
+                record(driver);
+            } catch (IllegalStateException e) {
+                //Page which isn't HTTP page, like about:blank, has no state
+            } catch (WebDriverException e) {
+                //Page is being replaced, its state is recorded after next action or when flow ends
+            }
+        }
+    }
+}
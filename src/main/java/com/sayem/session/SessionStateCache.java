@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.session;
+
+import com.sayem.configuration.Configuration;
+import com.sayem.logger.LogLevels;
+import com.sayem.logger.Logger;
+import com.sayem.monitoring.FrameworkMetrics;
+import com.sayem.tracing.TraceRecorder;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.support.events.EventFiringWebDriver;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Cache of browser states captured after setup flows like login. Setup flow runs once per environment, user and flow name,
+ * all other browsers get cookies and local storage captured after it instead of going through the same pages again.
+ * Flow runs again only when captured state expires or is invalidated.
+ * <p/>
+ * Cache can be used by parallel tests: while one thread runs setup flow, other threads which need the same state wait for it.
+ */
+public abstract class SessionStateCache {
+
+    public static final int DEFAULT_TIME_TO_LIVE = 1800;
+
+    private static final ConcurrentMap<String, SessionState> states = new ConcurrentHashMap<String, SessionState>();
+    private static final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+    //State each browser already has, so it isn't injected again. Weak keys let torn down browsers be collected
+    private static final Map<WebDriver, SessionState> appliedStates =
+            Collections.synchronizedMap(new WeakHashMap<WebDriver, SessionState>());
+
+    private static volatile long timeToLive = TimeUnit.SECONDS.toMillis(DEFAULT_TIME_TO_LIVE);
+
+    /**
+     * Configures how long captured states can be used
+     *
+     * @param timeToLiveSeconds time in seconds, 0 disables caching and setup flow runs every time
+     * @throws IllegalArgumentException if time is negative
+     */
+    public static void configure(int timeToLiveSeconds) {
+        checkArgument(timeToLiveSeconds >= 0, "Session state time to live can't be negative");
+        timeToLive = TimeUnit.SECONDS.toMillis(timeToLiveSeconds);
+    }
+
+    /**
+     * Brings browser to the state left by setup flow for given user in active environment.
+     * If state was captured before and isn't expired it's injected into the browser, otherwise setup flow is run
+     * in the browser and resulting state of every site it visited is captured. Flow gets driver which records visited sites,
+     * so it should use only WebDriver interfaces, not driver class. Nothing is done if browser already has that state.
+     *
+     * @param driver   WebDriver object to set up
+     * @param flowName name of setup flow, for example "login"
+     * @param user     user the flow is run for
+     * @param flow     setup flow
+     */
+    public static void apply(WebDriver driver, String flowName, String user, SetupFlow flow) {
+        checkNotNull(driver);
+        checkNotNull(flow);
+        long startTime = System.nanoTime();
+        String key = getKey(Configuration.getEnvironmentName(), user, flowName);
+        try {
+            if (timeToLive == 0) {
+                flow.run(driver);
+                return;
+            }
+
+            SessionState state = states.get(key);
+            if (state == null || state.isExpired(System.currentTimeMillis())) {
+                synchronized (getLock(key)) {
+                    //State could be captured by other thread while this one was waiting
+                    state = states.get(key);
+                    if (state == null || state.isExpired(System.currentTimeMillis())) {
+                        runAndCapture(driver, key, flow);
+                        return;
+                    }
+                }
+            }
+
+            if (appliedStates.get(driver) == state) {
+                return;
+            }
+            try {
+                state.injectInto(driver);
+                appliedStates.put(driver, state);
+                FrameworkMetrics.SESSION_STATES_INJECTED.increment();
+            } catch (WebDriverException e) {
+                Logger.info(LogLevels.LEVEL_6, "SessionStateCache", "Can't inject " + key + " state, running setup flow. " + e.toString());
+                states.remove(key, state);
+                synchronized (getLock(key)) {
+                    runAndCapture(driver, key, flow);
+                }
+            }
+        } finally {
+            TraceRecorder.record("SessionStateCache.apply", "fixture", startTime, key);
+        }
+    }
+
+    /**
+     * Drops captured state, so setup flow runs again next time. Should be used when tests change state on server side,
+     * for example log user out
+     *
+     * @param flowName name of setup flow
+     * @param user     user the flow was run for
+     */
+    public static void invalidate(String flowName, String user) {
+        states.remove(getKey(Configuration.getEnvironmentName(), user, flowName));
+    }
+
+    /**
+     * Drops all captured states
+     */
+    public static void clear() {
+        states.clear();
+        appliedStates.clear();
+    }
+
+    /**
+     * Runs setup flow and captures resulting state. Should be called holding the lock of the key
+     *
+     * @param driver WebDriver object to run flow in
+     * @param key    cache key of the state
+     * @param flow   setup flow
+     */
+    private static void runAndCapture(WebDriver driver, String key, SetupFlow flow) {
+        Logger.info(LogLevels.LEVEL_6, "SessionStateCache", "Running setup flow " + key);
+        SessionState.SiteRecorder visitedSites = new SessionState.SiteRecorder();
+        flow.run(new EventFiringWebDriver(driver).register(visitedSites));
+        SessionState state = SessionState.capture(driver, visitedSites, timeToLive);
+        states.put(key, state);
+        appliedStates.put(driver, state);
+        FrameworkMetrics.SESSION_STATES_CAPTURED.increment();
+    }
+
+    private static Object getLock(String key) {
+        Object lock = locks.get(key);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = locks.putIfAbsent(key, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    static String getKey(String environment, String user, String flowName) {
+        return (environment == null ? "" : environment) + "/" + user + "/" + flowName;
+    }
+}
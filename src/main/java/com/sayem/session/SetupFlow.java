@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.session;
+
+import org.openqa.selenium.WebDriver;
+
+/**
+ * Setup flow which brings browser to the state tests start from, for example logs user in through login pages.
+ * Cookies and local storage left by the flow on every site it visited are captured by {@link SessionStateCache} and injected into
+ * other browsers, so flow runs only once per environment and user until captured state expires.
+ */
+public interface SetupFlow {
+
+    /**
+     * Runs setup flow in given browser
+     *
+     * @param driver WebDriver object flow should be run in
+     */
+    public void run(WebDriver driver);
+}
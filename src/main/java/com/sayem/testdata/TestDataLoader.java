@@ -17,19 +17,42 @@
 package com.sayem.testdata;
 
 import com.google.common.base.Strings;
+import com.google.common.io.InputSupplier;
 import com.sayem.configuration.Configuration;
 import com.sayem.logger.LogLevels;
 import com.sayem.logger.Logger;
+import com.sayem.monitoring.CacheStatistics;
+import com.sayem.monitoring.FrameworkMetrics;
+import com.sayem.resources.ResourceIndex;
+import com.sayem.tracing.FlightRecorderEvents;
+import com.sayem.tracing.TraceRecorder;
 import com.thoughtworks.xstream.XStream;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.io.ByteStreams.toByteArray;
 
 public abstract class TestDataLoader {
 
     public static final String TEST_DATA_FOLDER_NAME = "testdata";
     public static final String DEFAULT_TEST_DATASET_NAME = "default";
 
+    //XStream is thread-safe once configured and expensive to create, so one instance is shared by all loads
+    private static final XStream xStream = new XStream();
+
+    //Raw content of test datasets. Test data objects are deserialized on every load as tests may modify them
+    private static final ConcurrentMap<String, byte[]> testDataCache = new ConcurrentHashMap<String, byte[]>();
+    private static final CacheStatistics cacheStatistics = new CacheStatistics(testDataCache);
+
+    static {
+        FrameworkMetrics.registerMBean(cacheStatistics, "type=Cache,name=TestDataLoader");
+    }
+
     /**
      * Loads test data for given test class and given test dataset name.
      *
@@ -39,15 +62,18 @@ public abstract class TestDataLoader {
      * @throws InstantiationError if test data can not be loaded
      */
     public static Object loadTestData(Class testClass, String dataSetName) throws InstantiationError {
+        long startTime = System.nanoTime();
+        Object event = FlightRecorderEvents.begin(FlightRecorderEvents.DATASET_LOAD);
         try {
-            InputStream inputStream = testClass.getResourceAsStream(TEST_DATA_FOLDER_NAME + File.separator + dataSetName + ".xml");
-            XStream xStream = new XStream();
-            return xStream.fromXML(inputStream);
+            return xStream.fromXML(new ByteArrayInputStream(getTestDataContent(testClass, dataSetName)));
         } catch (Exception e) {
             String message = "Can't load test data for \"" + testClass.getSimpleName() + "\" test from \"" + dataSetName + "\" test dataset.\n" +
                     "Error: " + e.toString();
             Logger.error(LogLevels.LEVEL_1, "TestDataLoader", message);
             throw new InstantiationError(message);
+        } finally {
+            TraceRecorder.record("TestDataLoader.loadTestData", "testdata", startTime, dataSetName);
+            FlightRecorderEvents.commit(event, testClass.getName(), null, null, dataSetName);
         }
     }
 
@@ -66,4 +92,37 @@ public abstract class TestDataLoader {
             return loadTestData(testClass, testDataSetName);
         }
     }
+
+    /**
+     * Retrieves statistics of test data cache
+     *
+     * @return CacheStatistics of test data cache
+     */
+    public static CacheStatistics getCacheStatistics() {
+        return cacheStatistics;
+    }
+
+    /**
+     * Retrieves raw content of test dataset. Dataset file is read only once, for all subsequent calls content stored in memory will be returned.
+     *
+     * @param testClass   class of a test for which to load test data
+     * @param dataSetName name of test dataset file without .xml extension
+     * @return byte array with test dataset content
+     * @throws IOException if test dataset can not be read
+     */
+    private static byte[] getTestDataContent(Class testClass, String dataSetName) throws IOException {
+        String key = testClass.getName() + ":" + dataSetName;
+        byte[] content = testDataCache.get(key);
+        if (content != null) {
+            cacheStatistics.recordHit();
+            return content;
+        }
+
+        cacheStatistics.recordMiss();
+        InputSupplier<InputStream> testDataSource = ResourceIndex.getResource(testClass, TEST_DATA_FOLDER_NAME + "/" + dataSetName + ".xml");
+        checkNotNull(testDataSource, "Test dataset file is not found");
+        content = toByteArray(testDataSource);
+        testDataCache.putIfAbsent(key, content);
+        return content;
+    }
 }
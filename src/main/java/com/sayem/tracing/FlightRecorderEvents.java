@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.tracing;
+
+import com.sayem.logger.LogLevels;
+import com.sayem.logger.Logger;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Emits JDK Flight Recorder events for framework operations, so page instantiation, navigation, verification,
+ * locator resolution, test data loading and WebDriver lifecycle can be correlated with GC pauses and CPU usage in JFR recordings.
+ * <p/>
+ * Framework is compiled for Java 7, so event types are defined at runtime through jdk.jfr.EventFactory using reflection.
+ * On JVMs without Flight Recorder events are not emitted at all. Event types are registered only when first recording starts
+ * and while nothing is recorded {@link #begin(int)} costs one volatile read.
+ * <p/>
+ * Usage:
+ * <pre>
+ * Object event = FlightRecorderEvents.begin(FlightRecorderEvents.NAVIGATION);
+ * ... operation ...
+ * FlightRecorderEvents.commit(event, pageClassName, url, null, null);
+ * </pre>
+ */
+public abstract class FlightRecorderEvents {
+
+    public static final int PAGE_INSTANTIATION = 0;
+    public static final int NAVIGATION = 1;
+    public static final int VERIFICATION = 2;
+    public static final int LOCATOR_RESOLUTION = 3;
+    public static final int DATASET_LOAD = 4;
+    public static final int DRIVER_CREATION = 5;
+    public static final int DRIVER_TEARDOWN = 6;
+
+    private static final String[] EVENT_NAMES = {"PageInstantiation", "Navigation", "Verification",
+            "LocatorResolution", "DatasetLoad", "DriverCreation", "DriverTeardown"};
+    private static final String[] EVENT_LABELS = {"Page Instantiation", "Navigation", "Verification",
+            "Locator Resolution", "Dataset Load", "Driver Creation", "Driver Teardown"};
+    private static final String[] FIELD_NAMES = {"className", "url", "locatorName", "datasetName"};
+    private static final String[] FIELD_LABELS = {"Class", "URL", "Locator Name", "Dataset Name"};
+    private static final String EVENT_NAME_PREFIX = "com.sayem.";
+    private static final String EVENT_CATEGORY = "Test Automation Framework";
+
+    //True while at least one Flight Recorder recording is running
+    private static volatile boolean recording;
+    private static volatile boolean available;
+
+    private static Object[] eventFactories;
+    private static Method newEventMethod;
+    private static Method getEventTypeMethod;
+    private static Method isEnabledMethod;
+    private static Method beginMethod;
+    private static Method setMethod;
+    private static Method commitMethod;
+
+    static {
+        try {
+            Class<?> flightRecorderClass = Class.forName("jdk.jfr.FlightRecorder");
+            Class<?> listenerClass = Class.forName("jdk.jfr.FlightRecorderListener");
+            Object listener = Proxy.newProxyInstance(FlightRecorderEvents.class.getClassLoader(),
+                    new Class[]{listenerClass}, new RecordingStateHandler());
+            available = true;
+            flightRecorderClass.getMethod("addListener", listenerClass).invoke(null, listener);
+        } catch (ClassNotFoundException e) {
+            //Flight Recorder is not available in this JVM, events will not be emitted
+            available = false;
+        } catch (Exception e) {
+            available = false;
+            Logger.error(LogLevels.LEVEL_3, "FlightRecorderEvents", "Can't listen to Flight Recorder state: " + e.toString());
+        }
+    }
+
+    /**
+     * Starts timing of framework operation event
+     *
+     * @param eventType one of event type constants
+     * @return event object which should be passed to {@link #commit}, or null if event is not recorded
+     */
+    public static Object begin(int eventType) {
+        if (!recording) {
+            return null;
+        }
+        try {
+            Object factory = eventFactories[eventType];
+            if (!(Boolean) isEnabledMethod.invoke(getEventTypeMethod.invoke(factory))) {
+                return null;
+            }
+            Object event = newEventMethod.invoke(factory);
+            beginMethod.invoke(event);
+            return event;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Ends timing of framework operation event and commits it to Flight Recorder
+     *
+     * @param event       event object returned by {@link #begin(int)}, if null nothing is done
+     * @param className   page, page module or test class name, can be null
+     * @param url         page URL, can be null
+     * @param locatorName element locator name, can be null
+     * @param datasetName test dataset name, can be null
+     */
+    public static void commit(Object event, String className, String url, String locatorName, String datasetName) {
+        if (event == null) {
+            return;
+        }
+        try {
+            setMethod.invoke(event, 0, className);
+            setMethod.invoke(event, 1, url);
+            setMethod.invoke(event, 2, locatorName);
+            setMethod.invoke(event, 3, datasetName);
+            commitMethod.invoke(event);
+        } catch (Exception e) {
+            //Losing an event shouldn't affect the test
+        }
+    }
+
+    /**
+     * Checks whether at least one Flight Recorder recording is running and registers framework event types when first recording starts
+     */
+    private static synchronized void updateRecordingState() {
+        try {
+            Class<?> flightRecorderClass = Class.forName("jdk.jfr.FlightRecorder");
+            Object flightRecorder = flightRecorderClass.getMethod("getFlightRecorder").invoke(null);
+            List<?> recordings = (List<?>) flightRecorderClass.getMethod("getRecordings").invoke(flightRecorder);
+            boolean running = false;
+            for (Object recording : recordings) {
+                Object state = recording.getClass().getMethod("getState").invoke(recording);
+                if ("RUNNING".equals(state.toString())) {
+                    running = true;
+                }
+            }
+            if (running && eventFactories == null) {
+                registerEventTypes();
+            }
+            recording = running && available;
+        } catch (Exception e) {
+            available = false;
+            recording = false;
+            Logger.error(LogLevels.LEVEL_3, "FlightRecorderEvents", "Can't register Flight Recorder events: " + e.toString());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void registerEventTypes() throws Exception {
+        Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+        Class<?> eventClass = Class.forName("jdk.jfr.Event");
+        Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType");
+        Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+        Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+        Class<? extends Annotation> nameClass = (Class<? extends Annotation>) Class.forName("jdk.jfr.Name");
+        Class<? extends Annotation> labelClass = (Class<? extends Annotation>) Class.forName("jdk.jfr.Label");
+        Class<? extends Annotation> categoryClass = (Class<? extends Annotation>) Class.forName("jdk.jfr.Category");
+
+        Constructor<?> annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+        Constructor<?> valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+
+        Object[] fields = new Object[FIELD_NAMES.length];
+        for (int i = 0; i < FIELD_NAMES.length; i++) {
+            fields[i] = valueDescriptor.newInstance(String.class, FIELD_NAMES[i],
+                    Arrays.asList(annotationElement.newInstance(labelClass, FIELD_LABELS[i])));
+        }
+
+        Method create = eventFactoryClass.getMethod("create", List.class, List.class);
+        Object[] factories = new Object[EVENT_NAMES.length];
+        for (int i = 0; i < EVENT_NAMES.length; i++) {
+            List<Object> annotations = Arrays.asList(
+                    annotationElement.newInstance(nameClass, EVENT_NAME_PREFIX + EVENT_NAMES[i]),
+                    annotationElement.newInstance(labelClass, EVENT_LABELS[i]),
+                    annotationElement.newInstance(categoryClass, new String[]{EVENT_CATEGORY}));
+            factories[i] = create.invoke(null, annotations, Arrays.asList(fields));
+        }
+
+        newEventMethod = eventFactoryClass.getMethod("newEvent");
+        getEventTypeMethod = eventFactoryClass.getMethod("getEventType");
+        isEnabledMethod = eventTypeClass.getMethod("isEnabled");
+        beginMethod = eventClass.getMethod("begin");
+        setMethod = eventClass.getMethod("set", int.class, Object.class);
+        commitMethod = eventClass.getMethod("commit");
+        eventFactories = factories;
+    }
+
+    /**
+     * Implementation of jdk.jfr.FlightRecorderListener which tracks whether anything is being recorded
+     */
+    private static class RecordingStateHandler implements InvocationHandler {
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                } else if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                return "FlightRecorderEvents listener";
+            }
+            updateRecordingState();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.tracing;
+
+/**
+ * Fixed size buffer of recorded spans which belongs to one thread. All arrays are allocated upfront,
+ * so recording a span only stores references and numbers. Spans which don't fit into the buffer are dropped and counted.
+ * Buffer is filled by its owner thread and drained by thread which writes the trace, both under the lock of the buffer.
+ * Lock is uncontended until trace is written, so it doesn't slow recording down.
+ */
+class SpanBuffer {
+
+    private final long threadId;
+    private final String threadName;
+    private final String[] names;
+    private final String[] categories;
+    private final String[] details;
+    private final long[] startTimes;
+    private final long[] endTimes;
+    private int size;
+    private long droppedSpans;
+
+    SpanBuffer(Thread thread, int capacity) {
+        this(thread.getId(), thread.getName(), capacity);
+    }
+
+    private SpanBuffer(long threadId, String threadName, int capacity) {
+        this.threadId = threadId;
+        this.threadName = threadName;
+        names = new String[capacity];
+        categories = new String[capacity];
+        details = new String[capacity];
+        startTimes = new long[capacity];
+        endTimes = new long[capacity];
+    }
+
+    synchronized void add(String name, String category, long startTime, long endTime, String detail) {
+        if (size == names.length) {
+            droppedSpans++;
+            return;
+        }
+        names[size] = name;
+        categories[size] = category;
+        details[size] = detail;
+        startTimes[size] = startTime;
+        endTimes[size] = endTime;
+        size++;
+    }
+
+    /**
+     * Moves recorded spans into new buffer, which is not shared with other threads.
+     * This buffer is cleared, so owner thread can go on recording.
+     *
+     * @return buffer with spans recorded so far
+     */
+    synchronized SpanBuffer drain() {
+        SpanBuffer copy = new SpanBuffer(threadId, threadName, size);
+        System.arraycopy(names, 0, copy.names, 0, size);
+        System.arraycopy(categories, 0, copy.categories, 0, size);
+        System.arraycopy(details, 0, copy.details, 0, size);
+        System.arraycopy(startTimes, 0, copy.startTimes, 0, size);
+        System.arraycopy(endTimes, 0, copy.endTimes, 0, size);
+        copy.size = size;
+        copy.droppedSpans = droppedSpans;
+        clear();
+        return copy;
+    }
+
+    private void clear() {
+        for (int i = 0; i < size; i++) {
+            names[i] = null;
+            categories[i] = null;
+            details[i] = null;
+        }
+        size = 0;
+        droppedSpans = 0;
+    }
+
+    long getThreadId() {
+        return threadId;
+    }
+
+    String getThreadName() {
+        return threadName;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getDroppedSpans() {
+        return droppedSpans;
+    }
+
+    String getName(int index) {
+        return names[index];
+    }
+
+    String getCategory(int index) {
+        return categories[index];
+    }
+
+    String getDetail(int index) {
+        return details[index];
+    }
+
+    long getStartTime(int index) {
+        return startTimes[index];
+    }
+
+    long getEndTime(int index) {
+        return endTimes[index];
+    }
+}
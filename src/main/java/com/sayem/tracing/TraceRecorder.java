@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.tracing;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.sayem.configuration.Configuration;
+import com.sayem.enums.TraceMode;
+import com.sayem.logger.LogLevels;
+import com.sayem.logger.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.sayem.helpers.StringHelper.toJsonString;
+import static java.util.Collections.singletonList;
+
+/**
+ * Records timeline of framework operations like fixture setup, driver acquisition, navigation and element lookups
+ * and writes it as Chrome trace-event JSON, which can be opened in chrome://tracing.
+ * Spans are stored in preallocated per-thread buffers, so recording doesn't allocate memory and doesn't slow tests down.
+ * <p/>
+ * Usage:
+ * <pre>
+ * long startTime = System.nanoTime();
+ * ... operation ...
+ * TraceRecorder.record("navigate", "navigation", startTime, url);
+ * </pre>
+ */
+public abstract class TraceRecorder {
+
+    public static final String TRACES_FOLDER_NAME = "traces";
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    private static volatile TraceMode traceMode = TraceMode.OFF;
+    private static volatile int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    //Origin of trace timeline, all timestamps are written relative to it
+    private static final long originTime = System.nanoTime();
+    private static final List<SpanBuffer> allBuffers = new CopyOnWriteArrayList<SpanBuffer>();
+    private static final ThreadLocal<SpanBuffer> threadBuffer = new ThreadLocal<SpanBuffer>() {
+        @Override
+        protected SpanBuffer initialValue() {
+            SpanBuffer buffer = new SpanBuffer(Thread.currentThread(), bufferSize);
+            allBuffers.add(buffer);
+            return buffer;
+        }
+    };
+
+    /**
+     * Sets how timeline should be recorded
+     *
+     * @param mode       TraceMode, OFF disables recording
+     * @param bufferSize maximum number of spans stored per thread, applied to threads which haven't recorded spans yet
+     */
+    public static void configure(TraceMode mode, int bufferSize) {
+        TraceRecorder.bufferSize = bufferSize;
+        traceMode = mode;
+    }
+
+    /**
+     * Checks whether timeline is being recorded
+     *
+     * @return true if recording is enabled
+     */
+    public static boolean isEnabled() {
+        return traceMode != TraceMode.OFF;
+    }
+
+    /**
+     * Records span which started at given time and ends now. Does nothing if recording is disabled.
+     *
+     * @param name      name of the operation
+     * @param category  category of the operation, for example navigation or driver
+     * @param startTime operation start time obtained from System.nanoTime()
+     * @param detail    optional details like URL or element name, can be null
+     */
+    public static void record(String name, String category, long startTime, String detail) {
+        if (traceMode == TraceMode.OFF) {
+            return;
+        }
+        threadBuffer.get().add(name, category, startTime, System.nanoTime(), detail);
+    }
+
+    /**
+     * Writes spans recorded by current thread into separate timeline file for given test, if timeline is recorded per test.
+     * Written spans are removed from the buffer.
+     *
+     * @param testName name of the test, used as file name
+     */
+    public static void writeTestTrace(String testName) {
+        if (traceMode != TraceMode.TEST) {
+            return;
+        }
+        write(testName, singletonList(threadBuffer.get().drain()));
+    }
+
+    /**
+     * Writes spans recorded by all threads into one timeline file for given suite, if timeline is recorded per suite.
+     * Written spans are removed from the buffers, other threads can go on recording meanwhile.
+     *
+     * @param suiteName name of the suite, used as file name
+     */
+    public static void writeSuiteTrace(String suiteName) {
+        if (traceMode != TraceMode.SUITE) {
+            return;
+        }
+        List<SpanBuffer> drainedBuffers = new ArrayList<SpanBuffer>(allBuffers.size());
+        for (SpanBuffer buffer : allBuffers) {
+            drainedBuffers.add(buffer.drain());
+        }
+        write(suiteName, drainedBuffers);
+    }
+
+    private static void write(String name, List<SpanBuffer> buffers) {
+        File traceFile = new File(new File(Configuration.getTestResultsDirectory(), TRACES_FOLDER_NAME), name + ".json");
+        try {
+            Files.createParentDirs(traceFile);
+            Files.write(toJson(buffers), traceFile, Charsets.UTF_8);
+        } catch (IOException e) {
+            Logger.error(LogLevels.LEVEL_3, "TraceRecorder", "Can't write trace " + traceFile + ": " + e.toString());
+        }
+    }
+
+    private static String toJson(List<SpanBuffer> buffers) {
+        StringBuilder json = new StringBuilder("{\"traceEvents\":[");
+        boolean first = true;
+        for (SpanBuffer buffer : buffers) {
+            if (buffer.size() == 0) {
+                continue;
+            }
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(buffer.getThreadId())
+                    .append(",\"args\":{\"name\":");
+            json.append(toJsonString(buffer.getThreadName()));
+            json.append(",\"droppedSpans\":").append(buffer.getDroppedSpans()).append("}}");
+
+            for (int i = 0; i < buffer.size(); i++) {
+                json.append(",\n{\"name\":");
+                json.append(toJsonString(buffer.getName(i)));
+                json.append(",\"cat\":");
+                json.append(toJsonString(buffer.getCategory(i)));
+                json.append(",\"ph\":\"X\",\"pid\":1,\"tid\":").append(buffer.getThreadId())
+                        .append(",\"ts\":").append(toMicros(buffer.getStartTime(i) - originTime))
+                        .append(",\"dur\":").append(toMicros(buffer.getEndTime(i) - buffer.getStartTime(i)));
+                if (buffer.getDetail(i) != null) {
+                    json.append(",\"args\":{\"detail\":");
+                    json.append(toJsonString(buffer.getDetail(i)));
+                    json.append('}');
+                }
+                json.append('}');
+            }
+        }
+        return json.append("\n]}\n").toString();
+    }
+
+    private static String toMicros(long nanos) {
+        nanos = Math.max(nanos, 0);
+        return String.valueOf(nanos / 1000) + '.' + String.format("%03d", nanos % 1000);
+    }
+}
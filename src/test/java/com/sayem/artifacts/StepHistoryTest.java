@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.artifacts;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.sayem.configuration.Configuration;
+import com.sayem.exceptions.NavigationException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Properties;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StepHistoryTest {
+
+    private static final String TEST_NAME = "StepHistoryTest.test";
+    private static final long WRITE_TIMEOUT = 10;
+
+    private final File historyFile = new File(new File(Configuration.getTestResultsDirectory(),
+            StepHistory.FAILURES_FOLDER_NAME), TEST_NAME + ".json");
+
+    @Test
+    public void testFailureIsWrittenWithHistory() throws Exception {
+        StepHistory.configure(10, false);
+        StepHistory.startTest(TEST_NAME);
+        StepHistory.record(StepHistory.NAVIGATE_ACTION, "LoginPage", "http://example.com/login", null, null, null);
+        StepHistory.recordFailure("NavigationException: Wrong page is opened");
+        StepHistory.endTest(true);
+        ArtifactWriter.awaitPendingWrites(WRITE_TIMEOUT);
+
+        String history = Files.toString(historyFile, Charsets.UTF_8);
+        assertThat(history, containsString("NavigationException: Wrong page is opened"));
+        assertThat(history, containsString("http://example.com/login"));
+    }
+
+    @Test
+    public void testCaughtExceptionIsNotRecorded() throws Exception {
+        StepHistory.configure(10, false);
+        StepHistory.startTest(TEST_NAME);
+        StepHistory.record(StepHistory.NAVIGATE_ACTION, "LoginPage", "http://example.com/login", null, null, null);
+        try {
+            throw new NavigationException("Expected by test");
+        } catch (NavigationException e) {
+            //Test recovers from exception
+        }
+        StepHistory.endTest(true);
+        ArtifactWriter.awaitPendingWrites(WRITE_TIMEOUT);
+
+        assertThat(Files.toString(historyFile, Charsets.UTF_8).contains("Expected by test"), is(false));
+    }
+
+    @Test(expected = InstantiationError.class)
+    public void testNegativeSizeIsRejected() {
+        Properties configuration = Configuration.getFrameworkConfiguration();
+        String size = configuration.getProperty(Configuration.STEP_HISTORY_SIZE_PROPERTY_NAME);
+        configuration.setProperty(Configuration.STEP_HISTORY_SIZE_PROPERTY_NAME, "-1");
+        try {
+            Configuration.configure();
+        } finally {
+            configuration.setProperty(Configuration.STEP_HISTORY_SIZE_PROPERTY_NAME, size);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        StepHistory.configure(StepHistory.DEFAULT_SIZE, false);
+        historyFile.delete();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.drivers;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class DriverRecorderTest {
+
+    private static final String TEST_NAME = "DriverRecorderTest.testReplay";
+    private static final List<String> PARALLEL_TEST_NAMES = Arrays.asList(
+            "DriverRecorderTest.testParallelTestsHaveOwnLogs1", "DriverRecorderTest.testParallelTestsHaveOwnLogs2");
+
+    @Test
+    public void testReplay() {
+        DriverRecorder.configure(true, false);
+        DriverRecorder.startTest(TEST_NAME);
+        WebDriver recordedDriver = DriverRecorder.record(createDriver());
+        assertThat(recordedDriver, is(instanceOf(JavascriptExecutor.class)));
+        exercise(recordedDriver);
+        DriverRecorder.endTest();
+
+        DriverRecorder.configure(false, true);
+        DriverRecorder.startTest(TEST_NAME);
+        WebDriver replayedDriver = DriverRecorder.replay();
+        exercise(replayedDriver);
+        try {
+            replayedDriver.findElement(By.id("unrecorded"));
+            fail("Lookup which wasn't recorded should fail");
+        } catch (WebDriverException e) {
+            assertThat(e, is(not(instanceOf(NoSuchElementException.class))));
+        }
+        DriverRecorder.endTest();
+    }
+
+    @Test
+    public void testParallelTestsHaveOwnLogs() throws Exception {
+        DriverRecorder.configure(true, false);
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (final String name : PARALLEL_TEST_NAMES) {
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        DriverRecorder.startTest(name);
+                        exercise(DriverRecorder.record(createDriver()));
+                        DriverRecorder.endTest();
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(errors.isEmpty(), is(true));
+
+        DriverRecorder.configure(false, true);
+        for (String name : PARALLEL_TEST_NAMES) {
+            DriverRecorder.startTest(name);
+            exercise(DriverRecorder.replay());
+            DriverRecorder.endTest();
+        }
+    }
+
+    private static void exercise(WebDriver driver) {
+        assertThat(driver.getTitle(), is(equalTo("Login")));
+        WebElement element = driver.findElement(By.id("user"));
+        assertThat(element.getText(), is(equalTo("User name")));
+        List<?> result = (List<?>) ((JavascriptExecutor) driver).executeScript("return [arguments[0], 1]", element);
+        assertThat(result.get(0), is(instanceOf(WebElement.class)));
+        assertThat(result.get(1), is(equalTo((Object) 1L)));
+        try {
+            driver.findElement(By.id("missing"));
+            fail("Recorded exception should be thrown");
+        } catch (NoSuchElementException e) {
+            //Expected
+        }
+    }
+
+    private static WebDriver createDriver() {
+        final WebElement element = (WebElement) Proxy.newProxyInstance(DriverRecorderTest.class.getClassLoader(),
+                new Class<?>[]{WebElement.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("equals")) {
+                            return proxy == args[0];
+                        }
+                        return method.getName().equals("getText") ? "User name" : null;
+                    }
+                });
+        return (WebDriver) Proxy.newProxyInstance(DriverRecorderTest.class.getClassLoader(),
+                new Class<?>[]{WebDriver.class, JavascriptExecutor.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getTitle")) {
+                            return "Login";
+                        }
+                        if (method.getName().equals("findElement")) {
+                            if (args[0].toString().contains("missing")) {
+                                throw new NoSuchElementException("Unable to locate element");
+                            }
+                            return element;
+                        }
+                        if (method.getName().equals("executeScript")) {
+                            List<Object> result = Arrays.<Object>asList(((Object[]) args[1])[0], 1L);
+                            return result;
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() {
+        DriverRecorder.configure(false, false);
+    }
+}
@@ -21,9 +21,11 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
 
 import static com.sayem.matchers.FileMatchers.exists;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
@@ -35,6 +37,8 @@ import static org.junit.Assert.fail;
 public class FileHelperTest {
     private static final String ORIGINAL_FILE_NAME = "SampleFile.txt";
     private static final String BACKUP_FILE_NAME = "SampleFile.txt.bak";
+    private static final String ORIGINAL_DIRECTORY_NAME = "SampleDirectory";
+    private static final String BACKUP_DIRECTORY_NAME = "SampleDirectory.bak";
 
     @Before
     public void setUp() {
@@ -105,7 +109,61 @@ public class FileHelperTest {
             assertThat("Backup file was missing before restore now exists", new File(BACKUP_FILE_NAME), not(exists()));
         }
     }
+    @Test
+    public void testDirectoryBackupAndRestore() throws Exception {
+        createDirectory();
+
+        FileHelper.backUpDirectory(ORIGINAL_DIRECTORY_NAME);
+        new File(ORIGINAL_DIRECTORY_NAME, "nested/file.txt").delete();
+        new File(ORIGINAL_DIRECTORY_NAME, "added.txt").createNewFile();
+        FileHelper.restoreDirectory(ORIGINAL_DIRECTORY_NAME);
+
+        assertThat("Directory restore doesn't work", new File(ORIGINAL_DIRECTORY_NAME, "nested/file.txt"), exists());
+        assertThat("File added after backup was not removed by restore", new File(ORIGINAL_DIRECTORY_NAME, "added.txt"), not(exists()));
+        assertThat("Backup directory was not renamed on restore", new File(BACKUP_DIRECTORY_NAME), not(exists()));
+    }
+
+    @Test
+    public void testLinkedDirectoryBackupAndRestore() throws Exception {
+        createDirectory();
+
+        FileHelper.backUpDirectory(ORIGINAL_DIRECTORY_NAME, true);
+        new File(ORIGINAL_DIRECTORY_NAME, "nested/file.txt").delete();
+        FileHelper.restoreDirectory(ORIGINAL_DIRECTORY_NAME);
+
+        assertThat("Directory restore doesn't work", new File(ORIGINAL_DIRECTORY_NAME, "nested/file.txt"), exists());
+    }
+
+    @Test
+    public void testDirectoryRestoreWithoutBackup() throws Exception {
+        createDirectory();
+        try {
+            FileHelper.restoreDirectory(ORIGINAL_DIRECTORY_NAME);
+            fail("Exception not thrown when trying to restore directory without backup");
+        } catch (IOException e) {
+            assertThat("Directory was removed by failed restore", new File(ORIGINAL_DIRECTORY_NAME, "nested/file.txt"), exists());
+        }
+    }
 
+    @Test
+    public void testDirectoryRestoreDeletesDiscardedDirectories() throws Exception {
+        createDirectory();
+        File leftover = new File(ORIGINAL_DIRECTORY_NAME + ".discarded123");
+        new File(leftover, "nested").mkdirs();
+        new File(leftover, "nested/file.txt").createNewFile();
+
+        FileHelper.backUpDirectory(ORIGINAL_DIRECTORY_NAME);
+        FileHelper.restoreDirectory(ORIGINAL_DIRECTORY_NAME);
+        FileHelper.awaitPendingDeletes(10);
+
+        assertThat("Directory restore doesn't work", new File(ORIGINAL_DIRECTORY_NAME, "nested/file.txt"), exists());
+        assertThat("Discarded directory left by previous run was not deleted", leftover, not(exists()));
+        assertThat("Original directory was not deleted after restore", new File(".").listFiles(new FilenameFilter() {
+            public boolean accept(File directory, String name) {
+                return name.startsWith(ORIGINAL_DIRECTORY_NAME + ".discarded");
+            }
+        }).length, is(0));
+    }
 
     @After
     public void tearDown() {
@@ -116,8 +174,25 @@ public class FileHelperTest {
         try {
             new File(ORIGINAL_FILE_NAME).delete();
             new File(BACKUP_FILE_NAME).delete();
+            deleteDirectory(new File(ORIGINAL_DIRECTORY_NAME));
+            deleteDirectory(new File(BACKUP_DIRECTORY_NAME));
         } catch (Exception e) {
             //Ignore
         }
     }
+
+    private void createDirectory() throws IOException {
+        new File(ORIGINAL_DIRECTORY_NAME, "nested").mkdirs();
+        new File(ORIGINAL_DIRECTORY_NAME, "nested/file.txt").createNewFile();
+    }
+
+    private void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteDirectory(file);
+            }
+        }
+        directory.delete();
+    }
 }
@@ -19,6 +19,7 @@ package com.sayem.helpers;
 import org.junit.Test;
 
 import static com.sayem.helpers.StringHelper.humanize;
+import static com.sayem.helpers.StringHelper.toJsonString;
 import static com.sayem.helpers.StringHelper.toCamelCase;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
@@ -45,4 +46,12 @@ public class StringHelperTest {
 
 
     }
+
+    @Test
+    public void testToJsonString() throws Exception {
+        String errorMessage = "Can't convert string to JSON string literal";
+        assertThat(errorMessage, toJsonString("text"), is(equalTo("\"text\"")));
+        assertThat(errorMessage, toJsonString("say \"hi\"\n"), is(equalTo("\"say \\\"hi\\\"\\n\"")));
+        assertThat(errorMessage, toJsonString("C:\\tmp"), is(equalTo("\"C:\\\\tmp\"")));
+    }
 }
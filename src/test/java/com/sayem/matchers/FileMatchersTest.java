@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.matchers;
+
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.hamcrest.TypeSafeMatcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.sayem.matchers.FileMatchers.allFilesMatch;
+import static com.sayem.matchers.FileMatchers.allOf;
+import static com.sayem.matchers.FileMatchers.containsBytes;
+import static com.sayem.matchers.FileMatchers.exists;
+import static com.sayem.matchers.FileMatchers.hasChecksum;
+import static com.sayem.matchers.FileMatchers.hasSameContentAs;
+import static com.sayem.matchers.FileMatchers.isDirectory;
+import static com.sayem.matchers.FileMatchers.isFile;
+import static com.sayem.matchers.FileMatchers.matchesManifest;
+import static com.sayem.matchers.FileMatchers.readable;
+import static com.sayem.matchers.FileMatchers.sized;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class FileMatchersTest {
+    private static final File ACTUAL_FILE = new File("ActualFile.txt");
+    private static final File EXPECTED_FILE = new File("ExpectedFile.txt");
+    private static final File DIRECTORY = new File("SampleTree");
+
+    @Before
+    public void setUp() {
+        deleteFiles();
+    }
+
+    @Test
+    public void testSameContent() throws Exception {
+        write(ACTUAL_FILE, "Sample content of a file");
+        write(EXPECTED_FILE, "Sample content of a file");
+
+        assertThat(ACTUAL_FILE, hasSameContentAs(EXPECTED_FILE));
+    }
+
+    @Test
+    public void testDifferentContentReportsOffset() throws Exception {
+        write(ACTUAL_FILE, "Sample content of a file");
+        write(EXPECTED_FILE, "Sample content of a fila");
+
+        assertThat(ACTUAL_FILE, not(hasSameContentAs(EXPECTED_FILE)));
+        assertThat(FileContents.firstDifference(ACTUAL_FILE, EXPECTED_FILE), is(23L));
+    }
+
+    @Test
+    public void testPrefixIsNotSameContent() throws Exception {
+        write(ACTUAL_FILE, "Sample");
+        write(EXPECTED_FILE, "Sample content");
+
+        assertThat(ACTUAL_FILE, not(hasSameContentAs(EXPECTED_FILE)));
+        assertThat(FileContents.firstDifference(ACTUAL_FILE, EXPECTED_FILE), is(6L));
+    }
+
+    @Test
+    public void testChecksum() throws Exception {
+        write(ACTUAL_FILE, "abc");
+
+        assertThat(ACTUAL_FILE, hasChecksum("MD5", "900150983cd24fb0d6963f7d28e17f72"));
+        assertThat(ACTUAL_FILE, not(hasChecksum("SHA-1", "900150983cd24fb0d6963f7d28e17f72")));
+    }
+
+    @Test
+    public void testContainsBytes() throws Exception {
+        write(ACTUAL_FILE, "aababcabcd");
+
+        assertThat(ACTUAL_FILE, containsBytes("abcd".getBytes("UTF-8")));
+        assertThat(ACTUAL_FILE, not(containsBytes("abce".getBytes("UTF-8"))));
+        assertThat(FileContents.indexOf(ACTUAL_FILE, "abcd".getBytes("UTF-8")), is(6L));
+    }
+
+    @Test
+    public void testContentSpanningBuffers() throws Exception {
+        byte[] actual = new byte[FileContents.BUFFER_SIZE + 10];
+        byte[] expected = new byte[actual.length];
+        System.arraycopy("abcd".getBytes("UTF-8"), 0, actual, FileContents.BUFFER_SIZE - 2, 4);
+        System.arraycopy("abcd".getBytes("UTF-8"), 0, expected, FileContents.BUFFER_SIZE - 2, 4);
+        expected[FileContents.BUFFER_SIZE + 3] = 1;
+        write(ACTUAL_FILE, actual);
+        write(EXPECTED_FILE, expected);
+
+        assertThat(FileContents.indexOf(ACTUAL_FILE, "abcd".getBytes("UTF-8")), is((long) FileContents.BUFFER_SIZE - 2));
+        assertThat(FileContents.firstDifference(ACTUAL_FILE, EXPECTED_FILE), is((long) FileContents.BUFFER_SIZE + 3));
+    }
+
+    @Test
+    public void testComparedFilesCanBeDeleted() throws Exception {
+        write(ACTUAL_FILE, "Sample content of a file");
+        write(EXPECTED_FILE, "Sample content of a file");
+
+        assertThat(ACTUAL_FILE, hasSameContentAs(EXPECTED_FILE));
+        assertThat(ACTUAL_FILE, hasChecksum("MD5", FileContents.digest(EXPECTED_FILE, "MD5")));
+        //Files stay locked on Windows while they are open or mapped
+        assertThat(ACTUAL_FILE.delete() && EXPECTED_FILE.delete(), is(true));
+    }
+
+    @Test
+    public void testMissingFileIsReported() throws Exception {
+        write(EXPECTED_FILE, "Sample");
+
+        Matcher<File> matcher = hasSameContentAs(EXPECTED_FILE);
+        matcher.matches(ACTUAL_FILE);
+        StringDescription description = new StringDescription();
+        matcher.describeTo(description);
+        assertThat(description.toString(), containsString("can't be read"));
+    }
+
+    @Test
+    public void testManifest() throws Exception {
+        createTree();
+        Map<String, Long> manifest = new HashMap<String, Long>();
+        manifest.put("first.txt", 5L);
+        manifest.put("nested/second.txt", null);
+
+        assertThat(DIRECTORY, matchesManifest(manifest));
+    }
+
+    @Test
+    public void testManifestMismatchesAreAggregated() throws Exception {
+        createTree();
+        Map<String, Long> manifest = new HashMap<String, Long>();
+        manifest.put("first.txt", 4L);
+        manifest.put("missing.txt", null);
+
+        Matcher<File> matcher = matchesManifest(manifest);
+        assertThat(matcher.matches(DIRECTORY), is(false));
+        StringDescription description = new StringDescription();
+        matcher.describeTo(description);
+        assertThat(description.toString(), containsString("first.txt is sized 5, not 4"));
+        assertThat(description.toString(), containsString("missing.txt is missing"));
+        assertThat(description.toString(), containsString("nested/second.txt is not expected"));
+    }
+
+    @Test
+    public void testAllFilesMatch() throws Exception {
+        createTree();
+
+        assertThat(DIRECTORY, allFilesMatch(sized(lessThan(10L))));
+        assertThat(DIRECTORY, not(allFilesMatch(sized(5L))));
+    }
+
+    @Test
+    public void testAllFilesMatchCallsMatcherFromCallingThread() throws Exception {
+        createTree();
+        final Thread callingThread = Thread.currentThread();
+        Matcher<File> matcher = new TypeSafeMatcher<File>() {
+            File fileTested;
+
+            public boolean matchesSafely(File item) {
+                fileTested = item;
+                return Thread.currentThread() == callingThread && item.getName().startsWith("first");
+            }
+
+            public void describeTo(Description description) {
+                description.appendText(fileTested.getName());
+            }
+        };
+        Matcher<File> allFiles = allFilesMatch(matcher);
+
+        assertThat(allFiles.matches(DIRECTORY), is(false));
+        StringDescription description = new StringDescription();
+        allFiles.describeTo(description);
+        assertThat(description.toString(), containsString("\n  second.txt"));
+        assertThat(description.toString(), not(containsString("\n  first.txt")));
+    }
+
+    @Test
+    public void testAllOfSharesSnapshot() throws Exception {
+        write(ACTUAL_FILE, "first");
+
+        assertThat(ACTUAL_FILE, allOf(exists(), isFile(), readable(), sized(5L)));
+        assertThat(ACTUAL_FILE, not(allOf(exists(), isDirectory())));
+        assertThat(EXPECTED_FILE, not(allOf(exists())));
+    }
+
+    @Test
+    public void testSnapshotIsReusedInScope() throws Exception {
+        write(ACTUAL_FILE, "first");
+        boolean scoped = FileSnapshot.beginScope();
+        try {
+            FileSnapshot snapshot = FileSnapshot.of(ACTUAL_FILE);
+            write(ACTUAL_FILE, "changed content");
+
+            assertThat(FileSnapshot.of(ACTUAL_FILE) == snapshot, is(true));
+            assertThat(FileSnapshot.of(ACTUAL_FILE).length(), is(5L));
+        } finally {
+            if (scoped) {
+                FileSnapshot.endScope();
+            }
+        }
+        assertThat(FileSnapshot.of(ACTUAL_FILE).length(), is(15L));
+    }
+
+    @After
+    public void tearDown() {
+        deleteFiles();
+    }
+
+    private void write(File file, String content) throws IOException {
+        write(file, content.getBytes("UTF-8"));
+    }
+
+    private void write(File file, byte[] content) throws IOException {
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(content);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private void createTree() throws IOException {
+        new File(DIRECTORY, "nested").mkdirs();
+        write(new File(DIRECTORY, "first.txt"), "first");
+        write(new File(DIRECTORY, "nested/second.txt"), "second");
+    }
+
+    private void deleteFiles() {
+        ACTUAL_FILE.delete();
+        EXPECTED_FILE.delete();
+        new File(DIRECTORY, "nested/second.txt").delete();
+        new File(DIRECTORY, "nested").delete();
+        new File(DIRECTORY, "first.txt").delete();
+        DIRECTORY.delete();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.monitoring;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ResourceAccountingTest {
+
+    @After
+    public void tearDown() {
+        ResourceAccounting.setEnabled(false);
+    }
+
+    @Test
+    public void testMetricNotAvailableInSampleIsNotAvailableInDifference() {
+        ResourceSample usage = new ResourceSample(ResourceSample.NOT_AVAILABLE, 100, 30).since(
+                new ResourceSample(ResourceSample.NOT_AVAILABLE, 40, 10));
+
+        assertThat("Unsupported CPU time is reported as measured", usage.getCpuTime(), is(equalTo(ResourceSample.NOT_AVAILABLE)));
+        assertThat(usage.getAllocatedBytes(), is(equalTo(60L)));
+        assertThat(usage.getWallTime(), is(equalTo(20L)));
+    }
+
+    @Test
+    public void testFixtureTotalOfMetricNotAvailable() {
+        FixtureResourceUsage fixture = new FixtureResourceUsage("Fixture");
+        fixture.addSetUp(new ResourceSample(ResourceSample.NOT_AVAILABLE, 10, 10));
+        fixture.addTest("test", new ResourceSample(ResourceSample.NOT_AVAILABLE, 20, 10));
+
+        assertThat(fixture.getCpuTime(), is(equalTo(ResourceSample.NOT_AVAILABLE)));
+        assertThat(fixture.getSetUpCpuTime(), is(equalTo(ResourceSample.NOT_AVAILABLE)));
+        assertThat(fixture.getAllocatedBytes(), is(equalTo(30L)));
+    }
+
+    @Test
+    public void testSetUpAndTearDownOnOtherThreadsAreAccounted() throws Exception {
+        ResourceAccounting.setEnabled(true);
+        Thread setUp = new Thread() {
+            public void run() {
+                ResourceAccounting.recordSetUp(SetUpOnOtherThread.class, sampleMillisecondAgo());
+            }
+        };
+        setUp.start();
+        setUp.join();
+
+        ResourceAccounting.startTest(SetUpOnOtherThread.class);
+        ResourceAccounting.endTest(SetUpOnOtherThread.class, "test");
+
+        Thread tearDown = new Thread() {
+            public void run() {
+                ResourceAccounting.recordTearDown(SetUpOnOtherThread.class, sampleMillisecondAgo());
+            }
+        };
+        tearDown.start();
+        tearDown.join();
+
+        FixtureResourceUsage fixture = ResourceAccounting.getFixture(SetUpOnOtherThread.class.getName());
+        assertThat(fixture.getTests().size(), is(equalTo(1)));
+        //Set up and tear down took at least a millisecond each
+        long testWallTime = fixture.getTests().iterator().next().getUsage().getWallTime();
+        assertThat("Set up or tear down is lost", fixture.getWallTime() - testWallTime >= TimeUnit.MILLISECONDS.toNanos(2), is(true));
+    }
+
+    private static ResourceSample sampleMillisecondAgo() {
+        ResourceSample sample = ResourceAccounting.sample();
+        return new ResourceSample(sample.getCpuTime(), sample.getAllocatedBytes(), sample.getWallTime() - TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private static class SetUpOnOtherThread {
+    }
+}
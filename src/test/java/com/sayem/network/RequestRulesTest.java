@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.network;
+
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+
+import static com.google.common.io.Closeables.closeQuietly;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+public class RequestRulesTest {
+
+    private static final String CHARSET = "ISO-8859-1";
+
+    private ServerSocket server;
+    private volatile String receivedHead;
+
+    @After
+    public void tearDown() {
+        RequestRulesProxy.stop();
+        closeQuietly(server);
+    }
+
+    @Test
+    public void testBlockedHosts() {
+        RequestRules rules = RequestRules.parse("*.doubleclick.net, www.google-analytics.com", null);
+
+        assertThat(rules.isBlocked("ad.doubleclick.net"), is(true));
+        assertThat(rules.isBlocked("WWW.Google-Analytics.com"), is(true));
+        assertThat(rules.isBlocked("doubleclick.net.example.com"), is(false));
+        assertThat(rules.isBlocked("google-analytics.com"), is(false));
+    }
+
+    @Test
+    public void testRewrite() {
+        RequestRules rules = RequestRules.parse(null, "http://cdn.example.com/ => http://localhost:8080/static/");
+
+        assertThat(rules.rewrite("http://cdn.example.com/js/app.js"), is(equalTo("http://localhost:8080/static/js/app.js")));
+        assertThat(rules.rewrite("http://example.com/js/app.js"), is(equalTo("http://example.com/js/app.js")));
+    }
+
+    @Test
+    public void testNoRules() {
+        assertThat(RequestRules.parse("", " ").isEmpty(), is(true));
+        assertThat(RequestRules.parse(null, null).isBlocked("example.com"), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIncorrectRewriteRule() {
+        RequestRules.parse(null, "http://cdn.example.com/");
+    }
+
+    @Test
+    public void testWebConnectionBlocksRequests() throws Exception {
+        MockWebConnection network = new MockWebConnection();
+        WebClient client = new WebClient();
+        client.setWebConnection(network);
+        RequestRulesWebConnection connection = new RequestRulesWebConnection(client, RequestRules.parse("*.doubleclick.net", null));
+
+        WebResponse response = connection.getResponse(new WebRequest(new URL("http://ad.doubleclick.net/ad.js")));
+
+        assertThat(response.getStatusCode(), is(204));
+        assertThat(network.getRequestCount(), is(0));
+    }
+
+    @Test
+    public void testWebConnectionRewritesRequests() throws Exception {
+        MockWebConnection network = new MockWebConnection();
+        //Only rewritten URL has response
+        network.setResponse(new URL("http://localhost:8080/static/js/app.js"), "var app;", "application/javascript");
+        WebClient client = new WebClient();
+        client.setWebConnection(network);
+        RequestRulesWebConnection connection = new RequestRulesWebConnection(client,
+                RequestRules.parse(null, "http://cdn.example.com/ => http://localhost:8080/static/"));
+
+        WebResponse response = connection.getResponse(new WebRequest(new URL("http://cdn.example.com/js/app.js")));
+
+        assertThat(response.getContentAsString(), is(equalTo("var app;")));
+        assertThat(response.getWebRequest().getUrl().toString(), is(equalTo("http://cdn.example.com/js/app.js")));
+    }
+
+    @Test
+    public void testProxyBlocksRequests() throws Exception {
+        String proxyAddress = RequestRulesProxy.start(RequestRules.parse("*.doubleclick.net", null)).getAddress();
+
+        String response = send(proxyAddress, "GET http://ad.doubleclick.net/ad.js HTTP/1.1\r\nHost: ad.doubleclick.net\r\n\r\n");
+
+        assertThat(response, startsWith("HTTP/1.1 204 "));
+    }
+
+    @Test
+    public void testProxyRewritesRequests() throws Exception {
+        int port = startServer();
+        String proxyAddress = RequestRulesProxy.start(
+                RequestRules.parse(null, "http://cdn.example.com/ => http://127.0.0.1:" + port + "/static/")).getAddress();
+
+        String response = send(proxyAddress, "GET http://cdn.example.com/js/app.js HTTP/1.1\r\n" +
+                "Host: cdn.example.com\r\nProxy-Connection: keep-alive\r\n\r\n");
+
+        assertThat(response, startsWith("HTTP/1.1 200 OK"));
+        assertThat(response.endsWith("ok"), is(true));
+        assertThat(receivedHead, is(equalTo("GET /static/js/app.js HTTP/1.1\r\n" +
+                "Host: 127.0.0.1:" + port + "\r\nConnection: close\r\n\r\n")));
+    }
+
+    @Test
+    public void testProxyBlocksConnect() throws Exception {
+        String proxyAddress = RequestRulesProxy.start(RequestRules.parse("*.doubleclick.net", null)).getAddress();
+
+        String response = send(proxyAddress, "CONNECT ad.doubleclick.net:443 HTTP/1.1\r\n\r\n");
+
+        assertThat(response, startsWith("HTTP/1.1 403 "));
+    }
+
+    @Test
+    public void testProxyTunnelsConnect() throws Exception {
+        int port = startServer();
+        String proxyAddress = RequestRulesProxy.start(RequestRules.parse("*.doubleclick.net", null)).getAddress();
+
+        Socket socket = openSocket(proxyAddress);
+        try {
+            socket.getOutputStream().write(("CONNECT 127.0.0.1:" + port + " HTTP/1.1\r\n\r\n").getBytes(CHARSET));
+            assertThat(readHead(socket.getInputStream()), is(equalTo("HTTP/1.1 200 Connection established\r\n\r\n")));
+
+            //Bytes sent through tunnel reach server as is
+            String request = "GET /tunnelled HTTP/1.1\r\nHost: secure.example.com\r\n\r\n";
+            socket.getOutputStream().write(request.getBytes(CHARSET));
+            assertThat(readAll(socket.getInputStream()), startsWith("HTTP/1.1 200 OK"));
+            assertThat(receivedHead, is(equalTo(request)));
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Starts server which answers single request with "ok" and remembers request head
+     *
+     * @return port of the server
+     */
+    private int startServer() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                Socket socket = null;
+                try {
+                    socket = server.accept();
+                    receivedHead = readHead(socket.getInputStream());
+                    OutputStream output = socket.getOutputStream();
+                    output.write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\nConnection: close\r\n\r\nok".getBytes(CHARSET));
+                    output.flush();
+                } catch (IOException e) {
+                    //Test fails on missing response
+                } finally {
+                    closeQuietly(socket);
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return server.getLocalPort();
+    }
+
+    private static String send(String proxyAddress, String request) throws IOException {
+        Socket socket = openSocket(proxyAddress);
+        try {
+            socket.getOutputStream().write(request.getBytes(CHARSET));
+            return readAll(socket.getInputStream());
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    private static Socket openSocket(String address) throws IOException {
+        Socket socket = new Socket(address.substring(0, address.indexOf(':')), Integer.parseInt(address.substring(address.indexOf(':') + 1)));
+        socket.setSoTimeout(10000);
+        return socket;
+    }
+
+    private static String readHead(InputStream input) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        while (!head.toString(CHARSET).endsWith("\r\n\r\n")) {
+            int b = input.read();
+            if (b < 0) {
+                throw new IOException("Incomplete head: " + head.toString(CHARSET));
+            }
+            head.write(b);
+        }
+        return head.toString(CHARSET);
+    }
+
+    private static String readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) >= 0) {
+            content.write(buffer, 0, read);
+        }
+        return content.toString(CHARSET);
+    }
+}
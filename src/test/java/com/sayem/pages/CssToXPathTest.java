@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CssToXPathTest {
+
+    @Test
+    public void testSimpleSelectors() {
+        assertThat(CssToXPath.translate("DIV"), is(equalTo("//div")));
+        assertThat(CssToXPath.translate("#main"), is(equalTo("//*[@id='main']")));
+        assertThat(CssToXPath.translate("a[href^='http']"), is(equalTo("//a[starts-with(@href, 'http')]")));
+        assertThat(CssToXPath.translate("li.item"),
+                is(equalTo("//li[contains(concat(' ', normalize-space(@class), ' '), ' item ')]")));
+    }
+
+    @Test
+    public void testCombinators() {
+        assertThat(CssToXPath.translate("form > input"), is(equalTo("//form/input")));
+        assertThat(CssToXPath.translate("table td"), is(equalTo("//table//td")));
+        assertThat(CssToXPath.translate("h1 + p"), is(equalTo("//h1/following-sibling::*[1]/self::p")));
+        assertThat(CssToXPath.translate("h1, h2"), is(equalTo("//h1 | //h2")));
+    }
+
+    @Test
+    public void testLiteralWithQuotes() {
+        assertThat(CssToXPath.literal("it's"), is(equalTo("\"it's\"")));
+        assertThat(CssToXPath.literal("it's \"x\""), is(equalTo("concat('it', \"'\", 's \"x\"')")));
+    }
+
+    @Test
+    public void testStructuralPseudoClasses() {
+        assertThat(CssToXPath.translate("ul > li:nth-of-type(2)"), is(equalTo("//ul/li[count(preceding-sibling::li)=1]")));
+        assertThat(CssToXPath.translate("tr > :last-child"), is(equalTo("//tr/*[not(following-sibling::*)]")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedPseudoClass() {
+        CssToXPath.translate("input:checked");
+    }
+}
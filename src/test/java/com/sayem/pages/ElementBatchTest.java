@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ElementBatchTest {
+
+    private static final String PAGE =
+            "<html><body>" +
+            "<p id='greeting'>  Hello,\n   <b>world</b> </p>" +
+            "<p id='hidden' style='display: none'>Hidden text</p>" +
+            "<div style='display: none'><span id='nested'>Nested hidden text</span></div>" +
+            "</body></html>";
+
+    private final File pageFile = new File("target/ElementBatchTest.html");
+    private final List<String> calls = new ArrayList<String>();
+    private final List<WebDriver> drivers = new ArrayList<WebDriver>();
+
+    @Test
+    public void testScriptAndWebDriverReadTheSameText() throws Exception {
+        Files.createParentDirs(pageFile);
+        Files.write(PAGE, pageFile, Charsets.UTF_8);
+        Map<String, String> readRequests = ImmutableMap.of(
+                "greeting", ElementBatch.TEXT, "hidden", ElementBatch.TEXT, "nested", ElementBatch.TEXT);
+
+        Map<String, List<String>> byScript = createBatch(openPage(true)).read(readRequests);
+        Map<String, List<String>> byWebDriver = createBatch(openPage(false)).read(readRequests);
+
+        assertThat(byScript.get("greeting"), is(equalTo(Arrays.asList("Hello, world"))));
+        assertThat(byScript.get("hidden"), is(equalTo(Arrays.asList(""))));
+        assertThat(byScript, is(equalTo(byWebDriver)));
+    }
+
+    @Test
+    public void testOnlyElementsScriptCouldNotReadAreReadNatively() {
+        //Script couldn't look up the second element
+        List<?> scriptResult = Arrays.asList(Arrays.asList(Arrays.asList("from script"), null), Arrays.asList(0L, null));
+        WebDriver driver = createDriver(scriptResult, "input");
+
+        Map<String, List<String>> values = createBatch(driver).read(ImmutableMap.of(
+                "greeting", ElementBatch.TEXT, "name", ElementBatch.TEXT));
+
+        assertThat(values.get("greeting"), is(equalTo(Arrays.asList("from script"))));
+        assertThat(values.get("name"), is(equalTo(Arrays.asList("native text"))));
+        assertThat(calls, is(equalTo(Arrays.asList("executeScript", "findElements", "getText"))));
+    }
+
+    @Test
+    public void testSelectIsFilledNativelyByOptionValue() {
+        List<?> scriptResult = Arrays.asList(Arrays.asList("country"), Arrays.asList(0L, 0L));
+        WebDriver driver = createDriver(scriptResult, "select");
+
+        createBatch(driver).fill(ImmutableMap.of("name", "John", "country", "EE"));
+
+        assertThat(calls.contains("findElements .//option[@value = \"EE\"]"), is(true));
+        assertThat(calls.contains("click"), is(true));
+        assertThat(calls.contains("sendKeys"), is(false));
+    }
+
+    private WebDriver openPage(boolean javascriptEnabled) {
+        HtmlUnitDriver driver = new HtmlUnitDriver(javascriptEnabled);
+        drivers.add(driver);
+        driver.get(pageFile.toURI().toString());
+        return driver;
+    }
+
+    private static ElementBatch createBatch(WebDriver driver) {
+        Properties definition = new Properties();
+        definition.setProperty("greeting", "id~greeting");
+        definition.setProperty("hidden", "id~hidden");
+        definition.setProperty("nested", "id~nested");
+        definition.setProperty("name", "id~name");
+        definition.setProperty("country", "id~country");
+        return new ElementBatch(driver, new PageDefinition(definition), "Page");
+    }
+
+    /**
+     * @param scriptResult what fill or read script returns
+     * @param tagName      tag name of elements found through WebDriver
+     */
+    private WebDriver createDriver(final Object scriptResult, final String tagName) {
+        final WebElement option = (WebElement) create(WebElement.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                calls.add(method.getName());
+                return method.getName().equals("isSelected") ? false : null;
+            }
+        });
+        final WebElement element = (WebElement) create(WebElement.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("findElements")) {
+                    calls.add("findElements " + args[0].toString().replaceFirst("By\\.\\w+: ", ""));
+                    return Collections.singletonList(option);
+                }
+                calls.add(method.getName());
+                if (method.getName().equals("getTagName")) {
+                    return tagName;
+                }
+                return method.getName().equals("getText") ? " native \n text " : null;
+            }
+        });
+        return (WebDriver) create(new Class<?>[]{WebDriver.class, JavascriptExecutor.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                calls.add(method.getName());
+                if (method.getName().equals("executeScript")) {
+                    return scriptResult;
+                }
+                if (method.getName().equals("findElements")) {
+                    return Collections.singletonList(element);
+                }
+                return method.getName().equals("findElement") ? element : null;
+            }
+        });
+    }
+
+    private static Object create(Class<?> type, InvocationHandler handler) {
+        return create(new Class<?>[]{type}, handler);
+    }
+
+    private static Object create(Class<?>[] types, final InvocationHandler handler) {
+        return Proxy.newProxyInstance(ElementBatchTest.class.getClassLoader(), types, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                return handler.invoke(proxy, method, args);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        for (WebDriver driver : drivers) {
+            driver.quit();
+        }
+        pageFile.delete();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import com.sayem.enums.WaitMode;
+import org.junit.After;
+import org.junit.Test;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ElementWaitTest {
+
+    private final List<Long> implicitWaits = new ArrayList<Long>();
+    private final List<Long> implicitWaitsOfLookups = new ArrayList<Long>();
+    private int lookups;
+
+    @Test
+    public void testEventWaitReturnsWhenScriptSeesElement() {
+        WebDriver driver = createDriver(0L, 0);
+
+        createWait(driver).waitFor("row", true, 1);
+
+        assertThat(lookups, is(0));
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void testEventWaitTimeout() {
+        createWait(createDriver(Boolean.FALSE, 0)).waitFor("row", true, 1);
+    }
+
+    @Test
+    public void testPollingTurnsImplicitWaitOff() {
+        WebDriver driver = createDriver(null, 2);
+        ElementWait.setImplicitWait(driver, 5000);
+
+        createWait(driver).waitFor("row", true, 5);
+
+        assertThat(lookups, is(3));
+        assertThat(implicitWaitsOfLookups, is(equalTo(Arrays.asList(0L, 0L, 0L))));
+        assertThat(implicitWaits.get(implicitWaits.size() - 1), is(equalTo(5000L)));
+    }
+
+    @Test
+    public void testPollingModeDoesNotRunScripts() {
+        ElementWait.configure(WaitMode.POLLING);
+        WebDriver driver = createDriver(Boolean.FALSE, 0);
+
+        createWait(driver).waitFor("row", true, 1);
+
+        assertThat(lookups, is(1));
+    }
+
+    private static ElementWait createWait(WebDriver driver) {
+        Properties definition = new Properties();
+        definition.setProperty("row", "id~row");
+        return new ElementWait(driver, new PageDefinition(definition), "Page");
+    }
+
+    /**
+     * @param scriptResult  what wait script returns: index of locator which found element, false on timeout, null if browser can't wait
+     * @param absentLookups how many lookups through WebDriver don't find element
+     */
+    private WebDriver createDriver(final Object scriptResult, final int absentLookups) {
+        final WebElement element = (WebElement) create(WebElement.class, null);
+        final Object timeouts = create(WebDriver.Timeouts.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("implicitlyWait")) {
+                    implicitWaits.add(((TimeUnit) args[1]).toMillis((Long) args[0]));
+                }
+                return proxy;
+            }
+        });
+        final Object options = create(WebDriver.Options.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("timeouts") ? timeouts : null;
+            }
+        });
+        return (WebDriver) Proxy.newProxyInstance(ElementWaitTest.class.getClassLoader(),
+                new Class<?>[]{WebDriver.class, JavascriptExecutor.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("manage")) {
+                            return options;
+                        }
+                        if (method.getName().equals("executeAsyncScript")) {
+                            return scriptResult;
+                        }
+                        if (method.getName().equals("findElements")) {
+                            implicitWaitsOfLookups.add(implicitWaits.isEmpty() ? null : implicitWaits.get(implicitWaits.size() - 1));
+                            return lookups++ < absentLookups ? Collections.<WebElement>emptyList() : Collections.singletonList(element);
+                        }
+                        if (method.getName().equals("equals")) {
+                            return proxy == args[0];
+                        }
+                        if (method.getName().equals("hashCode")) {
+                            return System.identityHashCode(proxy);
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private static Object create(Class<?> type, final InvocationHandler handler) {
+        return Proxy.newProxyInstance(ElementWaitTest.class.getClassLoader(), new Class<?>[]{type}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                return handler == null ? null : handler.invoke(proxy, method, args);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        ElementWait.configure(WaitMode.EVENT);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LocatorStatisticsTest {
+
+    private final File statisticsFile = new File("target/test-locator-statistics.properties");
+
+    @Test
+    public void testWorkingLocatorIsPromoted() {
+        LocatorStatistics.configure(statisticsFile.getPath());
+        List<String> locators = Arrays.asList("id~old", "css~.new");
+
+        assertThat(LocatorStatistics.order("Page.button", locators), is(equalTo(locators)));
+
+        LocatorStatistics.recordFailure("Page.button", "id~old");
+        LocatorStatistics.recordSuccess("Page.button", "css~.new");
+        assertThat(LocatorStatistics.order("Page.button", locators), is(equalTo(Arrays.asList("css~.new", "id~old"))));
+    }
+
+    @Test
+    public void testStatisticsAreKeptBetweenRuns() {
+        LocatorStatistics.configure(statisticsFile.getPath());
+        LocatorStatistics.recordFailure("Page.link", "id~old");
+        LocatorStatistics.save();
+
+        //Other file and back forces statistics to be read again
+        LocatorStatistics.configure(new File("target/other-locator-statistics.properties").getPath());
+        LocatorStatistics.configure(statisticsFile.getPath());
+        assertThat(LocatorStatistics.order("Page.link", Arrays.asList("id~old", "css~.new")),
+                is(equalTo(Arrays.asList("css~.new", "id~old"))));
+    }
+
+    @Test
+    public void testLocatorWithLongHistoryIsDemotedAfterFirstFailure() throws Exception {
+        Properties history = new Properties();
+        history.setProperty("Page.menu|id~old", "1000,0");
+        OutputStream stream = new FileOutputStream(statisticsFile);
+        try {
+            history.store(stream, null);
+        } finally {
+            stream.close();
+        }
+        LocatorStatistics.configure(statisticsFile.getPath());
+        List<String> locators = Arrays.asList("id~old", "css~.new");
+        assertThat(LocatorStatistics.order("Page.menu", locators), is(equalTo(locators)));
+
+        LocatorStatistics.recordFailure("Page.menu", "id~old");
+        LocatorStatistics.recordSuccess("Page.menu", "css~.new");
+        assertThat(LocatorStatistics.order("Page.menu", locators), is(equalTo(Arrays.asList("css~.new", "id~old"))));
+
+        //Locator which works again is back to its rate
+        LocatorStatistics.recordSuccess("Page.menu", "id~old");
+        assertThat(LocatorStatistics.order("Page.menu", locators), is(equalTo(locators)));
+    }
+
+    @Test
+    public void testFrozenStatisticsDontChangeOrder() {
+        LocatorStatistics.configure(statisticsFile.getPath());
+        LocatorStatistics.setFrozen(true);
+        List<String> locators = Arrays.asList("id~old", "css~.new");
+
+        LocatorStatistics.recordFailure("Page.field", "id~old");
+        LocatorStatistics.recordSuccess("Page.field", "css~.new");
+        assertThat(LocatorStatistics.order("Page.field", locators), is(equalTo(locators)));
+        LocatorStatistics.save();
+        assertThat(statisticsFile.exists(), is(false));
+    }
+
+    @Test
+    public void testAbsentElementDoesNotChangeStatistics() {
+        LocatorStatistics.configure(statisticsFile.getPath());
+        Map<String, By> locators = new LinkedHashMap<String, By>();
+        locators.put("id~row", By.id("row"));
+        locators.put("css~.row", By.cssSelector(".row"));
+        By locator = new ByAlternatives("Page.row", locators);
+        SearchContext emptyPage = new SearchContext() {
+            public List<WebElement> findElements(By by) {
+                return Collections.emptyList();
+            }
+
+            public WebElement findElement(By by) {
+                throw new NoSuchElementException("Element is absent");
+            }
+        };
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(locator.findElements(emptyPage).isEmpty(), is(true));
+        }
+        LocatorStatistics.save();
+        assertThat(statisticsFile.exists(), is(false));
+    }
+
+    @Test
+    public void testAlternativesAfterFailedLookupDontWait() {
+        LocatorStatistics.configure(statisticsFile.getPath());
+        Map<String, By> locators = new LinkedHashMap<String, By>();
+        locators.put("id~cell", By.id("cell"));
+        locators.put("css~.cell", By.cssSelector(".cell"));
+        locators.put("css~td", By.cssSelector("td"));
+        final List<Long> implicitWaits = new ArrayList<Long>();
+        final List<Long> implicitWaitsOfLookups = new ArrayList<Long>();
+        InvocationHandler handler = new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("implicitlyWait")) {
+                    implicitWaits.add(((TimeUnit) args[1]).toMillis((Long) args[0]));
+                } else if (method.getName().equals("findElements")) {
+                    implicitWaitsOfLookups.add(implicitWaits.get(implicitWaits.size() - 1));
+                    return Collections.emptyList();
+                } else if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                } else if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                return proxy;
+            }
+        };
+        WebDriver driver = (WebDriver) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{WebDriver.class, WebDriver.Options.class, WebDriver.Timeouts.class}, handler);
+        ElementWait.setImplicitWait(driver, 5000);
+
+        assertThat(new ByAlternatives("Page.cell", locators).findElements(driver).isEmpty(), is(true));
+        assertThat(implicitWaitsOfLookups, is(equalTo(Arrays.asList(5000L, 0L, 0L))));
+        assertThat(implicitWaits.get(implicitWaits.size() - 1), is(equalTo(5000L)));
+    }
+
+    @Test
+    public void testAlternativesInPageDefinition() {
+        Properties definition = new Properties();
+        definition.setProperty("button", "id~submit || css~form button");
+        definition.setProperty("link", "id~next");
+
+        assertThat(new PageDefinition(definition).getElementLocator("button"), is(instanceOf(ByAlternatives.class)));
+        assertThat(new PageDefinition(definition).getElementLocator("link"), is(equalTo(By.id("next"))));
+    }
+
+    @After
+    public void tearDown() {
+        statisticsFile.delete();
+        LocatorStatistics.setFrozen(false);
+        LocatorStatistics.configure(null);
+    }
+}
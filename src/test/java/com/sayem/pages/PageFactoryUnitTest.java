@@ -16,7 +16,9 @@
 
 package com.sayem.pages;
 
+import com.sayem.configuration.Configuration;
 import org.junit.After;
+import org.junit.BeforeClass;
 import org.junit.Test;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.htmlunit.HtmlUnitDriver;
@@ -33,6 +35,11 @@ import static org.junit.Assert.fail;
 public class PageFactoryUnitTest {
     //TODO: Implement this test with WebDriver mock
 
+    @BeforeClass
+    public static void setUpClass() {
+        Configuration.configure();
+    }
+
     @Test
     public void testCheckDriver() throws Exception {
         WebDriver driver = new HtmlUnitDriver();
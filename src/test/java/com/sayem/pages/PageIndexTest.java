@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PageIndexTest {
+
+    @Test
+    public void testExactUrlPreferredOverPrefix() {
+        PageIndex index = new PageIndex();
+        index.add("http://example.com/*", "Example", "ExamplePage");
+        index.add("http://example.com/account/*", "Account", "AccountPage");
+        index.add("http://example.com/account/settings", "Settings", "SettingsPage");
+
+        assertThat(index.find("http://Example.com/account/settings", "Settings"), is(equalTo(Arrays.asList("SettingsPage"))));
+        assertThat(index.find("http://example.com/account/orders", "Account"), is(equalTo(Arrays.asList("AccountPage"))));
+        assertThat(index.find("http://example.com/help", "Example"), is(equalTo(Arrays.asList("ExamplePage"))));
+        assertThat(index.size(), is(3));
+    }
+
+    @Test
+    public void testTitleSelectsBetweenPagesWithSameUrl() {
+        PageIndex index = new PageIndex();
+        index.add("http://example.com/login", "Login", "LoginPage");
+        index.add("http://example.com/login", "Login failed", "LoginFailedPage");
+
+        assertThat(index.find("http://example.com/login", "LOGIN FAILED"), is(equalTo(Arrays.asList("LoginFailedPage"))));
+        assertThat(index.find("http://example.com/login", "Unknown").isEmpty(), is(true));
+    }
+
+    @Test
+    public void testShorterPrefixMatchesWhenTitleOfLongerDoesNot() {
+        PageIndex index = new PageIndex();
+        index.add("http://example.com/*", "Help", "HelpPage");
+        index.add("http://example.com/account/*", "Account", "AccountPage");
+
+        assertThat(index.find("http://example.com/account/help", "Help"), is(equalTo(Arrays.asList("HelpPage"))));
+    }
+
+    @Test
+    public void testPageIsNotFoundByTitleOnly() {
+        PageIndex index = new PageIndex();
+        index.add("http://example.com/login", "Login", "LoginPage");
+
+        assertThat(index.find("http://other.com/", "Login").isEmpty(), is(true));
+        assertThat(index.find("http://example.com/login", null).isEmpty(), is(true));
+    }
+
+    @Test
+    public void testFoundPagesAreCopied() {
+        PageIndex index = new PageIndex();
+        index.add("http://example.com/login", "Login", "LoginPage");
+
+        index.find("http://example.com/login", "Login").clear();
+        assertThat(index.find("http://example.com/login", "Login"), is(equalTo(Arrays.asList("LoginPage"))));
+    }
+}
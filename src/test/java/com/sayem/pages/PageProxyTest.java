@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import com.sayem.configuration.Configuration;
+import com.sayem.exceptions.NavigationException;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.Locatable;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+public class PageProxyTest {
+
+    public interface LoginTestPage extends Page {
+        WebElement getUserName();
+
+        List<WebElement> getErrors();
+
+        By getSubmit();
+
+        //Implemented by BasePage, though it's not declared in Page
+        void navigate(Map<String, String> urlParameters) throws NavigationException;
+    }
+
+    public interface BrokenTestPage extends Page {
+        WebElement getMissing();
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        Configuration.configure();
+    }
+
+    @Test
+    public void testGeneratedPage() {
+        LoginTestPage page = PageFactory.getPage(LoginTestPage.class);
+
+        assertThat(page.getSubmit(), is(equalTo(By.name("submit"))));
+        assertThat(page.getTitle(), is(equalTo("Login")));
+        //Element is not looked up until it's used
+        assertThat(page.getUserName(), is(notNullValue()));
+        //Actions cast elements to Locatable
+        assertThat(page.getUserName(), is(instanceOf(Locatable.class)));
+    }
+
+    @Test
+    public void testElementObjectMethodsDontFindElement() {
+        LoginTestPage page = PageFactory.getPage(LoginTestPage.class);
+        WebElement userName = page.getUserName();
+
+        //Page is blank, so element lookup would fail
+        assertThat(userName.equals(userName), is(true));
+        assertThat(userName.equals(page.getUserName()), is(false));
+        assertThat(userName.hashCode(), is(equalTo(userName.hashCode())));
+        assertThat(userName.toString(), containsString(LoginTestPage.class.getName()));
+        assertThat(userName.toString(), containsString("userName"));
+    }
+
+    @Test(expected = InstantiationError.class)
+    public void testUndefinedElement() {
+        PageFactory.getPage(BrokenTestPage.class);
+    }
+
+    @After
+    public void tearDown() {
+        PageFactory.tearDown();
+    }
+}
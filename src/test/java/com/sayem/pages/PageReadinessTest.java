@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import org.junit.Test;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class PageReadinessTest {
+
+    private static final String URL = "http://example.com/next";
+
+    private final List<String> calls = new ArrayList<String>();
+
+    @Test
+    public void testRefusedNavigationScriptFallsBackToGet() {
+        WebDriver driver = createDriver(new WebDriverException("No window"), 0, null);
+
+        PageReadiness.navigate(driver, URL, createDefinition(), "Page");
+
+        assertThat(calls, is(equalTo(Arrays.asList("navigate", "get " + URL))));
+    }
+
+    @Test
+    public void testLoadingDocumentIsWaitedForInBrowser() {
+        WebDriver driver = createDriver(-1L, 0, "loading");
+
+        PageReadiness.navigate(driver, URL, createDefinition(), "Page");
+
+        assertThat(calls, is(equalTo(Arrays.asList("navigate", "state", "waitForDomInteractive"))));
+    }
+
+    @Test
+    public void testPollingSlowsDownWhilePageLeftIsShown() {
+        WebDriver driver = createDriver(-1L, 1000, "interactive");
+
+        PageReadiness.navigate(driver, URL, createDefinition(), "Page");
+
+        //Polling every 50 milliseconds would ask for state 20 times
+        assertThat(Collections.frequency(calls, "state"), is(lessThan(8)));
+        assertThat(calls.contains("get " + URL), is(false));
+    }
+
+    @Test
+    public void testResponseWhichDoesNotReplacePageFallsBackToGet() {
+        WebDriver driver = createDriver(-1L, Long.MAX_VALUE, null);
+
+        PageReadiness.navigate(driver, URL, createDefinition(), "Page");
+
+        assertThat(calls.get(calls.size() - 1), is(equalTo("get " + URL)));
+    }
+
+    private static PageDefinition createDefinition() {
+        Properties definition = new Properties();
+        definition.setProperty("ReadyState", "DOM_INTERACTIVE");
+        return new PageDefinition(definition);
+    }
+
+    /**
+     * @param navigationResult what navigation script returns or throws
+     * @param leftPageTime     how long in milliseconds page left is shown after navigation
+     * @param newDocumentState ready state of new document
+     */
+    private WebDriver createDriver(final Object navigationResult, final long leftPageTime, final String newDocumentState) {
+        final Object timeouts = create(WebDriver.Timeouts.class);
+        final Object options = Proxy.newProxyInstance(PageReadinessTest.class.getClassLoader(),
+                new Class<?>[]{WebDriver.Options.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return method.getName().equals("timeouts") ? timeouts : null;
+                    }
+                });
+        return (WebDriver) Proxy.newProxyInstance(PageReadinessTest.class.getClassLoader(),
+                new Class<?>[]{WebDriver.class, JavascriptExecutor.class}, new InvocationHandler() {
+                    private long navigationTime;
+
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("executeScript") && ((String) args[0]).contains("pageReadinessMarker = true")) {
+                            calls.add("navigate");
+                            navigationTime = System.currentTimeMillis();
+                            if (navigationResult instanceof Throwable) {
+                                throw (Throwable) navigationResult;
+                            }
+                            return navigationResult;
+                        }
+                        if (method.getName().equals("executeScript")) {
+                            calls.add("state");
+                            return System.currentTimeMillis() - navigationTime < leftPageTime ? "left" : newDocumentState;
+                        }
+                        if (method.getName().equals("executeAsyncScript")) {
+                            calls.add("waitForDomInteractive");
+                            return true;
+                        }
+                        if (method.getName().equals("get")) {
+                            calls.add("get " + args[0]);
+                            return null;
+                        }
+                        if (method.getName().equals("manage")) {
+                            return options;
+                        }
+                        if (method.getName().equals("equals")) {
+                            return proxy == args[0];
+                        }
+                        if (method.getName().equals("hashCode")) {
+                            return System.identityHashCode(proxy);
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private static Object create(Class<?> type) {
+        return Proxy.newProxyInstance(PageReadinessTest.class.getClassLoader(), new Class<?>[]{type}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                return proxy;
+            }
+        });
+    }
+}
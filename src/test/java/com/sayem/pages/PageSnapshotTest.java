@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import org.junit.Test;
+import org.openqa.selenium.NoSuchElementException;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PageSnapshotTest {
+
+    private static final String PAGE_SOURCE = "<HTML><BODY>" +
+            "<H1 id='header'>  Search\n results </H1>" +
+            "<TABLE><TR><TD class='name'>First</TD></TR><TR><TD class='name'>Second</TD></TR></TABLE>" +
+            "<A href='/next'>Next page</A>" +
+            "<INPUT name='query' value='java'>" +
+            "</BODY></HTML>";
+
+    private PageSnapshot createSnapshot() {
+        Properties definition = new Properties();
+        definition.setProperty("header", "id~header");
+        definition.setProperty("names", "css~table td.name");
+        definition.setProperty("next", "linkText~Next page");
+        definition.setProperty("query", "name~query");
+        definition.setProperty("rows", "xpath~//table//tr");
+        definition.setProperty("missing", "id~missing");
+        definition.setProperty("title", "id~title || css~h1");
+        return PageSnapshot.parse(PAGE_SOURCE, new PageDefinition(definition));
+    }
+
+    @Test
+    public void testLocators() {
+        PageSnapshot snapshot = createSnapshot();
+
+        assertThat(snapshot.getText("header"), is(equalTo("Search results")));
+        assertThat(snapshot.getTexts("names"), is(equalTo(Arrays.asList("First", "Second"))));
+        assertThat(snapshot.getAttribute("next", "href"), is(equalTo("/next")));
+        assertThat(snapshot.getAttribute("query", "value"), is(equalTo("java")));
+        assertThat(snapshot.count("rows"), is(2));
+        assertThat(snapshot.isPresent("missing"), is(false));
+    }
+
+    @Test
+    public void testAlternativeLocators() {
+        assertThat(createSnapshot().getText("title"), is(equalTo("Search results")));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testMissingElement() {
+        createSnapshot().getText("missing");
+    }
+}
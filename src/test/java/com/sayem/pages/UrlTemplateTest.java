@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class UrlTemplateTest {
+
+    @Test
+    public void testUrlWithoutPlaceholders() {
+        UrlTemplate template = UrlTemplate.compile("test", "http://localhost:8080", "/login");
+        assertThat(template.expand(Collections.<String, String>emptyMap()), is(equalTo("http://localhost:8080/login")));
+        assertThat(template.matches("HTTP://localhost:8080/Login"), is(true));
+        assertThat(template.matches("http://localhost:8080/login/"), is(false));
+        assertThat(template.getIndexPattern(), is(equalTo("http://localhost:8080/login")));
+    }
+
+    @Test
+    public void testExpand() {
+        UrlTemplate template = UrlTemplate.compile(null, null, "http://localhost/orders/{orderId}?tab={tab}");
+        assertThat(template.expand(ImmutableMap.of("orderId", "42", "tab", "items")),
+                is(equalTo("http://localhost/orders/42?tab=items")));
+        assertThat(template.expand(ImmutableMap.of("orderId", "a b", "tab", "x&y z")),
+                is(equalTo("http://localhost/orders/a%20b?tab=x%26y+z")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingParameter() {
+        UrlTemplate.compile(null, null, "/orders/{orderId}").expand(Collections.<String, String>emptyMap());
+    }
+
+    @Test
+    public void testMatches() {
+        UrlTemplate template = UrlTemplate.compile(null, "http://localhost", "/orders/{orderId}/items?tab={tab}");
+        assertThat(template.matches("http://localhost/orders/42/items?tab=all"), is(true));
+        assertThat(template.matches("http://localhost/orders/42/items?tab="), is(false));
+        assertThat(template.matches("http://localhost/orders/4/2/items?tab=all"), is(false));
+        assertThat(template.matches("http://localhost/orders/42/items?tab=all&page=2"), is(false));
+        assertThat(template.getIndexPattern(), is(equalTo("http://localhost/orders/*")));
+    }
+
+    @Test
+    public void testValueContainsFollowingLiteral() {
+        UrlTemplate template = UrlTemplate.compile(null, "http://localhost", "/docs/{name}.html?v={version}.{build}");
+        assertThat(template.matches("http://localhost/docs/user.guide.html?v=1.2.3"), is(true));
+        assertThat(template.matches("HTTP://LOCALHOST/Docs/a.html?V=1.2"), is(true));
+        assertThat(template.matches("http://localhost/docs/a.html?v=1"), is(false));
+        assertThat(template.matches("http://localhost/docs/a/b.html?v=1.2"), is(false));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.pages;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class XPathToCssTest {
+
+    @Test
+    public void testTranslatedExpressions() {
+        assertThat(XPathToCss.translate("//div[@id='main']//a"), is(equalTo("div#main a")));
+        assertThat(XPathToCss.translate("//form/input[@name='q' and @type='text']"), is(equalTo("form > input[name=\"q\"][type=\"text\"]")));
+        assertThat(XPathToCss.translate("//ul/li[2]"), is(equalTo("ul > li:nth-of-type(2)")));
+        assertThat(XPathToCss.translate("//table/*[last()]"), is(equalTo("table > :last-child")));
+        assertThat(XPathToCss.translate("//span[contains(@class, 'error')]"), is(equalTo("span[class*=\"error\"]")));
+        assertThat(XPathToCss.translate("//span[contains(concat(' ', normalize-space(@class), ' '), ' error ')]"), is(equalTo("span.error")));
+        assertThat(XPathToCss.translate("/html/body/div"), is(equalTo("html > body > div")));
+    }
+
+    @Test
+    public void testExpressionsKeptAsXPath() {
+        assertThat(XPathToCss.translate("//a[text()='Next']"), is(nullValue()));
+        assertThat(XPathToCss.translate("//li[@class='item'][2]"), is(nullValue()));
+        assertThat(XPathToCss.translate("//div/.."), is(nullValue()));
+        assertThat(XPathToCss.translate("//a[@id='x' or @id='y']"), is(nullValue()));
+        assertThat(XPathToCss.translate("(//a)[1]"), is(nullValue()));
+        assertThat(XPathToCss.translate("/body"), is(nullValue()));
+        //Browsers without CSS3 structural selectors keep positions in XPath
+        assertThat(XPathToCss.translate("//ul/li[2]", false), is(nullValue()));
+        assertThat(XPathToCss.translate("//table/*[last()]", false), is(nullValue()));
+        assertThat(XPathToCss.translate("//div[@id='main']//a", false), is(equalTo("div#main a")));
+    }
+
+    @Test
+    public void testLocatorOptimizer() {
+        assertThat(LocatorOptimizer.optimize("xpath~//div[@id='main']"), is(equalTo("css~div#main")));
+        assertThat(LocatorOptimizer.optimize("xpath~//a[text()='Next']"), is(equalTo("xpath~//a[text()='Next']")));
+        assertThat(LocatorOptimizer.optimize("id~main"), is(equalTo("id~main")));
+    }
+
+    @Test
+    public void testLocatorOptimizerFollowsBrowserSupport() {
+        try {
+            LocatorOptimizer.setPositionalSelectorsSupported(false);
+            assertThat(LocatorOptimizer.optimize("xpath~//ul/li[2]"), is(equalTo("xpath~//ul/li[2]")));
+            LocatorOptimizer.setPositionalSelectorsSupported(true);
+            assertThat(LocatorOptimizer.optimize("xpath~//ul/li[2]"), is(equalTo("css~ul > li:nth-of-type(2)")));
+        } finally {
+            LocatorOptimizer.setPositionalSelectorsSupported(true);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.resources;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
+import com.google.common.io.Files;
+import com.sayem.configuration.Configuration;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Map;
+import java.util.Properties;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import static com.google.common.io.ByteStreams.toByteArray;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ResourceIndexTest {
+
+    @Test
+    public void testIndexedResource() throws Exception {
+        Properties configuration = new Properties();
+        configuration.load(ResourceIndex.getResource(Configuration.FRAMEWORK_CONFIG_FILE_NAME).getInput());
+
+        assertThat(ResourceIndex.size(), is(greaterThan(0)));
+        assertThat(configuration.getProperty(Configuration.TEST_RESULTS_DIRECTORY_PROPERTY_NAME), is(notNullValue()));
+    }
+
+    @Test
+    public void testResourceRelativeToClass() throws Exception {
+        byte[] classContent = toByteArray(ResourceIndex.getResource(ResourceIndex.class, "ResourceIndex.class"));
+
+        assertThat(classContent.length, is(greaterThan(0)));
+        assertThat(ResourceIndex.getResource(ResourceIndex.class, "/" + Configuration.FRAMEWORK_CONFIG_FILE_NAME), is(notNullValue()));
+    }
+
+    @Test
+    public void testMissingResource() throws Exception {
+        assertThat(ResourceIndex.getResource("missing.properties"), is(nullValue()));
+        assertThat(ResourceIndex.getResource(ResourceIndex.class, "Missing.properties"), is(nullValue()));
+    }
+
+    @Test
+    public void testEntriesOfClassLoader() throws Exception {
+        File directory = new File("target/ResourceIndexTest/classes");
+        File page = new File(directory, "com/example/pages/LoginPage.properties");
+        Files.createParentDirs(page);
+        Files.write("Title=Login", page, Charsets.UTF_8);
+        File jar = writeJar("target/ResourceIndexTest/data.jar", "com/example/data/users.xml", "<users/>");
+
+        //Class loader set up by IDE or build tool, its entries are not in java.class.path
+        URLClassLoader classLoader = new URLClassLoader(new URL[]{directory.toURI().toURL(), jar.toURI().toURL()}, null);
+        Map<String, ResourceIndex.IndexedResource> index;
+        try {
+            index = ResourceIndex.buildIndex(classLoader, "");
+        } finally {
+            classLoader.close();
+        }
+
+        assertThat(read(index.get("com/example/pages/LoginPage.properties")), is(equalTo("Title=Login")));
+        assertThat(read(index.get("com/example/data/users.xml")), is(equalTo("<users/>")));
+    }
+
+    @Test
+    public void testReplacedJarIsReadAgain() throws Exception {
+        File jar = writeJar("target/ResourceIndexTest/replaced.jar", "replaced.properties", "value=1");
+        ResourceIndex.IndexedResource resource = new ResourceIndex.IndexedResource(jar, "replaced.properties");
+        assertThat(read(resource), is(equalTo("value=1")));
+
+        //Content of the same size, jar differs only by modification time
+        writeJar(jar.getPath(), "replaced.properties", "value=2");
+        assertThat(jar.setLastModified(jar.lastModified() - 60000), is(true));
+
+        assertThat(read(resource), is(equalTo("value=2")));
+    }
+
+    private static File writeJar(String path, String entryName, String content) throws Exception {
+        File jar = new File(path);
+        Files.createParentDirs(jar);
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(jar), new Manifest());
+        try {
+            output.putNextEntry(new ZipEntry(entryName));
+            output.write(content.getBytes(Charsets.UTF_8));
+        } finally {
+            output.close();
+        }
+        return jar;
+    }
+
+    private static String read(ResourceIndex.IndexedResource resource) throws Exception {
+        return CharStreams.toString(CharStreams.newReaderSupplier(resource, Charsets.UTF_8));
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.session;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Test;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SessionStateTest {
+
+    private static final Cookie SSO_COOKIE = new Cookie("sso", "token", "sso.example.com", "/", null);
+    private static final Cookie APP_COOKIE = new Cookie("session", "42", "app.example.com", "/", null);
+
+    @After
+    public void tearDown() {
+        SessionStateCache.clear();
+    }
+
+    @Test
+    public void testOrigin() {
+        assertThat(SessionState.getOrigin("https://example.com/account?tab=1#top"), is(equalTo("https://example.com/")));
+        assertThat(SessionState.getOrigin("http://localhost:8080/login"), is(equalTo("http://localhost:8080/")));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOriginOfBlankPage() {
+        SessionState.getOrigin("about:blank");
+    }
+
+    @Test
+    public void testExpiry() {
+        SessionState state = new SessionState(ImmutableMap.of("http://example.com/", Collections.<Cookie>emptySet()),
+                new HashMap<String, Map<String, String>>(), 1000);
+
+        assertThat(state.isExpired(999), is(false));
+        assertThat(state.isExpired(1000), is(true));
+    }
+
+    @Test
+    public void testKeySeparatesEnvironmentsAndUsers() {
+        assertThat(SessionStateCache.getKey(null, "kostya", "login"), is(equalTo("/kostya/login")));
+        assertThat(SessionStateCache.getKey("staging", "kostya", "login").equals(SessionStateCache.getKey("staging", "admin", "login")),
+                is(false));
+    }
+
+    @Test
+    public void testCookiesOfEverySiteFlowVisitedAreInjected() {
+        FakeBrowser setUpBrowser = new FakeBrowser();
+        SessionStateCache.apply(setUpBrowser.driver, "login", "kostya", new SingleSignOnFlow());
+
+        FakeBrowser testBrowser = new FakeBrowser();
+        SessionStateCache.apply(testBrowser.driver, "login", "kostya", new SingleSignOnFlow());
+
+        assertThat(testBrowser.cookies, is(equalTo(setUpBrowser.cookies)));
+        assertThat(testBrowser.cookies.get("sso.example.com"), is(equalTo(Collections.singleton(SSO_COOKIE))));
+        assertThat(testBrowser.cookies.get("app.example.com"), is(equalTo(Collections.singleton(APP_COOKIE))));
+        assertThat(testBrowser.currentUrl, is(equalTo("https://app.example.com/")));
+    }
+
+    @Test
+    public void testParallelBrowsersWaitForOneFlow() throws Exception {
+        final SingleSignOnFlow flow = new SingleSignOnFlow();
+        final FakeBrowser[] browsers = {new FakeBrowser(), new FakeBrowser()};
+        Thread[] threads = new Thread[browsers.length];
+        for (int i = 0; i < threads.length; i++) {
+            final FakeBrowser browser = browsers[i];
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    SessionStateCache.apply(browser.driver, "login", "kostya", flow);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(flow.runs.get(), is(1));
+        assertThat(browsers[0].cookies, is(equalTo(browsers[1].cookies)));
+        assertThat(browsers[1].cookies.get("app.example.com"), is(equalTo(Collections.singleton(APP_COOKIE))));
+    }
+
+    /**
+     * Logs in through single sign-on site, which sets its own cookie, and ends on application site
+     */
+    private static class SingleSignOnFlow implements SetupFlow {
+        private final AtomicInteger runs = new AtomicInteger();
+
+        @Override
+        public void run(WebDriver driver) {
+            runs.incrementAndGet();
+            driver.get("https://sso.example.com/login");
+            driver.manage().addCookie(SSO_COOKIE);
+            try {
+                //Lets other browsers ask for the state while flow runs
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            driver.get("https://app.example.com/home");
+            driver.manage().addCookie(APP_COOKIE);
+        }
+    }
+
+    /**
+     * Browser which keeps cookies per host and gives only cookies of the host currently opened
+     */
+    private static class FakeBrowser {
+        private final Map<String, Set<Cookie>> cookies = new LinkedHashMap<String, Set<Cookie>>();
+        private volatile String currentUrl = "about:blank";
+        private final WebDriver driver = (WebDriver) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{WebDriver.class, JavascriptExecutor.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("get")) {
+                    currentUrl = (String) args[0];
+                    return null;
+                } else if (method.getName().equals("getCurrentUrl")) {
+                    return currentUrl;
+                } else if (method.getName().equals("manage")) {
+                    return createOptions();
+                } else if (method.getName().equals("executeScript")) {
+                    return Collections.emptyList();
+                } else if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                } else if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+
+        private WebDriver.Options createOptions() {
+            return (WebDriver.Options) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class[]{WebDriver.Options.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                    String host = new URL(currentUrl).getHost();
+                    if (!cookies.containsKey(host)) {
+                        cookies.put(host, new HashSet<Cookie>());
+                    }
+                    if (method.getName().equals("getCookies")) {
+                        return new HashSet<Cookie>(cookies.get(host));
+                    } else if (method.getName().equals("addCookie")) {
+                        cookies.get(host).add((Cookie) args[0]);
+                        return null;
+                    } else if (method.getName().equals("deleteAllCookies")) {
+                        cookies.get(host).clear();
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+    }
+}
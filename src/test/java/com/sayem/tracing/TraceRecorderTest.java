@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2011 SQANTA OÜ, info@sqanta.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sayem.tracing;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.sayem.configuration.Configuration;
+import com.sayem.enums.TraceMode;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class TraceRecorderTest {
+
+    private static final String SUITE_NAME = "TraceRecorderTest";
+
+    private final File traceFile = new File(new File(Configuration.getTestResultsDirectory(),
+            TraceRecorder.TRACES_FOLDER_NAME), SUITE_NAME + ".json");
+
+    @Test
+    public void testSuiteTraceDrainsBuffersOfRecordingThreads() throws Exception {
+        TraceRecorder.configure(TraceMode.SUITE, 4);
+        final Object lock = new Object();
+        Thread recorder = new Thread(new Runnable() {
+            public void run() {
+                for (int i = 0; ; i++) {
+                    TraceRecorder.record("lookup", "element", System.nanoTime(), "span" + i);
+                    synchronized (lock) {
+                        if (i == 0) {
+                            lock.notifyAll();
+                        }
+                        if (Thread.interrupted()) {
+                            return;
+                        }
+                    }
+                }
+            }
+        });
+        synchronized (lock) {
+            recorder.start();
+            lock.wait();
+        }
+        TraceRecorder.writeSuiteTrace(SUITE_NAME);
+        assertThat(Files.toString(traceFile, Charsets.UTF_8), containsString("\"detail\":\"span0\""));
+
+        recorder.interrupt();
+        recorder.join();
+        TraceRecorder.writeSuiteTrace(SUITE_NAME);
+        assertThat(Files.toString(traceFile, Charsets.UTF_8), is(not(containsString("\"detail\":\"span0\""))));
+    }
+
+    @After
+    public void tearDown() {
+        TraceRecorder.configure(TraceMode.OFF, TraceRecorder.DEFAULT_BUFFER_SIZE);
+        traceFile.delete();
+    }
+}